@@ -26,12 +26,14 @@ import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.batch.BatchSink;
 import co.cask.cdap.etl.api.batch.BatchSinkContext;
 import co.cask.cdap.format.StructuredRecordStringConverter;
 import co.cask.hydrator.common.ReferenceBatchSink;
 import co.cask.hydrator.common.ReferencePluginConfig;
 import com.google.common.base.CharMatcher;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import org.apache.cassandra.hadoop.cql3.CqlOutputFormat;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -40,6 +42,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -64,6 +67,12 @@ public class BatchCassandraSink
     this.config = config;
   }
 
+  @Override
+  public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+    super.configurePipeline(pipelineConfigurer);
+    config.validate();
+  }
+
   @Override
   public void prepareRun(BatchSinkContext context) {
     context.addOutput(Output.of(config.referenceName, new CassandraOutputFormatProvider(config)));
@@ -167,8 +176,37 @@ public class BatchCassandraSink
     @Description("A comma-separated list of primary keys. For example: \"key1,key2\".")
     private String primaryKey;
 
+    @Name(Cassandra.BULK_LOAD)
+    @Description("Whether each task writes the records to SSTables on its local disk, and streams them to the " +
+      "nodes that own them when it finishes, instead of sending a CQL statement for each record. Defaults to false.")
+    @Nullable
+    @Macro
+    private Boolean bulkLoad;
+
+    @Name(Cassandra.BULK_LOAD_BUFFER_SIZE)
+    @Description("Size in megabytes of the buffer in which each task sorts the records in bulk load mode. Each time " +
+      "the buffer is full, it is written to a new SSTable. Defaults to 64.")
+    @Nullable
+    @Macro
+    private Integer bulkLoadBufferSize;
+
+    @Name(Cassandra.BULK_LOAD_THROTTLE)
+    @Description("Maximum rate in megabits per second at which each task streams its SSTables in bulk load mode. " +
+      "Defaults to 0, which does not limit the rate.")
+    @Nullable
+    @Macro
+    private Integer bulkLoadThrottle;
+
     public CassandraBatchConfig(String referenceName, String partitioner, @Nullable Integer port, String columnFamily,
                                 String keyspace, String initialAddress, String columns, String primaryKey) {
+      this(referenceName, partitioner, port, columnFamily, keyspace, initialAddress, columns, primaryKey,
+           null, null, null);
+    }
+
+    public CassandraBatchConfig(String referenceName, String partitioner, @Nullable Integer port, String columnFamily,
+                                String keyspace, String initialAddress, String columns, String primaryKey,
+                                @Nullable Boolean bulkLoad, @Nullable Integer bulkLoadBufferSize,
+                                @Nullable Integer bulkLoadThrottle) {
       super(referenceName);
       this.partitioner = partitioner;
       this.initialAddress = initialAddress;
@@ -177,14 +215,36 @@ public class BatchCassandraSink
       this.keyspace = keyspace;
       this.columns = columns;
       this.primaryKey = primaryKey;
+      this.bulkLoad = bulkLoad;
+      this.bulkLoadBufferSize = bulkLoadBufferSize;
+      this.bulkLoadThrottle = bulkLoadThrottle;
+    }
+
+    private boolean isBulkLoad() {
+      return bulkLoad != null && bulkLoad;
+    }
+
+    private void validate() {
+      if (!containsMacro(Cassandra.BULK_LOAD_BUFFER_SIZE) && bulkLoadBufferSize != null && bulkLoadBufferSize < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for %s. Must be at least 1, but got %d",
+                        Cassandra.BULK_LOAD_BUFFER_SIZE, bulkLoadBufferSize));
+      }
+      if (!containsMacro(Cassandra.BULK_LOAD_THROTTLE) && bulkLoadThrottle != null && bulkLoadThrottle < 0) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for %s. Must be at least 0, but got %d",
+                        Cassandra.BULK_LOAD_THROTTLE, bulkLoadThrottle));
+      }
     }
   }
 
   private static class CassandraOutputFormatProvider implements OutputFormatProvider {
     private final Map<String, String> conf;
+    private final boolean bulkLoad;
 
     CassandraOutputFormatProvider(CassandraBatchConfig config) {
       this.conf = new HashMap<>();
+      this.bulkLoad = config.isBulkLoad();
 
       conf.put("cassandra.output.thrift.port", config.port == null ? "9160" : Integer.toString(config.port));
       conf.put("cassandra.output.thrift.address", config.initialAddress);
@@ -192,6 +252,17 @@ public class BatchCassandraSink
       conf.put("mapreduce.output.basename", config.columnFamily);
       conf.put("cassandra.output.partitioner.class", config.partitioner);
 
+      if (bulkLoad) {
+        conf.put(CassandraBulkOutputFormat.INSERT_STATEMENT, getInsertStatement(config));
+        if (config.bulkLoadBufferSize != null) {
+          conf.put(CassandraBulkOutputFormat.BUFFER_SIZE_IN_MB, String.valueOf(config.bulkLoadBufferSize));
+        }
+        if (config.bulkLoadThrottle != null) {
+          conf.put(CassandraBulkOutputFormat.STREAM_THROTTLE_MBITS, String.valueOf(config.bulkLoadThrottle));
+        }
+        return;
+      }
+
       // The query needs to include the non-primary key columns.
       // For example, the query might be "UPDATE keyspace.columnFamily SET column1 = ?, column2 = ? "
       // The primary keys are then added by Cassandra
@@ -205,11 +276,26 @@ public class BatchCassandraSink
       conf.put("cassandra.output.cql", query);
     }
 
+    /**
+     * Returns the statement that inserts the primary keys followed by the other columns, which is the order of the
+     * keys and values written by the sink.
+     */
+    private static String getInsertStatement(CassandraBatchConfig config) {
+      List<String> primaryKeys = Arrays.asList(CharMatcher.WHITESPACE.removeFrom(config.primaryKey).split(","));
+      List<String> columns = new ArrayList<>(primaryKeys);
+      for (String column : CharMatcher.WHITESPACE.removeFrom(config.columns).split(",")) {
+        if (!primaryKeys.contains(column)) {
+          columns.add(column);
+        }
+      }
+      return String.format("INSERT INTO %s.%s (%s) VALUES (%s)", config.keyspace, config.columnFamily,
+                           Joiner.on(", ").join(columns),
+                           Joiner.on(", ").join(Collections.nCopies(columns.size(), "?")));
+    }
+
     @Override
     public String getOutputFormatClassName() {
-      // ideally, we will use CqlBulkOutputFormat once Cassandra implements the patch
-      // to make the Hadoop-CQL package compatible with Hadoop
-      return CqlOutputFormat.class.getName();
+      return bulkLoad ? CassandraBulkOutputFormat.class.getName() : CqlOutputFormat.class.getName();
     }
 
     @Override
@@ -229,5 +315,8 @@ public class BatchCassandraSink
     public static final String INITIAL_ADDRESS = "initialAddress";
     public static final String COLUMNS = "columns";
     public static final String PRIMARY_KEY = "primaryKey";
+    public static final String BULK_LOAD = "bulkLoad";
+    public static final String BULK_LOAD_BUFFER_SIZE = "bulkLoadBufferSize";
+    public static final String BULK_LOAD_THROTTLE = "bulkLoadThrottle";
   }
 }
@@ -0,0 +1,468 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.batch.sink;
+
+import com.google.common.base.Strings;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.ReversedType;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.exceptions.InvalidRequestException;
+import org.apache.cassandra.hadoop.ConfigHelper;
+import org.apache.cassandra.io.sstable.CQLSSTableWriter;
+import org.apache.cassandra.io.sstable.SSTableLoader;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.streaming.StreamState;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.OutputHandler;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An {@link OutputFormat} that writes rows to SSTables on the local disk of each task, and streams them to the
+ * Cassandra nodes that own them when the task finishes, instead of sending every row through CQL.
+ * <p>
+ * The keys are the values of the primary key columns and the values are the values of the other columns, in the
+ * order of the bind variables of the {@link #INSERT_STATEMENT}. The schema of the column family is read from the
+ * cluster through the Thrift port, when the first row is written. Rows are buffered in memory and sorted, and written
+ * to a new SSTable each time {@link #BUFFER_SIZE_IN_MB} is reached. The outbound streaming throughput of each task can
+ * be limited with {@link #STREAM_THROTTLE_MBITS}.
+ * </p>
+ */
+public class CassandraBulkOutputFormat extends OutputFormat<Map<String, ByteBuffer>, List<ByteBuffer>> {
+  public static final String INSERT_STATEMENT = "co.cask.hydrator.cassandra.bulk.insert";
+  // same properties as Cassandra's own bulk output formats
+  public static final String OUTPUT_LOCATION = "mapreduce.output.bulkoutputformat.localdir";
+  public static final String BUFFER_SIZE_IN_MB = "mapreduce.output.bulkoutputformat.buffersize";
+  public static final String STREAM_THROTTLE_MBITS = "mapreduce.output.bulkoutputformat.streamthrottlembits";
+  public static final String MAX_FAILED_HOSTS = "mapreduce.output.bulkoutputformat.maxfailedhosts";
+
+  private static final Logger LOG = LoggerFactory.getLogger(CassandraBulkOutputFormat.class);
+  private static final int DEFAULT_BUFFER_SIZE_IN_MB = 64;
+
+  @Override
+  public RecordWriter<Map<String, ByteBuffer>, List<ByteBuffer>> getRecordWriter(TaskAttemptContext context)
+    throws IOException {
+    return new BulkRecordWriter(context);
+  }
+
+  @Override
+  public void checkOutputSpecs(JobContext context) throws IOException {
+    Configuration conf = context.getConfiguration();
+    if (ConfigHelper.getOutputKeyspace(conf) == null) {
+      throw new IOException("Must specify the output keyspace");
+    }
+    if (ConfigHelper.getOutputColumnFamily(conf) == null) {
+      throw new IOException("Must specify the output column family");
+    }
+    if (Strings.isNullOrEmpty(conf.get(INSERT_STATEMENT))) {
+      throw new IOException("Must specify the insert statement");
+    }
+  }
+
+  @Override
+  public OutputCommitter getOutputCommitter(TaskAttemptContext context) {
+    // the SSTables are streamed to the cluster when the record writer is closed, so there is nothing to commit
+    return new OutputCommitter() {
+      @Override
+      public void setupJob(JobContext jobContext) {
+      }
+
+      @Override
+      public void setupTask(TaskAttemptContext taskContext) {
+      }
+
+      @Override
+      public boolean needsTaskCommit(TaskAttemptContext taskContext) {
+        return false;
+      }
+
+      @Override
+      public void commitTask(TaskAttemptContext taskContext) {
+      }
+
+      @Override
+      public void abortTask(TaskAttemptContext taskContext) {
+      }
+    };
+  }
+
+  /**
+   * Returns the CQL statement that creates a column family with the given metadata.
+   */
+  static String getCreateStatement(CFMetaData metadata) {
+    StringBuilder statement = new StringBuilder("CREATE TABLE ")
+      .append(quote(metadata.ksName)).append('.').append(quote(metadata.cfName)).append(" (");
+    for (ColumnDefinition column : metadata.allColumns()) {
+      statement.append(quote(column.name.toString())).append(' ');
+      // the order of the clustering columns is given separately
+      AbstractType<?> type = column.type;
+      if (type instanceof ReversedType) {
+        type = ((ReversedType<?>) type).baseType;
+      }
+      statement.append(type.asCQL3Type());
+      if (column.isStatic()) {
+        statement.append(" static");
+      }
+      statement.append(", ");
+    }
+
+    List<String> partitionKeys = new ArrayList<>();
+    for (ColumnDefinition column : metadata.partitionKeyColumns()) {
+      partitionKeys.add(quote(column.name.toString()));
+    }
+    List<String> clusteringColumns = new ArrayList<>();
+    List<String> clusteringOrders = new ArrayList<>();
+    boolean reversed = false;
+    for (ColumnDefinition column : metadata.clusteringColumns()) {
+      String name = quote(column.name.toString());
+      boolean descending = column.type instanceof ReversedType;
+      clusteringColumns.add(name);
+      clusteringOrders.add(name + (descending ? " DESC" : " ASC"));
+      reversed |= descending;
+    }
+    statement.append("PRIMARY KEY ((");
+    appendNames(statement, partitionKeys);
+    statement.append(')');
+    if (!clusteringColumns.isEmpty()) {
+      statement.append(", ");
+      appendNames(statement, clusteringColumns);
+    }
+    statement.append("))");
+
+    String separator = " WITH ";
+    if (metadata.comparator.isDense() || !metadata.comparator.isCompound()) {
+      statement.append(separator).append("COMPACT STORAGE");
+      separator = " AND ";
+    }
+    if (reversed) {
+      statement.append(separator).append("CLUSTERING ORDER BY (");
+      appendNames(statement, clusteringOrders);
+      statement.append(')');
+    }
+    return statement.toString();
+  }
+
+  private static void appendNames(StringBuilder builder, Iterable<String> names) {
+    String separator = "";
+    for (String name : names) {
+      builder.append(separator).append(name);
+      separator = ", ";
+    }
+  }
+
+  private static String quote(String name) {
+    return '"' + name.replace("\"", "\"\"") + '"';
+  }
+
+  private static String quoteLiteral(String value) {
+    return '\'' + value.replace("'", "''") + '\'';
+  }
+
+  /**
+   * Writes the rows to SSTables in a local directory, and streams them to the cluster when it is closed.
+   */
+  private static final class BulkRecordWriter extends RecordWriter<Map<String, ByteBuffer>, List<ByteBuffer>> {
+    private final Configuration conf;
+    private final TaskAttemptContext context;
+    private final String keyspace;
+    private final String columnFamily;
+    private final int bufferSizeInMB;
+    private final int maxFailedHosts;
+    private File outputDir;
+    private CFMetaData metadata;
+    private CQLSSTableWriter writer;
+
+    private BulkRecordWriter(TaskAttemptContext context) {
+      this.conf = context.getConfiguration();
+      this.context = context;
+      this.keyspace = ConfigHelper.getOutputKeyspace(conf);
+      this.columnFamily = ConfigHelper.getOutputColumnFamily(conf);
+      this.bufferSizeInMB = conf.getInt(BUFFER_SIZE_IN_MB, DEFAULT_BUFFER_SIZE_IN_MB);
+      this.maxFailedHosts = conf.getInt(MAX_FAILED_HOSTS, 0);
+      JvmState.acquire(conf.getInt(STREAM_THROTTLE_MBITS, 0));
+    }
+
+    @Override
+    public void write(Map<String, ByteBuffer> keys, List<ByteBuffer> values) throws IOException {
+      if (writer == null) {
+        prepareWriter();
+      }
+      List<ByteBuffer> row = new ArrayList<>(keys.size() + values.size());
+      row.addAll(keys.values());
+      row.addAll(values);
+      try {
+        writer.rawAddRow(row);
+      } catch (InvalidRequestException e) {
+        throw new IOException("Failed to write row to SSTable: " + e.getMessage(), e);
+      }
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+      try {
+        if (writer == null) {
+          return;
+        }
+        try {
+          writer.close();
+          stream();
+        } finally {
+          FileUtils.deleteRecursive(outputDir.getParentFile().getParentFile());
+        }
+      } finally {
+        JvmState.release();
+      }
+    }
+
+    private void prepareWriter() throws IOException {
+      // the loader expects the SSTables to be in a <keyspace>/<column family> directory
+      String location = conf.get(OUTPUT_LOCATION, System.getProperty("java.io.tmpdir"));
+      if (location == null) {
+        throw new IOException("Output directory not defined, if Hadoop is not setting java.io.tmpdir then define " +
+                                OUTPUT_LOCATION);
+      }
+      outputDir = new File(new File(new File(location, context.getTaskAttemptID().toString()), keyspace), columnFamily);
+      if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+        throw new IOException("Failed to create directory " + outputDir);
+      }
+      metadata = readMetadata();
+      String schema = getCreateStatement(metadata);
+      LOG.debug("Writing SSTables for {} to {}", schema, outputDir);
+      synchronized (JvmState.class) {
+        JvmState.recordSchema(metadata);
+        registerColumnFamily();
+        writer = CQLSSTableWriter.builder()
+          .inDirectory(outputDir)
+          .forTable(schema)
+          .using(conf.get(INSERT_STATEMENT))
+          .withPartitioner(ConfigHelper.getOutputPartitioner(conf))
+          .withBufferSizeInMB(bufferSizeInMB)
+          .build();
+      }
+    }
+
+    /**
+     * Adds the column family to the keyspace definition, if the keyspace was already defined by another writer in
+     * this JVM. {@link CQLSSTableWriter} only defines the keyspace when it does not exist yet, and otherwise does not
+     * add the column family to it, which fails the validation of the insert statement.
+     */
+    private void registerColumnFamily() {
+      KSMetaData keyspaceMetadata = Schema.instance.getKSMetaData(keyspace);
+      if (keyspaceMetadata == null || keyspaceMetadata.cfMetaData().containsKey(columnFamily)) {
+        return;
+      }
+      if (Schema.instance.getId(keyspace, columnFamily) == null) {
+        Schema.instance.load(metadata);
+      }
+      List<CFMetaData> columnFamilies = new ArrayList<>(keyspaceMetadata.cfMetaData().values());
+      columnFamilies.add(metadata);
+      Schema.instance.setKeyspaceDefinition(KSMetaData.cloneWith(keyspaceMetadata, columnFamilies));
+    }
+
+    /**
+     * Reads the metadata of the column family from the system tables of the cluster. The metadata has the same id
+     * as the column family in the cluster, so that the streamed SSTables are added to it.
+     */
+    private CFMetaData readMetadata() throws IOException {
+      Cassandra.Client client = ConfigHelper.getClientFromOutputAddressList(conf);
+      try {
+        String where = String.format(" WHERE keyspace_name = %s AND columnfamily_name = %s",
+                                     quoteLiteral(keyspace), quoteLiteral(columnFamily));
+        CqlResult columnFamilies = execute(client, "SELECT * FROM system.schema_columnfamilies" + where);
+        if (columnFamilies.getRows().isEmpty()) {
+          throw new IOException(String.format("Column family %s does not exist in keyspace %s",
+                                              columnFamily, keyspace));
+        }
+        CqlResult columns = execute(client, "SELECT * FROM system.schema_columns" + where);
+        return CFMetaData.fromThriftCqlRow(columnFamilies.getRows().get(0), columns);
+      } finally {
+        client.getOutputProtocol().getTransport().close();
+      }
+    }
+
+    private void stream() throws IOException, InterruptedException {
+      SSTableLoader loader = new SSTableLoader(outputDir, new ExternalClient(conf, metadata),
+                                               new OutputHandler.LogOutput());
+      Future<StreamState> future = loader.stream();
+      while (true) {
+        try {
+          future.get(1000, TimeUnit.MILLISECONDS);
+          break;
+        } catch (TimeoutException e) {
+          // keeps the task alive while the SSTables are streamed
+          context.progress();
+        } catch (ExecutionException e) {
+          throw new IOException("Failed to stream SSTables to Cassandra", e.getCause());
+        }
+      }
+      if (loader.getFailedHosts().size() > maxFailedHosts) {
+        throw new IOException(String.format("Failed to stream SSTables to %d hosts, which is more than %d: %s",
+                                            loader.getFailedHosts().size(), maxFailedHosts,
+                                            loader.getFailedHosts()));
+      }
+      if (!loader.getFailedHosts().isEmpty()) {
+        LOG.warn("Failed to stream SSTables to hosts {}", loader.getFailedHosts());
+      }
+    }
+
+    private static CqlResult execute(Cassandra.Client client, String query) throws IOException {
+      try {
+        return client.execute_cql3_query(ByteBufferUtil.bytes(query), Compression.NONE, ConsistencyLevel.ONE);
+      } catch (TException e) {
+        throw new IOException("Failed to execute query " + query, e);
+      }
+    }
+  }
+
+  /**
+   * The JVM wide Cassandra state that the writers change: the client mode, the outbound streaming settings, and the
+   * keyspaces and column families in {@link Schema#instance}. The state is changed when the first writer in the JVM is
+   * created, and restored when the last one is closed, so that a Cassandra node running in the same JVM, as in tests,
+   * is only affected while writers are open.
+   */
+  private static final class JvmState {
+    private static int openWriters;
+    private static boolean clientMode;
+    private static boolean outboundBindAny;
+    private static int streamThroughput;
+    // the definitions of the keyspaces the writers use, from before the first writer used them. Null if undefined.
+    private static final Map<String, KSMetaData> KEYSPACES = new HashMap<>();
+    // the column families the writers added to the schema
+    private static final List<CFMetaData> COLUMN_FAMILIES = new ArrayList<>();
+
+    static synchronized void acquire(int streamThrottleMbits) {
+      if (openWriters++ == 0) {
+        clientMode = Config.isClientMode();
+        outboundBindAny = Config.getOutboundBindAny();
+        // the task is not a Cassandra node, so the configuration must not be loaded from cassandra.yaml
+        Config.setClientMode(true);
+        Config.setOutboundBindAny(true);
+        streamThroughput = DatabaseDescriptor.getStreamThroughputOutboundMegabitsPerSec();
+      }
+      DatabaseDescriptor.setStreamThroughputOutboundMegabitsPerSec(streamThrottleMbits);
+    }
+
+    /**
+     * Records the schema state that writing the given column family changes, so that it can be restored.
+     */
+    static synchronized void recordSchema(CFMetaData metadata) {
+      if (!KEYSPACES.containsKey(metadata.ksName)) {
+        KEYSPACES.put(metadata.ksName, Schema.instance.getKSMetaData(metadata.ksName));
+      }
+      if (Schema.instance.getId(metadata.ksName, metadata.cfName) == null) {
+        COLUMN_FAMILIES.add(metadata);
+      }
+    }
+
+    static synchronized void release() {
+      if (--openWriters > 0) {
+        return;
+      }
+      for (CFMetaData metadata : COLUMN_FAMILIES) {
+        Schema.instance.purge(metadata);
+      }
+      for (Map.Entry<String, KSMetaData> entry : KEYSPACES.entrySet()) {
+        if (entry.getValue() != null) {
+          Schema.instance.setKeyspaceDefinition(entry.getValue());
+        } else {
+          KSMetaData added = Schema.instance.getKSMetaData(entry.getKey());
+          if (added != null) {
+            Schema.instance.clearKeyspaceDefinition(added);
+          }
+          Schema.instance.removeKeyspaceInstance(entry.getKey());
+        }
+      }
+      COLUMN_FAMILIES.clear();
+      KEYSPACES.clear();
+      DatabaseDescriptor.setStreamThroughputOutboundMegabitsPerSec(streamThroughput);
+      Config.setOutboundBindAny(outboundBindAny);
+      Config.setClientMode(clientMode);
+    }
+  }
+
+  /**
+   * A {@link SSTableLoader.Client} that finds the nodes owning each token range through the Thrift port.
+   */
+  private static final class ExternalClient extends SSTableLoader.Client {
+    private final Configuration conf;
+    private final CFMetaData metadata;
+
+    private ExternalClient(Configuration conf, CFMetaData metadata) {
+      this.conf = conf;
+      this.metadata = metadata;
+    }
+
+    @Override
+    public void init(String keyspace) {
+      try {
+        Cassandra.Client client = ConfigHelper.getClientFromOutputAddressList(conf);
+        try {
+          setPartitioner(client.describe_partitioner());
+          Token.TokenFactory tokenFactory = getPartitioner().getTokenFactory();
+          for (TokenRange tokenRange : client.describe_ring(keyspace)) {
+            Range<Token> range = new Range<>(tokenFactory.fromString(tokenRange.start_token),
+                                             tokenFactory.fromString(tokenRange.end_token));
+            for (String endpoint : tokenRange.endpoints) {
+              addRangeForEndpoint(range, InetAddress.getByName(endpoint));
+            }
+          }
+        } finally {
+          client.getOutputProtocol().getTransport().close();
+        }
+      } catch (Exception e) {
+        throw new RuntimeException("Could not retrieve endpoint ranges: ", e);
+      }
+    }
+
+    @Override
+    public CFMetaData getCFMetaData(String keyspace, String columnFamily) {
+      return metadata.ksName.equals(keyspace) && metadata.cfName.equals(columnFamily) ? metadata : null;
+    }
+  }
+}
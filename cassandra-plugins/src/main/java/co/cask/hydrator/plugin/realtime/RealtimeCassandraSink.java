@@ -27,25 +27,34 @@ import co.cask.cdap.etl.api.realtime.RealtimeSink;
 import co.cask.hydrator.common.ReferencePluginConfig;
 import co.cask.hydrator.common.ReferenceRealtimeSink;
 import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ProtocolOptions;
 import com.datastax.driver.core.QueryOptions;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.Policies;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -54,6 +63,12 @@ import javax.annotation.Nullable;
  * This {@link RealtimeCassandraSink} takes in a {@link StructuredRecord},
  * and writes it to the Cassandra server.
  * </p>
+ * <p>
+ * By default, all the records given to {@link #write(Iterable, DataWriter)} are written in a single batch. With
+ * asynchronous writes, the records are grouped by partition key, and each group is written in its own batch directly
+ * to a replica of the partition. Up to {@link RealtimeCassandraSinkConfig#maxInFlightRequests} batches are sent at
+ * the same time, and the write returns once all of them have completed.
+ * </p>
  */
 @Plugin(type = RealtimeSink.PLUGIN_TYPE)
 @Name("Cassandra")
@@ -62,12 +77,16 @@ public class RealtimeCassandraSink extends ReferenceRealtimeSink<StructuredRecor
   private static final Logger LOG = LoggerFactory.getLogger(RealtimeCassandraSink.class);
   private static final String ADDRESSES_DESCRIPTION =
     "A comma-separated list of address(es) to connect to. For example, \"host1:9042,host2:9042\".";
+  private static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 64;
   private final RealtimeCassandraSinkConfig config;
 
   private Cluster cluster;
   private Session session;
-  private List<String> columns;
+  private String[] columns;
   private PreparedStatement statement;
+  private RealtimeContext context;
+  private boolean asyncWrites;
+  private Semaphore inFlightRequests;
 
   public RealtimeCassandraSink(RealtimeCassandraSinkConfig config) {
     super(config);
@@ -77,6 +96,8 @@ public class RealtimeCassandraSink extends ReferenceRealtimeSink<StructuredRecor
   @Override
   public void initialize(RealtimeContext context) throws Exception {
     super.initialize(context);
+    this.context = context;
+    asyncWrites = config.asyncWrites != null && config.asyncWrites;
     Collection<InetSocketAddress> addresses = parseAddresses(config.addresses);
     Cluster.Builder builder = new Cluster.Builder().addContactPointsWithPorts(addresses);
     if (!Strings.isNullOrEmpty(config.username)) {
@@ -84,9 +105,15 @@ public class RealtimeCassandraSink extends ReferenceRealtimeSink<StructuredRecor
     }
     builder.withQueryOptions(new QueryOptions().setConsistencyLevel(ConsistencyLevel.valueOf(config.consistencyLevel)));
     builder.withCompression(ProtocolOptions.Compression.valueOf(config.compression));
+    if (asyncWrites) {
+      // sends each batch to a replica of its partition, instead of having the coordinator forward it
+      builder.withLoadBalancingPolicy(new TokenAwarePolicy(Policies.defaultLoadBalancingPolicy()));
+      inFlightRequests = new Semaphore(config.maxInFlightRequests == null ?
+                                         DEFAULT_MAX_IN_FLIGHT_REQUESTS : config.maxInFlightRequests);
+    }
     cluster = builder.build();
     session = cluster.connect(config.keyspace);
-    columns = Arrays.asList(CharMatcher.WHITESPACE.removeFrom(config.columns).split(","));
+    columns = CharMatcher.WHITESPACE.removeFrom(config.columns).split(",");
     statement = session.prepare(String.format("INSERT INTO %s (%s) VALUES (%s)",
                                               config.columnFamily,
                                               config.columns.replaceAll(",", ", "),
@@ -104,6 +131,9 @@ public class RealtimeCassandraSink extends ReferenceRealtimeSink<StructuredRecor
     Preconditions.checkArgument(!parseAddresses(config.addresses).isEmpty(),
                                 "At least one pair of IP and port should be provided.",
                                 config.addresses, ADDRESSES_DESCRIPTION);
+    Preconditions.checkArgument(config.maxInFlightRequests == null || config.maxInFlightRequests >= 1,
+                                "Invalid value for %s. Must be at least 1, but got %s",
+                                Cassandra.MAX_IN_FLIGHT_REQUESTS, config.maxInFlightRequests);
   }
 
   private List<InetSocketAddress> parseAddresses(String addressString) {
@@ -125,20 +155,93 @@ public class RealtimeCassandraSink extends ReferenceRealtimeSink<StructuredRecor
 
   @Override
   public int write(Iterable<StructuredRecord> structuredRecords, DataWriter dataWriter) throws Exception {
+    if (asyncWrites) {
+      return writeAsync(structuredRecords);
+    }
     BatchStatement batch = new BatchStatement();
     int count = 0;
+    // the values are serialized when they are bound, so the same array can be used for every record
+    Object[] toBind = new Object[columns.length];
     for (StructuredRecord record : structuredRecords) {
-      Object[] toBind = new Object[columns.size()];
-      for (int i = 0; i < columns.size(); i++) {
-        toBind[i] = record.get(columns.get(i));
-      }
-      batch.add(statement.bind(toBind));
+      batch.add(bind(record, toBind));
       count++;
     }
     session.execute(batch);
     return count;
   }
 
+  private int writeAsync(Iterable<StructuredRecord> structuredRecords) throws Exception {
+    // statements without a routing key cannot be grouped, so they are sent on their own
+    Map<ByteBuffer, BatchStatement> batches = new HashMap<>();
+    List<Statement> statements = new ArrayList<>();
+    int count = 0;
+    Object[] toBind = new Object[columns.length];
+    for (StructuredRecord record : structuredRecords) {
+      BoundStatement boundStatement = bind(record, toBind);
+      ByteBuffer routingKey = boundStatement.getRoutingKey();
+      if (routingKey == null) {
+        statements.add(boundStatement);
+      } else {
+        BatchStatement batch = batches.get(routingKey);
+        if (batch == null) {
+          // all the statements of the batch are for the same partition, so it does not need to be logged
+          batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+          batches.put(routingKey, batch);
+          statements.add(batch);
+        }
+        batch.add(boundStatement);
+      }
+      count++;
+    }
+
+    List<ResultSetFuture> futures = new ArrayList<>(statements.size());
+    for (Statement statement : statements) {
+      futures.add(executeAsync(statement));
+    }
+    for (ResultSetFuture future : futures) {
+      future.getUninterruptibly();
+    }
+    context.getMetrics().gauge("cassandra.write.requests", futures.size());
+    return count;
+  }
+
+  /**
+   * Sends a statement once fewer than the maximum number of requests are in flight.
+   */
+  private ResultSetFuture executeAsync(Statement statement) throws InterruptedException {
+    if (!inFlightRequests.tryAcquire()) {
+      long waitStart = System.nanoTime();
+      inFlightRequests.acquire();
+      context.getMetrics().count("cassandra.write.throttled", 1);
+      context.getMetrics().gauge("cassandra.write.throttle.ms",
+                                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart));
+    }
+    final long startNanos = System.nanoTime();
+    ResultSetFuture future;
+    try {
+      future = session.executeAsync(statement);
+    } catch (RuntimeException e) {
+      inFlightRequests.release();
+      throw e;
+    }
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        inFlightRequests.release();
+        context.getMetrics().gauge("cassandra.write.latency.ms",
+                                   TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    return future;
+  }
+
+  private BoundStatement bind(StructuredRecord record, Object[] toBind) {
+    for (int i = 0; i < columns.length; i++) {
+      toBind[i] = record.get(columns[i]);
+    }
+    return statement.bind(toBind);
+  }
+
   @Override
   public void destroy() {
     cluster.close();
@@ -185,9 +288,29 @@ public class RealtimeCassandraSink extends ReferenceRealtimeSink<StructuredRecor
     @Description("The string representation of the compression for the query. For example: \"NONE\".")
     private String compression;
 
+    @Name(Cassandra.ASYNC_WRITES)
+    @Description("Whether to group the records by partition key, and to write each group asynchronously in its own " +
+      "batch to a replica of the partition, instead of writing all the records in one batch. Defaults to false.")
+    @Nullable
+    private Boolean asyncWrites;
+
+    @Name(Cassandra.MAX_IN_FLIGHT_REQUESTS)
+    @Description("The maximum number of batches that are written at the same time when writing asynchronously. " +
+      "Defaults to 64.")
+    @Nullable
+    private Integer maxInFlightRequests;
+
     public RealtimeCassandraSinkConfig(String referenceName, String columnFamily, String columns, String compression,
                                        String keyspace, String addresses, String consistencyLevel,
                                        @Nullable String username, @Nullable String password) {
+      this(referenceName, columnFamily, columns, compression, keyspace, addresses, consistencyLevel, username,
+           password, null, null);
+    }
+
+    public RealtimeCassandraSinkConfig(String referenceName, String columnFamily, String columns, String compression,
+                                       String keyspace, String addresses, String consistencyLevel,
+                                       @Nullable String username, @Nullable String password,
+                                       @Nullable Boolean asyncWrites, @Nullable Integer maxInFlightRequests) {
       super(referenceName);
       this.addresses = addresses;
       this.columnFamily = columnFamily;
@@ -197,6 +320,8 @@ public class RealtimeCassandraSink extends ReferenceRealtimeSink<StructuredRecor
       this.consistencyLevel = consistencyLevel;
       this.columns = columns;
       this.compression = compression;
+      this.asyncWrites = asyncWrites;
+      this.maxInFlightRequests = maxInFlightRequests;
     }
   }
 
@@ -212,6 +337,8 @@ public class RealtimeCassandraSink extends ReferenceRealtimeSink<StructuredRecor
     public static final String COLUMNS = "columns";
     public static final String CONSISTENCY_LEVEL = "consistencyLevel";
     public static final String COMPRESSION = "compression";
+    public static final String ASYNC_WRITES = "asyncWrites";
+    public static final String MAX_IN_FLIGHT_REQUESTS = "maxInFlightRequests";
   }
 }
 
@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.apache.cassandra.streaming;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.streaming.management.StreamEventJMXNotifier;
+import org.apache.cassandra.streaming.management.StreamStateCompositeData;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanNotificationInfo;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * TODO: remove once guava removed from cdap-api
+ * Copied from Cassandra to avoid guava conflicts from method signature change to RateLimiter.acquire(int x).
+ */
+public class StreamManager implements StreamManagerMBean {
+  public static final StreamManager instance = new StreamManager();
+
+  private final StreamEventJMXNotifier notifier = new StreamEventJMXNotifier();
+  private final Map<UUID, StreamResultFuture> initiatedStreams = new NonBlockingHashMap<>();
+  private final Map<UUID, StreamResultFuture> receivingStreams = new NonBlockingHashMap<>();
+
+  public static StreamRateLimiter getRateLimiter(InetAddress peer) {
+    return new StreamRateLimiter(peer);
+  }
+
+  @Override
+  public Set<CompositeData> getCurrentStreams() {
+    return Sets.newHashSet(Iterables.transform(Iterables.concat(initiatedStreams.values(), receivingStreams.values()),
+                                               new Function<StreamResultFuture, CompositeData>() {
+      @Override
+      public CompositeData apply(StreamResultFuture input) {
+        return StreamStateCompositeData.toCompositeData(input.getCurrentState());
+      }
+    }));
+  }
+
+  public void register(final StreamResultFuture result) {
+    result.addEventListener(notifier);
+    result.addListener(new Runnable() {
+      @Override
+      public void run() {
+        initiatedStreams.remove(result.planId);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    initiatedStreams.put(result.planId, result);
+  }
+
+  public void registerReceiving(final StreamResultFuture result) {
+    result.addEventListener(notifier);
+    result.addListener(new Runnable() {
+      @Override
+      public void run() {
+        receivingStreams.remove(result.planId);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    receivingStreams.put(result.planId, result);
+  }
+
+  public StreamResultFuture getReceivingStream(UUID planId) {
+    return receivingStreams.get(planId);
+  }
+
+  @Override
+  public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+    notifier.addNotificationListener(listener, filter, handback);
+  }
+
+  @Override
+  public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+    notifier.removeNotificationListener(listener);
+  }
+
+  @Override
+  public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback)
+    throws ListenerNotFoundException {
+    notifier.removeNotificationListener(listener, filter, handback);
+  }
+
+  @Override
+  public MBeanNotificationInfo[] getNotificationInfo() {
+    return notifier.getNotificationInfo();
+  }
+
+  /**
+   * Limits the outbound streaming throughput, in megabits per second.
+   */
+  public static class StreamRateLimiter {
+    private static final double BYTES_PER_MEGABIT = (1024 * 1024) / 8;
+    private static final RateLimiter limiter = RateLimiter.create(Double.MAX_VALUE);
+    private static final RateLimiter interDCLimiter = RateLimiter.create(Double.MAX_VALUE);
+    private final boolean isLocalDC;
+
+    public StreamRateLimiter(InetAddress peer) {
+      double throughput = DatabaseDescriptor.getStreamThroughputOutboundMegabitsPerSec() * BYTES_PER_MEGABIT;
+      mayUpdateThroughput(throughput, limiter);
+
+      double interDCThroughput =
+        DatabaseDescriptor.getInterDCStreamThroughputOutboundMegabitsPerSec() * BYTES_PER_MEGABIT;
+      mayUpdateThroughput(interDCThroughput, interDCLimiter);
+
+      if (DatabaseDescriptor.getLocalDataCenter() != null && DatabaseDescriptor.getEndpointSnitch() != null) {
+        isLocalDC = DatabaseDescriptor.getLocalDataCenter().equals(
+          DatabaseDescriptor.getEndpointSnitch().getDatacenter(peer));
+      } else {
+        isLocalDC = true;
+      }
+    }
+
+    private void mayUpdateThroughput(double limit, RateLimiter rateLimiter) {
+      // if throughput is set to 0, throttling is disabled
+      if (limit == 0) {
+        limit = Double.MAX_VALUE;
+      }
+      if (rateLimiter.getRate() != limit) {
+        rateLimiter.setRate(limit);
+      }
+    }
+
+    public void acquire(int toTransfer) {
+      limiter.acquire(toTransfer);
+      if (!isLocalDC) {
+        interDCLimiter.acquire(toTransfer);
+      }
+    }
+  }
+}
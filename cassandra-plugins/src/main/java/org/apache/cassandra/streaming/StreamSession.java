@@ -0,0 +1,521 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.apache.cassandra.streaming;
+
+import com.google.common.collect.Iterables;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RowPosition;
+import org.apache.cassandra.dht.AbstractBounds;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.gms.ApplicationState;
+import org.apache.cassandra.gms.EndpointState;
+import org.apache.cassandra.gms.IEndpointStateChangeSubscriber;
+import org.apache.cassandra.gms.VersionedValue;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.metrics.StreamingMetrics;
+import org.apache.cassandra.streaming.messages.CompleteMessage;
+import org.apache.cassandra.streaming.messages.FileMessageHeader;
+import org.apache.cassandra.streaming.messages.IncomingFileMessage;
+import org.apache.cassandra.streaming.messages.OutgoingFileMessage;
+import org.apache.cassandra.streaming.messages.PrepareMessage;
+import org.apache.cassandra.streaming.messages.ReceivedMessage;
+import org.apache.cassandra.streaming.messages.RetryMessage;
+import org.apache.cassandra.streaming.messages.SessionFailedMessage;
+import org.apache.cassandra.streaming.messages.StreamMessage;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * TODO: remove once guava removed from cdap-api
+ * Copied from Cassandra to avoid guava conflicts from Sets.newConcurrentHashSet(), which does not exist in the guava
+ * version of cdap-api.
+ */
+public class StreamSession implements IEndpointStateChangeSubscriber {
+  private static final Logger logger = LoggerFactory.getLogger(StreamSession.class);
+
+  public final InetAddress peer;
+  public final ConnectionHandler handler;
+
+  private final int index;
+  private final Set<StreamRequest> requests =
+    Collections.newSetFromMap(new ConcurrentHashMap<StreamRequest, Boolean>());
+  private final Map<UUID, StreamTransferTask> transfers = new ConcurrentHashMap<>();
+  private final Map<UUID, StreamReceiveTask> receivers = new ConcurrentHashMap<>();
+  private final StreamingMetrics metrics;
+  private final AtomicBoolean isAborted = new AtomicBoolean(false);
+
+  private StreamResultFuture streamResult;
+  private int retries;
+  private volatile State state = State.INITIALIZED;
+  private volatile boolean completeSent = false;
+
+  /**
+   * State of the streaming session.
+   */
+  public enum State {
+    INITIALIZED,
+    PREPARING,
+    STREAMING,
+    WAIT_COMPLETE,
+    COMPLETE,
+    FAILED,
+  }
+
+  public StreamSession(InetAddress peer, int index) {
+    this.peer = peer;
+    this.index = index;
+    this.handler = new ConnectionHandler(this);
+    this.metrics = StreamingMetrics.get(peer);
+  }
+
+  public UUID planId() {
+    return streamResult == null ? null : streamResult.planId;
+  }
+
+  public int sessionIndex() {
+    return index;
+  }
+
+  public String description() {
+    return streamResult == null ? null : streamResult.description;
+  }
+
+  public void init(StreamResultFuture streamResult) {
+    this.streamResult = streamResult;
+  }
+
+  public void start() {
+    if (requests.isEmpty() && transfers.isEmpty()) {
+      logger.info("[Stream #{}] Session does not have any tasks.", planId());
+      closeSession(State.COMPLETE);
+      return;
+    }
+    try {
+      logger.info("[Stream #{}, ID#{}] Beginning stream session with {}", planId(), sessionIndex(), peer);
+      handler.initiate();
+      onInitializationComplete();
+    } catch (Exception e) {
+      onError(e);
+    }
+  }
+
+  public void addStreamRequest(String keyspace, Collection<Range<Token>> ranges, Collection<String> columnFamilies,
+                               long repairedAt) {
+    requests.add(new StreamRequest(keyspace, ranges, columnFamilies, repairedAt));
+  }
+
+  public void addTransferRanges(String keyspace, Collection<Range<Token>> ranges, Collection<String> columnFamilies,
+                                boolean flushTables, long repairedAt) {
+    Collection<ColumnFamilyStore> stores = getColumnFamilyStores(keyspace, columnFamilies);
+    if (flushTables) {
+      flushSSTables(stores);
+    }
+    List<Range<Token>> normalizedRanges = Range.normalize(ranges);
+    List<SSTableStreamingSections> sections = getSSTableSectionsForRanges(normalizedRanges, stores, repairedAt);
+    try {
+      addTransferFiles(sections);
+    } finally {
+      for (SSTableStreamingSections release : sections) {
+        release.sstable.releaseReference();
+      }
+    }
+  }
+
+  private Collection<ColumnFamilyStore> getColumnFamilyStores(String keyspace, Collection<String> columnFamilies) {
+    Collection<ColumnFamilyStore> stores = new HashSet<>();
+    // if columnfamilies are not specified, we add all cf under the keyspace
+    if (columnFamilies.isEmpty()) {
+      stores.addAll(Keyspace.open(keyspace).getColumnFamilyStores());
+    } else {
+      for (String cf : columnFamilies) {
+        stores.add(Keyspace.open(keyspace).getColumnFamilyStore(cf));
+      }
+    }
+    return stores;
+  }
+
+  private List<SSTableStreamingSections> getSSTableSectionsForRanges(Collection<Range<Token>> ranges,
+                                                                     Collection<ColumnFamilyStore> stores,
+                                                                     long overriddenRepairedAt) {
+    List<SSTableReader> sstables = new ArrayList<>();
+    try {
+      for (ColumnFamilyStore cfStore : stores) {
+        List<AbstractBounds<RowPosition>> rowBoundsList = new ArrayList<>(ranges.size());
+        for (Range<Token> range : ranges) {
+          rowBoundsList.add(range.toRowBounds());
+        }
+        ColumnFamilyStore.ViewFragment view = cfStore.selectAndReference(cfStore.viewFilter(rowBoundsList));
+        sstables.addAll(view.sstables);
+      }
+      List<SSTableStreamingSections> sections = new ArrayList<>(sstables.size());
+      for (SSTableReader sstable : sstables) {
+        long repairedAt = overriddenRepairedAt;
+        if (overriddenRepairedAt == 0) {
+          repairedAt = sstable.getSSTableMetadata().repairedAt;
+        }
+        sections.add(new SSTableStreamingSections(sstable, sstable.getPositionsForRanges(ranges),
+                                                  sstable.estimatedKeysForRanges(ranges), repairedAt));
+      }
+      return sections;
+    } catch (Throwable t) {
+      SSTableReader.releaseReferences(sstables);
+      throw t;
+    }
+  }
+
+  public void addTransferFiles(Collection<SSTableStreamingSections> sstableDetails) {
+    Iterator<SSTableStreamingSections> iter = sstableDetails.iterator();
+    while (iter.hasNext()) {
+      SSTableStreamingSections details = iter.next();
+      if (details.sections.isEmpty()) {
+        // A reference was acquired on the sstable and we won't stream it
+        details.sstable.releaseReference();
+        iter.remove();
+        continue;
+      }
+
+      UUID cfId = details.sstable.metadata.cfId;
+      StreamTransferTask task = transfers.get(cfId);
+      if (task == null) {
+        task = new StreamTransferTask(this, cfId);
+        transfers.put(cfId, task);
+      }
+      task.addTransferFile(details.sstable, details.estimatedKeys, details.sections, details.repairedAt);
+      iter.remove();
+    }
+  }
+
+  private synchronized void closeSession(State finalState) {
+    if (isAborted.compareAndSet(false, true)) {
+      state(finalState);
+
+      if (finalState == State.FAILED) {
+        for (StreamTask task : Iterables.concat(receivers.values(), transfers.values())) {
+          task.abort();
+        }
+      }
+
+      // Note that we shouldn't block on this close because this method is called on the handler
+      // incoming thread (so we would deadlock).
+      handler.close();
+
+      streamResult.handleSessionComplete(this);
+    }
+  }
+
+  public void state(State newState) {
+    state = newState;
+  }
+
+  public State state() {
+    return state;
+  }
+
+  public boolean isSuccess() {
+    return state == State.COMPLETE;
+  }
+
+  public void messageReceived(StreamMessage message) {
+    switch (message.type) {
+      case PREPARE:
+        PrepareMessage msg = (PrepareMessage) message;
+        prepare(msg.requests, msg.summaries);
+        break;
+
+      case FILE:
+        receive((IncomingFileMessage) message);
+        break;
+
+      case RECEIVED:
+        ReceivedMessage received = (ReceivedMessage) message;
+        received(received.cfId, received.sequenceNumber);
+        break;
+
+      case RETRY:
+        RetryMessage retry = (RetryMessage) message;
+        retry(retry.cfId, retry.sequenceNumber);
+        break;
+
+      case COMPLETE:
+        complete();
+        break;
+
+      case SESSION_FAILED:
+        sessionFailed();
+        break;
+
+      default:
+        break;
+    }
+  }
+
+  public void onInitializationComplete() {
+    // send prepare message
+    state(State.PREPARING);
+    PrepareMessage prepare = new PrepareMessage();
+    prepare.requests.addAll(requests);
+    for (StreamTransferTask task : transfers.values()) {
+      prepare.summaries.add(task.getSummary());
+    }
+    handler.sendMessage(prepare);
+
+    // if we don't need to prepare for receiving stream, start sending files immediately
+    if (requests.isEmpty()) {
+      startStreamingFiles();
+    }
+  }
+
+  public void onError(Throwable e) {
+    logger.error("[Stream #{}] Streaming error occurred", planId(), e);
+    // send session failure message
+    if (handler.isOutgoingConnected()) {
+      handler.sendMessage(new SessionFailedMessage());
+    }
+    // fail session
+    closeSession(State.FAILED);
+  }
+
+  public void prepare(Collection<StreamRequest> requests, Collection<StreamSummary> summaries) {
+    // prepare tasks
+    state(State.PREPARING);
+    for (StreamRequest request : requests) {
+      addTransferRanges(request.keyspace, request.ranges, request.columnFamilies, true, request.repairedAt);
+    }
+    for (StreamSummary summary : summaries) {
+      prepareReceiving(summary);
+    }
+
+    // send back prepare message if prepare message contains stream request
+    if (!requests.isEmpty()) {
+      PrepareMessage prepare = new PrepareMessage();
+      for (StreamTransferTask task : transfers.values()) {
+        prepare.summaries.add(task.getSummary());
+      }
+      handler.sendMessage(prepare);
+    }
+
+    // if there are files to stream
+    if (!maybeCompleted()) {
+      startStreamingFiles();
+    }
+  }
+
+  public void fileSent(FileMessageHeader header) {
+    long headerSize = header.size();
+    StreamingMetrics.totalOutgoingBytes.inc(headerSize);
+    metrics.outgoingBytes.inc(headerSize);
+    // schedule timeout for receiving ACK
+    StreamTransferTask task = transfers.get(header.cfId);
+    if (task != null) {
+      task.scheduleTimeout(header.sequenceNumber, 12, TimeUnit.HOURS);
+    }
+  }
+
+  public void receive(IncomingFileMessage message) {
+    long headerSize = message.header.size();
+    StreamingMetrics.totalIncomingBytes.inc(headerSize);
+    metrics.incomingBytes.inc(headerSize);
+    // send back file received message
+    handler.sendMessage(new ReceivedMessage(message.header.cfId, message.header.sequenceNumber));
+    receivers.get(message.header.cfId).received(message.sstable);
+  }
+
+  public void progress(Descriptor desc, ProgressInfo.Direction direction, long bytes, long total) {
+    ProgressInfo progress = new ProgressInfo(peer, index, desc.filenameFor(Component.DATA), direction, bytes, total);
+    streamResult.handleProgress(progress);
+  }
+
+  public void received(UUID cfId, int sequenceNumber) {
+    transfers.get(cfId).complete(sequenceNumber);
+  }
+
+  public void retry(UUID cfId, int sequenceNumber) {
+    OutgoingFileMessage message = transfers.get(cfId).createMessageForRetry(sequenceNumber);
+    handler.sendMessage(message);
+  }
+
+  public synchronized void complete() {
+    if (state == State.WAIT_COMPLETE) {
+      if (!completeSent) {
+        handler.sendMessage(new CompleteMessage());
+        completeSent = true;
+      }
+      closeSession(State.COMPLETE);
+    } else {
+      state(State.WAIT_COMPLETE);
+    }
+  }
+
+  public synchronized void sessionFailed() {
+    closeSession(State.FAILED);
+  }
+
+  public void doRetry(FileMessageHeader header, Throwable e) {
+    logger.warn("[Stream #{}] Retrying for following error", planId(), e);
+    // retry
+    retries++;
+    if (retries > DatabaseDescriptor.getMaxStreamingRetries()) {
+      onError(new IOException("Too many retries for " + header, e));
+    } else {
+      handler.sendMessage(new RetryMessage(header.cfId, header.sequenceNumber));
+    }
+  }
+
+  public SessionInfo getSessionInfo() {
+    List<StreamSummary> receivingSummaries = new ArrayList<>();
+    for (StreamTask receiver : receivers.values()) {
+      receivingSummaries.add(receiver.getSummary());
+    }
+    List<StreamSummary> transferSummaries = new ArrayList<>();
+    for (StreamTask transfer : transfers.values()) {
+      transferSummaries.add(transfer.getSummary());
+    }
+    return new SessionInfo(peer, index, receivingSummaries, transferSummaries, state);
+  }
+
+  public synchronized void taskCompleted(StreamReceiveTask completedTask) {
+    receivers.remove(completedTask.cfId);
+    maybeCompleted();
+  }
+
+  public synchronized void taskCompleted(StreamTransferTask completedTask) {
+    transfers.remove(completedTask.cfId);
+    maybeCompleted();
+  }
+
+  @Override
+  public void onJoin(InetAddress endpoint, EndpointState epState) {
+  }
+
+  @Override
+  public void beforeChange(InetAddress endpoint, EndpointState currentState, ApplicationState newStateKey,
+                           VersionedValue newValue) {
+  }
+
+  @Override
+  public void onChange(InetAddress endpoint, ApplicationState state, VersionedValue value) {
+  }
+
+  @Override
+  public void onAlive(InetAddress endpoint, EndpointState state) {
+  }
+
+  @Override
+  public void onDead(InetAddress endpoint, EndpointState state) {
+  }
+
+  @Override
+  public void onRemove(InetAddress endpoint) {
+    closeSession(State.FAILED);
+  }
+
+  @Override
+  public void onRestart(InetAddress endpoint, EndpointState epState) {
+    closeSession(State.FAILED);
+  }
+
+  private boolean maybeCompleted() {
+    boolean completed = receivers.isEmpty() && transfers.isEmpty();
+    if (completed) {
+      if (state == State.WAIT_COMPLETE) {
+        if (!completeSent) {
+          handler.sendMessage(new CompleteMessage());
+          completeSent = true;
+        }
+        closeSession(State.COMPLETE);
+      } else {
+        // notify peer that this session is completed
+        handler.sendMessage(new CompleteMessage());
+        completeSent = true;
+        state(State.WAIT_COMPLETE);
+      }
+    }
+    return completed;
+  }
+
+  /**
+   * Flushes memtable and blocks until flush completes.
+   */
+  private void flushSSTables(Iterable<ColumnFamilyStore> stores) {
+    List<Future<?>> flushes = new ArrayList<>();
+    for (ColumnFamilyStore cfs : stores) {
+      flushes.add(cfs.forceFlush());
+    }
+    FBUtilities.waitOnFutures(flushes);
+  }
+
+  private void prepareReceiving(StreamSummary summary) {
+    if (summary.files > 0) {
+      receivers.put(summary.cfId, new StreamReceiveTask(this, summary.cfId, summary.files, summary.totalSize));
+    }
+  }
+
+  private void startStreamingFiles() {
+    streamResult.handleSessionPrepared(this);
+
+    state(State.STREAMING);
+    for (StreamTransferTask task : transfers.values()) {
+      Collection<OutgoingFileMessage> messages = task.getFileMessages();
+      if (messages.size() > 0) {
+        handler.sendMessages(messages);
+      } else {
+        taskCompleted(task); // there are no files to send
+      }
+    }
+  }
+
+  /**
+   * The sections of an SSTable to stream.
+   */
+  public static class SSTableStreamingSections {
+    public final SSTableReader sstable;
+    public final List<Pair<Long, Long>> sections;
+    public final long estimatedKeys;
+    public final long repairedAt;
+
+    public SSTableStreamingSections(SSTableReader sstable, List<Pair<Long, Long>> sections, long estimatedKeys,
+                                    long repairedAt) {
+      this.sstable = sstable;
+      this.sections = sections;
+      this.estimatedKeys = estimatedKeys;
+      this.repairedAt = repairedAt;
+    }
+  }
+}
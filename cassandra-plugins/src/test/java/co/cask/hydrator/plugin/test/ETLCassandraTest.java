@@ -48,11 +48,15 @@ import co.cask.cdap.test.TestConfiguration;
 import co.cask.cdap.test.WorkerManager;
 import co.cask.hydrator.common.Constants;
 import co.cask.hydrator.plugin.batch.sink.BatchCassandraSink;
+import co.cask.hydrator.plugin.batch.sink.CassandraBulkOutputFormat;
 import co.cask.hydrator.plugin.batch.source.BatchCassandraSource;
 import co.cask.hydrator.plugin.realtime.RealtimeCassandraSink;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.KSMetaData;
 import org.apache.cassandra.hadoop.ColumnFamilySplit;
 import org.apache.cassandra.hadoop.ConfigHelper;
 import org.apache.cassandra.hadoop.cql3.CqlInputFormat;
@@ -62,6 +66,7 @@ import org.apache.cassandra.thrift.Column;
 import org.apache.cassandra.thrift.Compression;
 import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.hadoop.conf.Configuration;
 import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
@@ -73,7 +78,9 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -90,6 +97,13 @@ public class ETLCassandraTest extends HydratorTestBase {
     Schema.Field.of("ticker", Schema.of(Schema.Type.STRING)),
     Schema.Field.of("num", Schema.of(Schema.Type.INT)),
     Schema.Field.of("price", Schema.of(Schema.Type.DOUBLE)));
+  private static final Schema BULK_SCHEMA = Schema.recordOf(
+    "quote",
+    Schema.Field.of("exchange", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("ticker", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("day", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("num", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("price", Schema.of(Schema.Type.DOUBLE)));
 
   private static Cassandra.Client client;
   private static int rpcPort;
@@ -129,6 +143,7 @@ public class ETLCassandraTest extends HydratorTestBase {
                       parents,
                       BatchCassandraSink.class, BatchCassandraSource.class,
                       CqlInputFormat.class, CqlOutputFormat.class, ColumnFamilySplit.class,
+                      CassandraBulkOutputFormat.class,
                       RealtimeCassandraSink.class);
 
     rpcPort = 9160;
@@ -148,6 +163,14 @@ public class ETLCassandraTest extends HydratorTestBase {
       ByteBufferUtil.bytes("CREATE TABLE testtablerealtime ( name text, graduated boolean, " +
                              "id int, score double, time bigint PRIMARY KEY );"),
       Compression.NONE, ConsistencyLevel.ALL);
+    client.execute_cql3_query(
+      ByteBufferUtil.bytes("CREATE TABLE testtableasync ( dept text, id int, name text, " +
+                             "PRIMARY KEY (dept, id) );"),
+      Compression.NONE, ConsistencyLevel.ALL);
+    client.execute_cql3_query(
+      ByteBufferUtil.bytes("CREATE TABLE testtablebulk ( exchange text, ticker text, day int, num int, price double, " +
+                             "PRIMARY KEY ((exchange, ticker), day) ) WITH CLUSTERING ORDER BY (day DESC);"),
+      Compression.NONE, ConsistencyLevel.ALL);
   }
 
   @AfterClass
@@ -162,6 +185,79 @@ public class ETLCassandraTest extends HydratorTestBase {
     testCassandraSource();
   }
 
+  @Test
+  public void testCassandraRealtimeSinkAsyncWrites() throws Exception {
+    Schema schema = Schema.recordOf(
+      "employee",
+      Schema.Field.of("dept", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("name", Schema.of(Schema.Type.STRING))
+    );
+    // several rows for each of several partitions, so that the rows are grouped into one batch per partition,
+    // and more batches than requests that may be in flight at once
+    final int depts = 5;
+    final int employeesPerDept = 4;
+    List<StructuredRecord> input = new ArrayList<>();
+    for (int id = 0; id < depts * employeesPerDept; id++) {
+      input.add(StructuredRecord.builder(schema)
+                  .set("dept", "dept" + (id % depts))
+                  .set("id", id)
+                  .set("name", "employee" + id)
+                  .build());
+    }
+
+    ETLStage source = new ETLStage("source", co.cask.cdap.etl.mock.realtime.MockSource.getPlugin(input));
+    ETLStage sink = new ETLStage("Cassandra", new ETLPlugin(
+      "Cassandra",
+      RealtimeSink.PLUGIN_TYPE,
+      new ImmutableMap.Builder<String, String>()
+        .put(Constants.Reference.REFERENCE_NAME, "TestCassAsync")
+        .put(RealtimeCassandraSink.Cassandra.ADDRESSES, "localhost:9042")
+        .put(RealtimeCassandraSink.Cassandra.KEYSPACE, "testkeyspace")
+        .put(RealtimeCassandraSink.Cassandra.COLUMN_FAMILY, "testtableasync")
+        .put(RealtimeCassandraSink.Cassandra.COLUMNS, "dept, id, name")
+        .put(RealtimeCassandraSink.Cassandra.COMPRESSION, "NONE")
+        .put(RealtimeCassandraSink.Cassandra.CONSISTENCY_LEVEL, "QUORUM")
+        .put(RealtimeCassandraSink.Cassandra.ASYNC_WRITES, "true")
+        .put(RealtimeCassandraSink.Cassandra.MAX_IN_FLIGHT_REQUESTS, "2")
+        .build(),
+      null));
+    final String cqlQuery = "select dept,id,name from testtableasync";
+    ETLRealtimeConfig etlConfig = ETLRealtimeConfig.builder()
+      .addStage(source)
+      .addStage(sink)
+      .addConnection(source.getName(), sink.getName())
+      .build();
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "testCassandraAsyncSink");
+    AppRequest<ETLRealtimeConfig> appRequest = new AppRequest<>(REALTIME_APP_ARTIFACT, etlConfig);
+    ApplicationManager appManager = deployApplication(appId, appRequest);
+
+    WorkerManager workerManager = appManager.getWorkerManager(ETLWorker.class.getSimpleName());
+
+    workerManager.start();
+    Tasks.waitFor(depts * employeesPerDept, new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        CqlResult result = client.execute_cql3_query(ByteBufferUtil.bytes(cqlQuery),
+                                                     Compression.NONE, ConsistencyLevel.ALL);
+        return result.rows.size();
+      }
+    }, 30, TimeUnit.SECONDS, 50, TimeUnit.MILLISECONDS);
+    workerManager.stop();
+
+    CqlResult result = client.execute_cql3_query(ByteBufferUtil.bytes(cqlQuery),
+                                                 Compression.NONE, ConsistencyLevel.ALL);
+    Assert.assertEquals(depts * employeesPerDept, result.getRows().size());
+    Set<Integer> ids = new HashSet<>();
+    for (CqlRow row : result.getRows()) {
+      List<Column> columns = row.getColumns();
+      int id = ByteBufferUtil.toInt(columns.get(1).bufferForValue());
+      Assert.assertTrue(ids.add(id));
+      Assert.assertEquals("dept" + (id % depts), ByteBufferUtil.string(columns.get(0).bufferForValue()));
+      Assert.assertEquals("employee" + id, ByteBufferUtil.string(columns.get(2).bufferForValue()));
+    }
+  }
+
   @Test
   public void testInvalidRealtimeCassandraSink() throws Exception {
     ETLStage source = new ETLStage("source", MockSource.getPlugin("dummyInput"));
@@ -194,6 +290,156 @@ public class ETLCassandraTest extends HydratorTestBase {
     }
   }
 
+  @Test
+  public void testInvalidMaxInFlightRequests() throws Exception {
+    ETLStage source = new ETLStage("source", co.cask.cdap.etl.mock.realtime.MockSource.getPlugin(
+      ImmutableList.<StructuredRecord>of()));
+    ETLStage sink = new ETLStage("Cassandra", new ETLPlugin(
+      "Cassandra",
+      RealtimeSink.PLUGIN_TYPE,
+      new ImmutableMap.Builder<String, String>()
+        .put(Constants.Reference.REFERENCE_NAME, "TestCass")
+        .put(RealtimeCassandraSink.Cassandra.ADDRESSES, "localhost:9042")
+        .put(RealtimeCassandraSink.Cassandra.KEYSPACE, "testkeyspace")
+        .put(RealtimeCassandraSink.Cassandra.COLUMN_FAMILY, "testtablerealtime")
+        .put(RealtimeCassandraSink.Cassandra.COLUMNS, "name,graduated,id,score,time")
+        .put(RealtimeCassandraSink.Cassandra.COMPRESSION, "NONE")
+        .put(RealtimeCassandraSink.Cassandra.CONSISTENCY_LEVEL, "QUORUM")
+        .put(RealtimeCassandraSink.Cassandra.ASYNC_WRITES, "true")
+        .put(RealtimeCassandraSink.Cassandra.MAX_IN_FLIGHT_REQUESTS, "0")
+        .build(),
+      null));
+
+    ETLRealtimeConfig etlConfig = ETLRealtimeConfig.builder()
+      .addStage(source)
+      .addStage(sink)
+      .addConnection(source.getName(), sink.getName())
+      .build();
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "testInvalidInFlight");
+    AppRequest<ETLRealtimeConfig> appRequest = new AppRequest<>(REALTIME_APP_ARTIFACT, etlConfig);
+    try {
+      deployApplication(appId, appRequest);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testInvalidBulkLoadBufferSize() throws Exception {
+    Map<String, String> sinkProperties = new ImmutableMap.Builder<String, String>()
+      .put(Constants.Reference.REFERENCE_NAME, "TestCass")
+      .put(BatchCassandraSink.Cassandra.INITIAL_ADDRESS, "localhost")
+      .put(BatchCassandraSink.Cassandra.PORT, Integer.toString(rpcPort))
+      .put(BatchCassandraSink.Cassandra.PARTITIONER, "org.apache.cassandra.dht.Murmur3Partitioner")
+      .put(BatchCassandraSink.Cassandra.KEYSPACE, "testkeyspace")
+      .put(BatchCassandraSink.Cassandra.COLUMN_FAMILY, "testtablebatch")
+      .put(BatchCassandraSink.Cassandra.COLUMNS, "ticker, num, price")
+      .put(BatchCassandraSink.Cassandra.PRIMARY_KEY, "ticker")
+      .put(BatchCassandraSink.Cassandra.BULK_LOAD, "true")
+      .put(BatchCassandraSink.Cassandra.BULK_LOAD_BUFFER_SIZE, "0")
+      .build();
+    ETLStage source = new ETLStage("source", MockSource.getPlugin("input-invalidbulkload"));
+    ETLStage sink = new ETLStage("sink", new ETLPlugin("Cassandra", BatchSink.PLUGIN_TYPE, sinkProperties, null));
+
+    ETLBatchConfig etlConfig = ETLBatchConfig.builder("* * * * *")
+      .addStage(source)
+      .addStage(sink)
+      .addConnection(source.getName(), sink.getName())
+      .build();
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "testInvalidBulkLoad");
+    AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(ETLBATCH_ARTIFACT, etlConfig);
+    try {
+      deployApplication(appId, appRequest);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCassandraBulkLoadSink() throws Exception {
+    String inputDatasetName = "input-bulkloadsinktest";
+    ETLStage source = new ETLStage("source", MockSource.getPlugin(inputDatasetName));
+
+    Map<String, String> sinkProperties = new ImmutableMap.Builder<String, String>()
+      .put(Constants.Reference.REFERENCE_NAME, "TestCassBulk")
+      .put(BatchCassandraSink.Cassandra.INITIAL_ADDRESS, "localhost")
+      .put(BatchCassandraSink.Cassandra.PORT, Integer.toString(rpcPort))
+      .put(BatchCassandraSink.Cassandra.PARTITIONER, "org.apache.cassandra.dht.Murmur3Partitioner")
+      .put(BatchCassandraSink.Cassandra.KEYSPACE, "testkeyspace")
+      .put(BatchCassandraSink.Cassandra.COLUMN_FAMILY, "testtablebulk")
+      .put(BatchCassandraSink.Cassandra.COLUMNS, "exchange, ticker, day, num, price")
+      .put(BatchCassandraSink.Cassandra.PRIMARY_KEY, "exchange, ticker, day")
+      .put(BatchCassandraSink.Cassandra.BULK_LOAD, "true")
+      .put(BatchCassandraSink.Cassandra.BULK_LOAD_BUFFER_SIZE, "1")
+      .put(BatchCassandraSink.Cassandra.BULK_LOAD_THROTTLE, "10")
+      .build();
+    ETLStage sink = new ETLStage("sink", new ETLPlugin("Cassandra", BatchSink.PLUGIN_TYPE, sinkProperties, null));
+
+    ETLBatchConfig etlConfig = ETLBatchConfig.builder("* * * * *")
+      .addStage(source)
+      .addStage(sink)
+      .addConnection(source.getName(), sink.getName())
+      .build();
+
+    AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(ETLBATCH_ARTIFACT, etlConfig);
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "cassandraBulkLoadSinkTest");
+    ApplicationManager appManager = deployApplication(appId, appRequest);
+
+    // write input data, with the clustering column out of order
+    List<StructuredRecord> input = ImmutableList.of(
+      StructuredRecord.builder(BULK_SCHEMA).set("exchange", "NASDAQ").set("ticker", "AAPL").set("day", 2)
+        .set("num", 20).set("price", 501.5d).build(),
+      StructuredRecord.builder(BULK_SCHEMA).set("exchange", "NASDAQ").set("ticker", "AAPL").set("day", 1)
+        .set("num", 10).set("price", 500.32d).build(),
+      StructuredRecord.builder(BULK_SCHEMA).set("exchange", "NASDAQ").set("ticker", "AAPL").set("day", 3)
+        .set("num", 30).set("price", 499.25d).build(),
+      StructuredRecord.builder(BULK_SCHEMA).set("exchange", "NYSE").set("ticker", "AAPL").set("day", 1)
+        .set("num", 13).set("price", 212.36d).build()
+    );
+    DataSetManager<Table> inputManager = getDataset(inputDatasetName);
+    MockSource.writeInput(inputManager, input);
+
+    // the writers run in the same JVM as the Cassandra node, and must not leave any of its global state changed
+    int streamThroughput = DatabaseDescriptor.getStreamThroughputOutboundMegabitsPerSec();
+    KSMetaData keyspace = org.apache.cassandra.config.Schema.instance.getKSMetaData("testkeyspace");
+
+    MapReduceManager mrManager = appManager.getMapReduceManager(ETLMapReduce.NAME);
+    mrManager.start();
+    mrManager.waitForFinish(5, TimeUnit.MINUTES);
+
+    Assert.assertFalse(Config.isClientMode());
+    Assert.assertFalse(Config.getOutboundBindAny());
+    Assert.assertEquals(streamThroughput, DatabaseDescriptor.getStreamThroughputOutboundMegabitsPerSec());
+    Assert.assertEquals(keyspace, org.apache.cassandra.config.Schema.instance.getKSMetaData("testkeyspace"));
+
+    // the rows of a partition are read back in the clustering order of the table
+    CqlResult result = client.execute_cql3_query(
+      ByteBufferUtil.bytes("SELECT day, num, price FROM testtablebulk WHERE exchange = 'NASDAQ' AND ticker = 'AAPL'"),
+      Compression.NONE, ConsistencyLevel.ALL);
+    Assert.assertEquals(3, result.getRowsSize());
+    int[] days = { 3, 2, 1 };
+    int[] nums = { 30, 20, 10 };
+    double[] prices = { 499.25d, 501.5d, 500.32d };
+    for (int i = 0; i < days.length; i++) {
+      List<Column> columns = result.getRows().get(i).getColumns();
+      Assert.assertEquals(days[i], ByteBufferUtil.toInt(columns.get(0).bufferForValue()));
+      Assert.assertEquals(nums[i], ByteBufferUtil.toInt(columns.get(1).bufferForValue()));
+      Assert.assertEquals(prices[i], ByteBufferUtil.toDouble(columns.get(2).bufferForValue()), 0.000001);
+    }
+
+    // the same ticker on another exchange is a different partition
+    result = client.execute_cql3_query(
+      ByteBufferUtil.bytes("SELECT day, num, price FROM testtablebulk WHERE exchange = 'NYSE' AND ticker = 'AAPL'"),
+      Compression.NONE, ConsistencyLevel.ALL);
+    Assert.assertEquals(1, result.getRowsSize());
+    List<Column> columns = result.getRows().get(0).getColumns();
+    Assert.assertEquals(1, ByteBufferUtil.toInt(columns.get(0).bufferForValue()));
+    Assert.assertEquals(13, ByteBufferUtil.toInt(columns.get(1).bufferForValue()));
+    Assert.assertEquals(212.36d, ByteBufferUtil.toDouble(columns.get(2).bufferForValue()), 0.000001);
+  }
+
   public void testCassandraSink() throws Exception {
     String inputDatasetName = "input-batchsinktest";
     ETLStage source = new ETLStage("source", MockSource.getPlugin(inputDatasetName));
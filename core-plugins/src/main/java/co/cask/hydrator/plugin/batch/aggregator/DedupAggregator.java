@@ -45,6 +45,8 @@ public class DedupAggregator extends RecordAggregator {
   private final DedupConfig dedupConfig;
   private List<String> uniqueFields;
   private DedupConfig.DedupFunctionInfo filterFunction;
+  private RecordProjector groupKeyProjector;
+  private RecordProjector outputProjector;
 
   public DedupAggregator(DedupConfig dedupConfig) {
     super(dedupConfig.numPartitions);
@@ -78,20 +80,27 @@ public class DedupAggregator extends RecordAggregator {
   public void initialize(BatchRuntimeContext context) throws Exception {
     uniqueFields = dedupConfig.getUniqueFields();
     filterFunction = dedupConfig.getFilter();
+    groupKeyProjector = new RecordProjector() {
+      @Override
+      protected Schema createProjectedSchema(Schema inputSchema) {
+        return getGroupKeySchema(inputSchema);
+      }
+    };
+    outputProjector = new RecordProjector() {
+      @Override
+      protected Schema createProjectedSchema(Schema inputSchema) {
+        return getOutputSchema(inputSchema);
+      }
+    };
   }
 
   @Override
   public void groupBy(StructuredRecord record, Emitter<StructuredRecord> emitter) throws Exception {
-    if (uniqueFields == null) {
+    if (uniqueFields.isEmpty()) {
       emitter.emit(record);
       return;
     }
-
-    StructuredRecord.Builder builder = StructuredRecord.builder(getGroupKeySchema(record.getSchema()));
-    for (String fieldName : uniqueFields) {
-      builder.set(fieldName, record.get(fieldName));
-    }
-    emitter.emit(builder.build());
+    emitter.emit(groupKeyProjector.project(record));
   }
 
   @Override
@@ -117,12 +126,7 @@ public class DedupAggregator extends RecordAggregator {
 
       List<StructuredRecord> outputRecords = selectionFunction.getSelectedRecords();
       for (StructuredRecord outputRecord : outputRecords) {
-        Schema outputSchema = getOutputSchema(outputRecord.getSchema());
-        StructuredRecord.Builder builder = StructuredRecord.builder(outputSchema);
-        for (Schema.Field field : outputRecord.getSchema().getFields()) {
-          builder.set(field.getName(), outputRecord.get(field.getName()));
-        }
-        emitter.emit(builder.build());
+        emitter.emit(outputProjector.project(outputRecord));
       }
     }
   }
@@ -138,7 +142,7 @@ public class DedupAggregator extends RecordAggregator {
 
   private Schema getGroupKeySchema(Schema inputSchema) {
     List<Schema.Field> fields = new ArrayList<>();
-    for (String fieldName : dedupConfig.getUniqueFields()) {
+    for (String fieldName : uniqueFields) {
       Schema.Field field = inputSchema.getField(fieldName);
       if (field == null) {
         throw new IllegalArgumentException(String.format("Field %s does not exist in input schema %s.",
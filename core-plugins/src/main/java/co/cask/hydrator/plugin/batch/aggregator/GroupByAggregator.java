@@ -47,6 +47,8 @@ public class GroupByAggregator extends RecordAggregator {
   private final GroupByConfig conf;
   private List<String> groupByFields;
   private List<GroupByConfig.FunctionInfo> functionInfos;
+  private RecordProjector groupKeyProjector;
+  private Schema valueSchema;
   private Schema outputSchema;
   private Map<String, AggregateFunction> aggregateFunctions;
 
@@ -77,17 +79,19 @@ public class GroupByAggregator extends RecordAggregator {
   public void initialize(BatchRuntimeContext context) throws Exception {
     groupByFields = conf.getGroupByFields();
     functionInfos = conf.getAggregates();
+    // app should provide some way to make some data calculated in configurePipeline available here.
+    // until then, calculate the group key schema once for each input schema
+    groupKeyProjector = new RecordProjector() {
+      @Override
+      protected Schema createProjectedSchema(Schema inputSchema) {
+        return getGroupKeySchema(inputSchema);
+      }
+    };
   }
 
   @Override
   public void groupBy(StructuredRecord record, Emitter<StructuredRecord> emitter) throws Exception {
-    // app should provide some way to make some data calculated in configurePipeline available here.
-    // then we wouldn't have to calculate schema here
-    StructuredRecord.Builder builder = StructuredRecord.builder(getGroupKeySchema(record.getSchema()));
-    for (String groupByField : conf.getGroupByFields()) {
-      builder.set(groupByField, record.get(groupByField));
-    }
-    emitter.emit(builder.build());
+    emitter.emit(groupKeyProjector.project(record));
   }
 
   @Override
@@ -166,6 +170,14 @@ public class GroupByAggregator extends RecordAggregator {
   }
 
   private void initAggregates(Schema valueSchema) {
+    // groups almost always have the same schema, so reuse the functions and output schema of the previous group
+    if (valueSchema == this.valueSchema || valueSchema.equals(this.valueSchema)) {
+      for (AggregateFunction aggregateFunction : aggregateFunctions.values()) {
+        aggregateFunction.beginFunction();
+      }
+      return;
+    }
+
     List<Schema.Field> outputFields = new ArrayList<>(groupByFields.size() + functionInfos.size());
     for (String groupByField : groupByFields) {
       outputFields.add(valueSchema.getField(groupByField));
@@ -181,11 +193,12 @@ public class GroupByAggregator extends RecordAggregator {
       aggregateFunctions.put(functionInfo.getName(), aggregateFunction);
     }
     outputSchema = Schema.recordOf(valueSchema.getRecordName() + ".agg", outputFields);
+    this.valueSchema = valueSchema;
   }
 
   private Schema getGroupKeySchema(Schema inputSchema) {
     List<Schema.Field> fields = new ArrayList<>();
-    for (String groupByField : conf.getGroupByFields()) {
+    for (String groupByField : groupByFields) {
       Schema.Field fieldSchema = inputSchema.getField(groupByField);
       if (fieldSchema == null) {
         throw new IllegalArgumentException(String.format(
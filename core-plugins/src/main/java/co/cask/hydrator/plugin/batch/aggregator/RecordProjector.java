@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies records into records of a projected schema that is derived from the input schema, such as a schema with a
+ * subset of the input fields. The projected schema and its field names are computed once for each distinct input
+ * schema. Since all records are usually of the same schema, the schema of the previous record is checked by reference
+ * before looking up the cache.
+ */
+abstract class RecordProjector {
+  private final Map<Schema, Projection> projections = new HashMap<>();
+  private Schema lastInputSchema;
+  private Projection lastProjection;
+
+  /**
+   * Creates the projected schema for an input schema. Only called once for each distinct input schema.
+   *
+   * @param inputSchema the input schema
+   * @return the projected schema. All of its fields must exist in the input schema
+   * @throws IllegalArgumentException if the input schema cannot be projected
+   */
+  protected abstract Schema createProjectedSchema(Schema inputSchema);
+
+  /**
+   * @return the projected schema for the given input schema
+   */
+  Schema getProjectedSchema(Schema inputSchema) {
+    return getProjection(inputSchema).schema;
+  }
+
+  /**
+   * @return a record of the projected schema, with the values of the given record
+   */
+  StructuredRecord project(StructuredRecord record) {
+    Projection projection = getProjection(record.getSchema());
+    StructuredRecord.Builder builder = StructuredRecord.builder(projection.schema);
+    for (String fieldName : projection.fieldNames) {
+      builder.set(fieldName, record.get(fieldName));
+    }
+    return builder.build();
+  }
+
+  private Projection getProjection(Schema inputSchema) {
+    if (inputSchema == lastInputSchema) {
+      return lastProjection;
+    }
+    Projection projection = projections.get(inputSchema);
+    if (projection == null) {
+      projection = new Projection(createProjectedSchema(inputSchema));
+      projections.put(inputSchema, projection);
+    }
+    lastInputSchema = inputSchema;
+    lastProjection = projection;
+    return projection;
+  }
+
+  /**
+   * A projected schema along with the names of its fields.
+   */
+  private static class Projection {
+    private final Schema schema;
+    private final String[] fieldNames;
+
+    private Projection(Schema schema) {
+      this.schema = schema;
+      List<Schema.Field> fields = schema.getFields();
+      this.fieldNames = new String[fields.size()];
+      for (int i = 0; i < fieldNames.length; i++) {
+        fieldNames[i] = fields.get(i).getName();
+      }
+    }
+  }
+}
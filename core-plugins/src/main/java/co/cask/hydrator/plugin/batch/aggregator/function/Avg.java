@@ -20,10 +20,12 @@ import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.hydrator.plugin.batch.aggregator.AggregationUtils;
 
+import java.io.IOException;
+
 /**
  * Calculates the average of a column. Does not protect against overflow.
  */
-public class Avg implements AggregateFunction<Double> {
+public class Avg implements AggregateFunction<Double>, MergeableFunction<Avg> {
   private final String fieldName;
   private final Schema outputSchema;
   private double avg;
@@ -57,6 +59,27 @@ public class Avg implements AggregateFunction<Double> {
     avg = avg + (((Number) val).doubleValue() - avg) / count;
   }
 
+  @Override
+  public void merge(Avg other) {
+    if (other.count == 0) {
+      return;
+    }
+    count += other.count;
+    avg = avg + (other.avg - avg) * other.count / count;
+  }
+
+  @Override
+  public void writePartial(PartialStateOutput out) throws IOException {
+    out.writeLong((long) count);
+    out.writeDouble(avg);
+  }
+
+  @Override
+  public void readPartial(PartialStateInput in) throws IOException {
+    count = in.readLong();
+    avg = in.readDouble();
+  }
+
   @Override
   public Double getAggregate() {
     if (count == 0) {
@@ -19,10 +19,12 @@ package co.cask.hydrator.plugin.batch.aggregator.function;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 
+import java.io.IOException;
+
 /**
  * Counts the number of times a specific column has a non-null value.
  */
-public class Count implements AggregateFunction<Long> {
+public class Count implements AggregateFunction<Long>, MergeableFunction<Count> {
   private final String fieldName;
   private long count;
 
@@ -42,6 +44,21 @@ public class Count implements AggregateFunction<Long> {
     }
   }
 
+  @Override
+  public void merge(Count other) {
+    count += other.count;
+  }
+
+  @Override
+  public void writePartial(PartialStateOutput out) throws IOException {
+    out.writeLong(count);
+  }
+
+  @Override
+  public void readPartial(PartialStateInput in) throws IOException {
+    count = in.readLong();
+  }
+
   @Override
   public Long getAggregate() {
     return count;
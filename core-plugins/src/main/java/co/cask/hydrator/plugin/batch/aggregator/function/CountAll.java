@@ -19,10 +19,12 @@ package co.cask.hydrator.plugin.batch.aggregator.function;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 
+import java.io.IOException;
+
 /**
  * Counts the number of records in a group. This is the function for count(*).
  */
-public class CountAll implements AggregateFunction<Long> {
+public class CountAll implements AggregateFunction<Long>, MergeableFunction<CountAll> {
   private long count;
 
   @Override
@@ -35,6 +37,21 @@ public class CountAll implements AggregateFunction<Long> {
     count++;
   }
 
+  @Override
+  public void merge(CountAll other) {
+    count += other.count;
+  }
+
+  @Override
+  public void writePartial(PartialStateOutput out) throws IOException {
+    out.writeLong(count);
+  }
+
+  @Override
+  public void readPartial(PartialStateInput in) throws IOException {
+    count = in.readLong();
+  }
+
   @Override
   public Long getAggregate() {
     return count;
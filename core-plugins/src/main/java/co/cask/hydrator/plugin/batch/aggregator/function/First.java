@@ -19,15 +19,17 @@ package co.cask.hydrator.plugin.batch.aggregator.function;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Return the first element in a group of {@link StructuredRecord}s.
+ * Return the first element in a group of {@link StructuredRecord}s. When merging, the first element of this function is
+ * kept if it has one, so functions should be merged in the order that their records were seen.
  *
  * @param <T> type of aggregate value
  */
-public class First<T> implements SelectionFunction, AggregateFunction<T> {
+public class First<T> implements SelectionFunction, AggregateFunction<T>, MergeableFunction<First<T>> {
   private final String fieldName;
   private final Schema fieldSchema;
   private boolean isFirst;
@@ -55,6 +57,27 @@ public class First<T> implements SelectionFunction, AggregateFunction<T> {
     }
   }
 
+  @Override
+  public void merge(First<T> other) {
+    if (!other.isFirst) {
+      operateOn(other.firstRecord);
+    }
+  }
+
+  @Override
+  public void writePartial(PartialStateOutput out) throws IOException {
+    out.writeRecord(firstRecord);
+  }
+
+  @Override
+  public void readPartial(PartialStateInput in) throws IOException {
+    beginFunction();
+    StructuredRecord record = in.readRecord();
+    if (record != null) {
+      operateOn(record);
+    }
+  }
+
   @Override
   public T getAggregate() {
     return first;
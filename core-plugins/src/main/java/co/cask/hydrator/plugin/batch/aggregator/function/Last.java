@@ -19,15 +19,17 @@ package co.cask.hydrator.plugin.batch.aggregator.function;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Return the last element in the group.
+ * Return the last element in the group. When merging, the last element of the other function replaces the last
+ * element of this function, so functions should be merged in the order that their records were seen.
  *
  * @param <T> type of aggregate value
  */
-public class Last<T> implements SelectionFunction, AggregateFunction<T> {
+public class Last<T> implements SelectionFunction, AggregateFunction<T>, MergeableFunction<Last<T>> {
   private final String fieldName;
   private final Schema fieldSchema;
   private StructuredRecord lastRecord;
@@ -50,6 +52,27 @@ public class Last<T> implements SelectionFunction, AggregateFunction<T> {
     lastRecord = record;
   }
 
+  @Override
+  public void merge(Last<T> other) {
+    if (other.lastRecord != null) {
+      operateOn(other.lastRecord);
+    }
+  }
+
+  @Override
+  public void writePartial(PartialStateOutput out) throws IOException {
+    out.writeRecord(lastRecord);
+  }
+
+  @Override
+  public void readPartial(PartialStateInput in) throws IOException {
+    beginFunction();
+    StructuredRecord record = in.readRecord();
+    if (record != null) {
+      operateOn(record);
+    }
+  }
+
   @Override
   public T getAggregate() {
     return last;
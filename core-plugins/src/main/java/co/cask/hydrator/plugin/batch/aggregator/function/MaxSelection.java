@@ -41,21 +41,25 @@ public class MaxSelection extends NumberSelection {
   @Override
   protected void startInt() {
     maxInt = null;
+    maxRecord = null;
   }
 
   @Override
   protected void startLong() {
     maxLong = null;
+    maxRecord = null;
   }
 
   @Override
   protected void startFloat() {
     maxFloat = null;
+    maxRecord = null;
   }
 
   @Override
   protected void startDouble() {
     maxDouble = null;
+    maxRecord = null;
   }
 
   @Override
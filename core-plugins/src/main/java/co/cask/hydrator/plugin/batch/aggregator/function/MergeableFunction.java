@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import java.io.IOException;
+
+/**
+ * A function whose partial state can be combined with the partial state of another instance of the same function.
+ * This allows a function to be computed separately over several subsets of a group, for example before the records
+ * are shuffled, and then combined into the result over the entire group. The partial state can be written in a
+ * compact binary form to a {@link PartialStateOutput}, so that it can be shuffled in place of the records it was
+ * computed from, and read back from a {@link PartialStateInput}.
+ *
+ * @param <F> type of function that can be merged into this one
+ */
+public interface MergeableFunction<F extends MergeableFunction<F>> extends RecordFunctionLifecycle {
+
+  /**
+   * Merges the partial state of another function into this one. Both functions must have been started with a call to
+   * {@link #beginFunction()}. The other function is not modified.
+   *
+   * @param other the function to merge into this one
+   */
+  void merge(F other);
+
+  /**
+   * Writes the partial state of this function.
+   *
+   * @param out the output to write to
+   * @throws IOException if there was an error writing the state
+   */
+  void writePartial(PartialStateOutput out) throws IOException;
+
+  /**
+   * Replaces the state of this function with partial state written by {@link #writePartial(PartialStateOutput)} of an
+   * instance of the same function. It is not necessary to call {@link #beginFunction()} before calling this method.
+   *
+   * @param in the input to read from
+   * @throws IOException if there was an error reading the state
+   */
+  void readPartial(PartialStateInput in) throws IOException;
+}
@@ -41,21 +41,25 @@ public class MinSelection extends NumberSelection {
   @Override
   protected void startInt() {
     minInt = null;
+    minRecord = null;
   }
 
   @Override
   protected void startLong() {
     minLong = null;
+    minRecord = null;
   }
 
   @Override
   protected void startFloat() {
     minFloat = null;
+    minRecord = null;
   }
 
   @Override
   protected void startDouble() {
     minDouble = null;
+    minRecord = null;
   }
 
   @Override
@@ -19,6 +19,7 @@ package co.cask.hydrator.plugin.batch.aggregator.function;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 
+import java.io.IOException;
 import javax.annotation.Nullable;
 
 /**
@@ -26,13 +27,17 @@ import javax.annotation.Nullable;
  * Allows subclasses to implement typed methods instead of implementing their own casting logic.
  * Guarantees that only methods for one type will be called for each aggregate. For example,
  * if {@link #updateInt(int)} is called, only {@link #updateInt(int)} will be called.
+ * Functions are merged by updating them with the aggregate of the other function, so subclasses must compute
+ * aggregates for which the aggregate of partial aggregates is the aggregate of the whole group, such as sum or max.
  */
-public abstract class NumberFunction implements AggregateFunction<Number> {
+public abstract class NumberFunction implements AggregateFunction<Number>, MergeableFunction<NumberFunction> {
   private final AggregateFunction<? extends Number> typedDelegate;
+  private final Schema.Type fieldType;
 
   public NumberFunction(final String fieldName, @Nullable Schema fieldSchema) {
     // if schema is not known before we start getting records, just use doubles.
     if (fieldSchema == null) {
+      fieldType = Schema.Type.DOUBLE;
       typedDelegate = new AggregateFunction<Double>() {
         @Override
         public void beginFunction() {
@@ -61,7 +66,7 @@ public abstract class NumberFunction implements AggregateFunction<Number> {
     }
 
     final boolean isNullable = fieldSchema.isNullable();
-    Schema.Type fieldType = isNullable ? fieldSchema.getNonNullable().getType() : fieldSchema.getType();
+    fieldType = isNullable ? fieldSchema.getNonNullable().getType() : fieldSchema.getType();
     switch (fieldType) {
       case INT:
         typedDelegate = new AggregateFunction<Integer>() {
@@ -183,6 +188,86 @@ public abstract class NumberFunction implements AggregateFunction<Number> {
     typedDelegate.operateOn(record);
   }
 
+  @Override
+  public void merge(NumberFunction other) {
+    if (getClass() != other.getClass() || fieldType != other.fieldType) {
+      throw new IllegalArgumentException(String.format(
+        "Cannot merge %s of type %s into %s of type %s.",
+        other.getClass().getSimpleName(), other.fieldType, getClass().getSimpleName(), fieldType));
+    }
+    switch (fieldType) {
+      case INT:
+        Integer otherInt = other.getInt();
+        if (otherInt != null) {
+          updateInt(otherInt);
+        }
+        break;
+      case LONG:
+        Long otherLong = other.getLong();
+        if (otherLong != null) {
+          updateLong(otherLong);
+        }
+        break;
+      case FLOAT:
+        Float otherFloat = other.getFloat();
+        if (otherFloat != null) {
+          updateFloat(otherFloat);
+        }
+        break;
+      case DOUBLE:
+        Double otherDouble = other.getDouble();
+        if (otherDouble != null) {
+          updateDouble(otherDouble);
+        }
+        break;
+    }
+  }
+
+  @Override
+  public void writePartial(PartialStateOutput out) throws IOException {
+    Number aggregate = getAggregate();
+    out.writeBoolean(aggregate != null);
+    if (aggregate == null) {
+      return;
+    }
+    switch (fieldType) {
+      case INT:
+        out.writeInt(aggregate.intValue());
+        break;
+      case LONG:
+        out.writeLong(aggregate.longValue());
+        break;
+      case FLOAT:
+        out.writeFloat(aggregate.floatValue());
+        break;
+      case DOUBLE:
+        out.writeDouble(aggregate.doubleValue());
+        break;
+    }
+  }
+
+  @Override
+  public void readPartial(PartialStateInput in) throws IOException {
+    beginFunction();
+    if (!in.readBoolean()) {
+      return;
+    }
+    switch (fieldType) {
+      case INT:
+        updateInt(in.readInt());
+        break;
+      case LONG:
+        updateLong(in.readLong());
+        break;
+      case FLOAT:
+        updateFloat(in.readFloat());
+        break;
+      case DOUBLE:
+        updateDouble(in.readDouble());
+        break;
+    }
+  }
+
   @Override
   public Number getAggregate() {
     return typedDelegate.getAggregate();
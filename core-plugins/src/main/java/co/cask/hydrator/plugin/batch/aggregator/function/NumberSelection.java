@@ -19,6 +19,7 @@ package co.cask.hydrator.plugin.batch.aggregator.function;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 
+import java.io.IOException;
 import java.util.List;
 import javax.annotation.Nullable;
 
@@ -27,8 +28,10 @@ import javax.annotation.Nullable;
  * Allows subclasses to implement typed methods instead of implementing their own casting logic.
  * Guarantees that only methods for one type will be called for each aggregate. For example,
  * if {@link #operateOn(StructuredRecord)} is called, only {@link #operateOnInt(int, StructuredRecord)} will be called.
+ * Functions are merged by operating on the records selected by the other function, so subclasses must select records
+ * such that selecting from the records selected from each subset of a group is the same as selecting from the group.
  */
-public abstract class NumberSelection implements SelectionFunction {
+public abstract class NumberSelection implements SelectionFunction, MergeableFunction<NumberSelection> {
   private final SelectionFunction delegate;
   private final String fieldName;
 
@@ -166,6 +169,30 @@ public abstract class NumberSelection implements SelectionFunction {
     return delegate.getSelectedRecords();
   }
 
+  @Override
+  public void merge(NumberSelection other) {
+    if (getClass() != other.getClass()) {
+      throw new IllegalArgumentException(String.format(
+        "Cannot merge %s into %s.", other.getClass().getSimpleName(), getClass().getSimpleName()));
+    }
+    for (StructuredRecord record : other.getSelectedRecords()) {
+      delegate.operateOn(record);
+    }
+  }
+
+  @Override
+  public void writePartial(PartialStateOutput out) throws IOException {
+    out.writeRecords(getSelectedRecords());
+  }
+
+  @Override
+  public void readPartial(PartialStateInput in) throws IOException {
+    beginFunction();
+    for (StructuredRecord record : in.readRecords()) {
+      delegate.operateOn(record);
+    }
+  }
+
   public String getFieldName() {
     return fieldName;
   }
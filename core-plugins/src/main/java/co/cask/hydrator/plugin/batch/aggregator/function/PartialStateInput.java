@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+
+/**
+ * The input from which a {@link MergeableFunction} reads partial state written to a {@link PartialStateOutput}.
+ * An input must read the entire stream written by a single output, since the schema of a record is only written
+ * the first time it is used in the stream.
+ */
+public final class PartialStateInput extends DataInputStream {
+  // streams from different tasks usually contain the same few schemas, so avoid parsing them for every stream
+  private static final LoadingCache<String, Schema> SCHEMAS = CacheBuilder.newBuilder()
+    .maximumSize(100)
+    .build(new CacheLoader<String, Schema>() {
+      @Override
+      public Schema load(String schema) throws IOException {
+        return Schema.parseJson(schema);
+      }
+    });
+
+  private final List<Schema> schemas = new ArrayList<>();
+
+  public PartialStateInput(InputStream in) {
+    super(in);
+  }
+
+  /**
+   * Reads a record written by {@link PartialStateOutput#writeRecord(StructuredRecord)}.
+   */
+  @Nullable
+  public StructuredRecord readRecord() throws IOException {
+    if (!readBoolean()) {
+      return null;
+    }
+    int schemaId = readInt();
+    if (schemaId == PartialStateOutput.NEW_SCHEMA) {
+      schemaId = schemas.size();
+      schemas.add(parseSchema(readString()));
+    } else if (schemaId < 0 || schemaId >= schemas.size()) {
+      throw new IOException(String.format("Invalid schema index %d, only %d schemas have been read.",
+                                          schemaId, schemas.size()));
+    }
+    return (StructuredRecord) readValue(schemas.get(schemaId));
+  }
+
+  /**
+   * Reads a list of records written by {@link PartialStateOutput#writeRecords(List)}.
+   */
+  public List<StructuredRecord> readRecords() throws IOException {
+    int size = readInt();
+    List<StructuredRecord> records = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      records.add(readRecord());
+    }
+    return records;
+  }
+
+  private static Schema parseSchema(String schema) throws IOException {
+    try {
+      return SCHEMAS.get(schema);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new IOException("Unable to parse schema " + schema, e.getCause());
+    }
+  }
+
+  @Nullable
+  private Object readValue(Schema schema) throws IOException {
+    switch (schema.getType()) {
+      case NULL:
+        return null;
+      case BOOLEAN:
+        return readBoolean();
+      case INT:
+        return readInt();
+      case LONG:
+        return readLong();
+      case FLOAT:
+        return readFloat();
+      case DOUBLE:
+        return readDouble();
+      case STRING:
+        return readString();
+      case ENUM:
+        return schema.getEnumValue(readInt());
+      case BYTES:
+        byte[] bytes = new byte[readInt()];
+        readFully(bytes);
+        return bytes;
+      case ARRAY:
+        int length = readInt();
+        List<Object> list = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+          list.add(readValue(schema.getComponentSchema()));
+        }
+        return list;
+      case MAP:
+        Map.Entry<Schema, Schema> mapSchema = schema.getMapSchema();
+        int size = readInt();
+        Map<Object, Object> map = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+          map.put(readValue(mapSchema.getKey()), readValue(mapSchema.getValue()));
+        }
+        return map;
+      case RECORD:
+        StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+        for (Schema.Field field : schema.getFields()) {
+          builder.set(field.getName(), readValue(field.getSchema()));
+        }
+        return builder.build();
+      case UNION:
+        return readValue(schema.getUnionSchemas().get(readInt()));
+      default:
+        throw new IOException("Unsupported type " + schema.getType());
+    }
+  }
+
+  private String readString() throws IOException {
+    byte[] bytes = new byte[readInt()];
+    readFully(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.base.Charsets;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * The output to which a {@link MergeableFunction} writes its partial state, in a compact binary form. Records are
+ * written as their field values, without any field names or type tags. The schema of a record is only written the
+ * first time a record with that schema is written to the output, and later records refer to it by its index.
+ * An output should therefore be used for an entire stream of partial states, which must be read with a single
+ * {@link PartialStateInput}.
+ */
+public final class PartialStateOutput extends DataOutputStream {
+  static final int NEW_SCHEMA = -1;
+
+  private final Map<Schema, Integer> schemaIds = new HashMap<>();
+
+  public PartialStateOutput(OutputStream out) {
+    super(out);
+  }
+
+  /**
+   * Writes a record that may be null.
+   */
+  public void writeRecord(@Nullable StructuredRecord record) throws IOException {
+    writeBoolean(record != null);
+    if (record == null) {
+      return;
+    }
+    Schema schema = record.getSchema();
+    Integer schemaId = schemaIds.get(schema);
+    if (schemaId != null) {
+      writeInt(schemaId);
+    } else {
+      // a new schema is written in full, and gets the next index
+      schemaIds.put(schema, schemaIds.size());
+      writeInt(NEW_SCHEMA);
+      writeString(schema.toString());
+    }
+    writeValue(schema, record);
+  }
+
+  /**
+   * Writes a list of records.
+   */
+  public void writeRecords(List<StructuredRecord> records) throws IOException {
+    writeInt(records.size());
+    for (StructuredRecord record : records) {
+      writeRecord(record);
+    }
+  }
+
+  private void writeValue(Schema schema, @Nullable Object value) throws IOException {
+    switch (schema.getType()) {
+      case NULL:
+        break;
+      case BOOLEAN:
+        writeBoolean((Boolean) value);
+        break;
+      case INT:
+        writeInt(((Number) value).intValue());
+        break;
+      case LONG:
+        writeLong(((Number) value).longValue());
+        break;
+      case FLOAT:
+        writeFloat(((Number) value).floatValue());
+        break;
+      case DOUBLE:
+        writeDouble(((Number) value).doubleValue());
+        break;
+      case STRING:
+        writeString(value.toString());
+        break;
+      case ENUM:
+        writeInt(schema.getEnumIndex(value.toString()));
+        break;
+      case BYTES:
+        byte[] bytes;
+        if (value instanceof ByteBuffer) {
+          ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+          bytes = new byte[buffer.remaining()];
+          buffer.get(bytes);
+        } else {
+          bytes = (byte[]) value;
+        }
+        writeInt(bytes.length);
+        write(bytes);
+        break;
+      case ARRAY:
+        Schema componentSchema = schema.getComponentSchema();
+        if (value instanceof Collection) {
+          Collection<?> collection = (Collection<?>) value;
+          writeInt(collection.size());
+          for (Object element : collection) {
+            writeValue(componentSchema, element);
+          }
+        } else {
+          int length = Array.getLength(value);
+          writeInt(length);
+          for (int i = 0; i < length; i++) {
+            writeValue(componentSchema, Array.get(value, i));
+          }
+        }
+        break;
+      case MAP:
+        Map.Entry<Schema, Schema> mapSchema = schema.getMapSchema();
+        Map<?, ?> map = (Map<?, ?>) value;
+        writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          writeValue(mapSchema.getKey(), entry.getKey());
+          writeValue(mapSchema.getValue(), entry.getValue());
+        }
+        break;
+      case RECORD:
+        StructuredRecord record = (StructuredRecord) value;
+        for (Schema.Field field : schema.getFields()) {
+          writeValue(field.getSchema(), record.get(field.getName()));
+        }
+        break;
+      case UNION:
+        List<Schema> unionSchemas = schema.getUnionSchemas();
+        for (int i = 0; i < unionSchemas.size(); i++) {
+          if (isInstance(value, unionSchemas.get(i))) {
+            writeInt(i);
+            writeValue(unionSchemas.get(i), value);
+            return;
+          }
+        }
+        throw new IOException(String.format("Value '%s' does not match any type in union %s.", value, schema));
+      default:
+        throw new IOException("Unsupported type " + schema.getType());
+    }
+  }
+
+  private static boolean isInstance(@Nullable Object value, Schema schema) {
+    if (value == null) {
+      return schema.getType() == Schema.Type.NULL;
+    }
+    switch (schema.getType()) {
+      case BOOLEAN:
+        return value instanceof Boolean;
+      case INT:
+        return value instanceof Integer;
+      case LONG:
+        return value instanceof Long;
+      case FLOAT:
+        return value instanceof Float;
+      case DOUBLE:
+        return value instanceof Double;
+      case STRING:
+      case ENUM:
+        return value instanceof CharSequence;
+      case BYTES:
+        return value instanceof ByteBuffer || value instanceof byte[];
+      case ARRAY:
+        return value instanceof Collection || value.getClass().isArray();
+      case MAP:
+        return value instanceof Map;
+      case RECORD:
+        return value instanceof StructuredRecord && ((StructuredRecord) value).getSchema().equals(schema);
+      default:
+        return false;
+    }
+  }
+
+  private void writeString(String str) throws IOException {
+    byte[] bytes = str.getBytes(Charsets.UTF_8);
+    writeInt(bytes.length);
+    write(bytes);
+  }
+}
@@ -16,6 +16,10 @@
 
 package co.cask.hydrator.plugin.batch.aggregator.function;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Computes Mean, Variance, Standard Deviation, Skewness and Kurtosis in single pass.
  * Uses Knuth and Welford for computing Standard Deviation in one pass through data.
@@ -44,6 +48,73 @@ public final class RunningStats  {
     mean2 += term1;
   }
 
+  /**
+   * Merges the statistics computed by another instance into this one, as if all the numbers pushed into the other
+   * instance had been pushed into this one. The other instance is not modified.
+   * @param other statistics to be merged into this one.
+   */
+  public void merge(RunningStats other) {
+    if (other.entries == 0) {
+      return;
+    }
+    if (entries == 0) {
+      entries = other.entries;
+      mean1 = other.mean1;
+      mean2 = other.mean2;
+      mean3 = other.mean3;
+      mean4 = other.mean4;
+      return;
+    }
+
+    double n1 = entries;
+    double n2 = other.entries;
+    double n = n1 + n2;
+    double delta = other.mean1 - mean1;
+    double delta2 = delta * delta;
+    double delta3 = delta * delta2;
+    double delta4 = delta2 * delta2;
+
+    double combined1 = (n1 * mean1 + n2 * other.mean1) / n;
+    double combined2 = mean2 + other.mean2 + delta2 * n1 * n2 / n;
+    double combined3 = mean3 + other.mean3 + delta3 * n1 * n2 * (n1 - n2) / (n * n) +
+      3.0d * delta * (n1 * other.mean2 - n2 * mean2) / n;
+    double combined4 = mean4 + other.mean4 + delta4 * n1 * n2 * (n1 * n1 - n1 * n2 + n2 * n2) / (n * n * n) +
+      6.0d * delta2 * (n1 * n1 * other.mean2 + n2 * n2 * mean2) / (n * n) +
+      4.0d * delta * (n1 * other.mean3 - n2 * mean3) / n;
+
+    entries += other.entries;
+    mean1 = combined1;
+    mean2 = combined2;
+    mean3 = combined3;
+    mean4 = combined4;
+  }
+
+  /**
+   * Writes the current state of the statistics.
+   * @param out output to write the state to.
+   * @throws IOException if there was an error writing the state.
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeLong(entries);
+    out.writeDouble(mean1);
+    out.writeDouble(mean2);
+    out.writeDouble(mean3);
+    out.writeDouble(mean4);
+  }
+
+  /**
+   * Replaces the current state of the statistics with state written by {@link #write(DataOutput)}.
+   * @param in input to read the state from.
+   * @throws IOException if there was an error reading the state.
+   */
+  public void readFields(DataInput in) throws IOException {
+    entries = in.readLong();
+    mean1 = in.readDouble();
+    mean2 = in.readDouble();
+    mean3 = in.readDouble();
+    mean4 = in.readDouble();
+  }
+
   /**
    * @return Mean of all the numbers.
    */
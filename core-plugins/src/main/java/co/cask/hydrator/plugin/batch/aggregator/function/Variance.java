@@ -20,10 +20,12 @@ import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.hydrator.plugin.batch.aggregator.AggregationUtils;
 
+import java.io.IOException;
+
 /**
  * Calculates Variance
  */
-public class Variance implements AggregateFunction<Double> {
+public class Variance implements AggregateFunction<Double>, MergeableFunction<Variance> {
   private final String fieldName;
   private final Schema outputSchema;
   private RunningStats stats;
@@ -54,6 +56,22 @@ public class Variance implements AggregateFunction<Double> {
     stats.push(value);
   }
 
+  @Override
+  public void merge(Variance other) {
+    stats.merge(other.stats);
+  }
+
+  @Override
+  public void writePartial(PartialStateOutput out) throws IOException {
+    stats.write(out);
+  }
+
+  @Override
+  public void readPartial(PartialStateInput in) throws IOException {
+    stats = new RunningStats();
+    stats.readFields(in);
+  }
+
   @Override
   public Double getAggregate() {
     return stats.variance();
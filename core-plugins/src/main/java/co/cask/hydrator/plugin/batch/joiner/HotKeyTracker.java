@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.joiner;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the most frequent keys in a stream of keys using the Misra-Gries algorithm, in memory proportional to the
+ * number of keys tracked instead of the number of distinct keys. Any key that makes up more than 1 / (capacity + 1)
+ * of all keys is guaranteed to be tracked. The tracked counts are lower bounds, which are below the actual counts by
+ * at most the total number of keys divided by (capacity + 1).
+ *
+ * @param <K> type of key
+ */
+final class HotKeyTracker<K> {
+  private final int capacity;
+  private final Map<K, long[]> counts;
+  private long total;
+
+  HotKeyTracker(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("The capacity must be at least 1.");
+    }
+    this.capacity = capacity;
+    this.counts = new HashMap<>();
+  }
+
+  /**
+   * Counts an occurrence of a key.
+   */
+  void add(K key) {
+    total++;
+    long[] count = counts.get(key);
+    if (count != null) {
+      count[0]++;
+      return;
+    }
+    if (counts.size() < capacity) {
+      counts.put(key, new long[] { 1L });
+      return;
+    }
+    // no room for the key. Decrement every count instead, dropping the keys that reach zero.
+    // each decrement cancels out an earlier increment, so this is amortized constant time.
+    Iterator<long[]> iterator = counts.values().iterator();
+    while (iterator.hasNext()) {
+      long[] trackedCount = iterator.next();
+      if (--trackedCount[0] == 0) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the total number of keys counted
+   */
+  long getTotal() {
+    return total;
+  }
+
+  /**
+   * @param limit the maximum number of keys to return
+   * @return the most frequent keys along with lower bounds of their counts, in descending order of count
+   */
+  List<Map.Entry<K, Long>> getTopKeys(int limit) {
+    List<Map.Entry<K, Long>> topKeys = new ArrayList<>(counts.size());
+    for (Map.Entry<K, long[]> entry : counts.entrySet()) {
+      topKeys.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()[0]));
+    }
+    Collections.sort(topKeys, new Comparator<Map.Entry<K, Long>>() {
+      @Override
+      public int compare(Map.Entry<K, Long> o1, Map.Entry<K, Long> o2) {
+        return Long.compare(o2.getValue(), o1.getValue());
+      }
+    });
+    return topKeys.subList(0, Math.min(limit, topKeys.size()));
+  }
+}
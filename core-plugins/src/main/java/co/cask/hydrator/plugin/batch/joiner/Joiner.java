@@ -25,12 +25,15 @@ import co.cask.cdap.etl.api.JoinConfig;
 import co.cask.cdap.etl.api.JoinElement;
 import co.cask.cdap.etl.api.MultiInputPipelineConfigurer;
 import co.cask.cdap.etl.api.MultiInputStageConfigurer;
+import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.batch.BatchJoiner;
 import co.cask.cdap.etl.api.batch.BatchJoinerContext;
 import co.cask.cdap.etl.api.batch.BatchJoinerRuntimeContext;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -52,6 +55,9 @@ import javax.ws.rs.Path;
   "records from non-required inputs will only be present if they match join criteria. If there are no required " +
   "inputs, outer join will be performed")
 public class Joiner extends BatchJoiner<StructuredRecord, StructuredRecord, StructuredRecord> {
+  private static final Logger LOG = LoggerFactory.getLogger(Joiner.class);
+  // track more keys than are reported, since the more keys are tracked, the more accurate their counts are
+  private static final int HOT_KEY_TRACKING_FACTOR = 10;
   private final JoinerConfig conf;
   private Map<String, Schema> inputSchemas;
   private Schema outputSchema;
@@ -59,6 +65,10 @@ public class Joiner extends BatchJoiner<StructuredRecord, StructuredRecord, Stru
   private Table<String, String, String> perStageSelectedFields;
   private Set<String> requiredInputs;
   private Multimap<String, String> duplicateFields = ArrayListMultimap.create();
+  private StageMetrics metrics;
+  private Integer numHotKeys;
+  private Map<String, HotKeyTracker<StructuredRecord>> hotKeyTrackers;
+  private Map<String, StagePlan> stagePlans;
 
   public Joiner(JoinerConfig conf) {
     this.conf = conf;
@@ -83,29 +93,67 @@ public class Joiner extends BatchJoiner<StructuredRecord, StructuredRecord, Stru
   @Override
   public void initialize(BatchJoinerRuntimeContext context) throws Exception {
     init(context.getInputSchemas());
-    inputSchemas = context.getInputSchemas();
-    outputSchema = context.getOutputSchema();
+    initStagePlans(context.getInputSchemas(), context.getOutputSchema());
+    metrics = context.getMetrics();
+    if (numHotKeys != null) {
+      hotKeyTrackers = new HashMap<>();
+      for (String stageName : perStageJoinKeys.keySet()) {
+        hotKeyTrackers.put(stageName, new HotKeyTracker<StructuredRecord>(numHotKeys * HOT_KEY_TRACKING_FACTOR));
+      }
+    }
   }
 
   @Override
-  public StructuredRecord joinOn(String stageName, StructuredRecord record) throws Exception {
-    List<Schema.Field> fields = new ArrayList<>();
-    Schema schema = record.getSchema();
+  public void destroy() {
+    if (hotKeyTrackers == null) {
+      return;
+    }
+    for (Map.Entry<String, HotKeyTracker<StructuredRecord>> entry : hotKeyTrackers.entrySet()) {
+      String stageName = entry.getKey();
+      HotKeyTracker<StructuredRecord> hotKeyTracker = entry.getValue();
+      // only tasks that compute join keys have anything to report
+      if (hotKeyTracker.getTotal() == 0) {
+        continue;
+      }
+      // counts are summed over all tasks, so the metrics are the share of records that fall in the hot keys of
+      // the task that read them. Key values can be business data, so they are only logged at debug level.
+      long hotKeyRecords = 0;
+      int rank = 1;
+      for (Map.Entry<StructuredRecord, Long> hotKey : hotKeyTracker.getTopKeys(numHotKeys)) {
+        hotKeyRecords += hotKey.getValue();
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Join key {} is the #{} most frequent key from stage '{}', found in at least {} of {} records.",
+                    getKeyValues(hotKey.getKey()), rank, stageName, hotKey.getValue(), hotKeyTracker.getTotal());
+        }
+        rank++;
+      }
+      count(String.format("join.%s.records", stageName), hotKeyTracker.getTotal());
+      count(String.format("join.%s.hotkey.records", stageName), hotKeyRecords);
+      LOG.info("The {} most frequent join keys from stage '{}' were found in at least {} of {} records.",
+               rank - 1, stageName, hotKeyRecords, hotKeyTracker.getTotal());
+    }
+  }
 
-    List<String> joinKeys = perStageJoinKeys.get(stageName);
-    int i = 1;
-    for (String joinKey : joinKeys) {
-      Schema.Field joinField = Schema.Field.of(String.valueOf(i++), schema.getField(joinKey).getSchema());
-      fields.add(joinField);
+  private void count(String metricName, long delta) {
+    // metrics only take int increments
+    for (long remaining = delta; remaining > 0; remaining -= Integer.MAX_VALUE) {
+      metrics.count(metricName, (int) Math.min(remaining, Integer.MAX_VALUE));
     }
-    Schema keySchema = Schema.recordOf("join.key", fields);
-    StructuredRecord.Builder keyRecordBuilder = StructuredRecord.builder(keySchema);
-    i = 1;
-    for (String joinKey : joinKeys) {
-      keyRecordBuilder.set(String.valueOf(i++), record.get(joinKey));
+  }
+
+  @Override
+  public StructuredRecord joinOn(String stageName, StructuredRecord record) throws Exception {
+    StagePlan plan = getStagePlan(stageName, record.getSchema());
+    StructuredRecord.Builder keyRecordBuilder = StructuredRecord.builder(plan.keySchema);
+    for (int i = 0; i < plan.joinKeys.length; i++) {
+      keyRecordBuilder.set(plan.keyFieldNames[i], record.get(plan.joinKeys[i]));
     }
 
-    return keyRecordBuilder.build();
+    StructuredRecord keyRecord = keyRecordBuilder.build();
+    if (hotKeyTrackers != null) {
+      hotKeyTrackers.get(stageName).add(keyRecord);
+    }
+    return keyRecord;
   }
 
   @Override
@@ -121,27 +169,63 @@ public class Joiner extends BatchJoiner<StructuredRecord, StructuredRecord, Stru
       String stageName = joinElement.getStageName();
       StructuredRecord record = joinElement.getInputRecord();
 
-      Map<String, String> selectedFields = perStageSelectedFields.row(stageName);
+      StagePlan plan = getStagePlan(stageName, record.getSchema());
+      for (int i = 0; i < plan.inputFieldNames.length; i++) {
+        outRecordBuilder.set(plan.outputFieldNames[i], record.get(plan.inputFieldNames[i]));
+      }
+    }
+    return outRecordBuilder.build();
+  }
 
-      for (Schema.Field field : record.getSchema().getFields()) {
-        String inputFieldName = field.getName();
+  void initStagePlans(Map<String, Schema> inputSchemas, Schema outputSchema) {
+    this.inputSchemas = inputSchemas;
+    this.outputSchema = outputSchema;
+    stagePlans = new HashMap<>();
+    for (Map.Entry<String, Schema> entry : inputSchemas.entrySet()) {
+      stagePlans.put(entry.getKey(), createStagePlan(entry.getKey(), entry.getValue()));
+    }
+  }
 
-        // drop the field if not part of fieldsToRename
-        if (!selectedFields.containsKey(inputFieldName)) {
-          continue;
-        }
+  private StagePlan getStagePlan(String stageName, Schema inputSchema) {
+    StagePlan plan = stagePlans.get(stageName);
+    // records are expected to have the input schema of their stage, so only recompute the plan if they don't
+    if (plan == null || (plan.inputSchema != inputSchema && !plan.inputSchema.equals(inputSchema))) {
+      plan = createStagePlan(stageName, inputSchema);
+      stagePlans.put(stageName, plan);
+    }
+    return plan;
+  }
 
-        String outputFieldName = selectedFields.get(inputFieldName);
-        outRecordBuilder.set(outputFieldName, record.get(inputFieldName));
+  private StagePlan createStagePlan(String stageName, Schema inputSchema) {
+    List<String> joinKeys = perStageJoinKeys.get(stageName);
+    List<Schema.Field> keyFields = new ArrayList<>();
+    String[] keyFieldNames = new String[joinKeys.size()];
+    for (int i = 0; i < keyFieldNames.length; i++) {
+      keyFieldNames[i] = String.valueOf(i + 1);
+      keyFields.add(Schema.Field.of(keyFieldNames[i], inputSchema.getField(joinKeys.get(i)).getSchema()));
+    }
+
+    // drop the fields that are not selected
+    List<String> inputFieldNames = new ArrayList<>();
+    List<String> outputFieldNames = new ArrayList<>();
+    for (Map.Entry<String, String> selectedField : perStageSelectedFields.row(stageName).entrySet()) {
+      if (inputSchema.getField(selectedField.getKey()) != null) {
+        inputFieldNames.add(selectedField.getKey());
+        outputFieldNames.add(selectedField.getValue());
       }
     }
-    return outRecordBuilder.build();
+
+    return new StagePlan(inputSchema, Schema.recordOf("join.key", keyFields),
+                         joinKeys.toArray(new String[joinKeys.size()]), keyFieldNames,
+                         inputFieldNames.toArray(new String[inputFieldNames.size()]),
+                         outputFieldNames.toArray(new String[outputFieldNames.size()]));
   }
 
   void init(Map<String, Schema> inputSchemas) {
     validateJoinKeySchemas(inputSchemas, conf.getPerStageJoinKeys());
     requiredInputs = conf.getInputs();
     perStageSelectedFields = conf.getPerStageSelectedFields();
+    numHotKeys = conf.getNumHotKeys();
   }
 
   void validateJoinKeySchemas(Map<String, Schema> inputSchemas, Map<String, List<String>> joinKeys) {
@@ -353,6 +437,37 @@ public class Joiner extends BatchJoiner<StructuredRecord, StructuredRecord, Stru
     }
   }
 
+  /**
+   * Join key schema and selected fields of an input stage, computed once per input schema
+   * so that no schema needs to be created or looked up for each record.
+   */
+  private static final class StagePlan {
+    private final Schema inputSchema;
+    private final Schema keySchema;
+    private final String[] joinKeys;
+    private final String[] keyFieldNames;
+    private final String[] inputFieldNames;
+    private final String[] outputFieldNames;
+
+    StagePlan(Schema inputSchema, Schema keySchema, String[] joinKeys, String[] keyFieldNames,
+              String[] inputFieldNames, String[] outputFieldNames) {
+      this.inputSchema = inputSchema;
+      this.keySchema = keySchema;
+      this.joinKeys = joinKeys;
+      this.keyFieldNames = keyFieldNames;
+      this.inputFieldNames = inputFieldNames;
+      this.outputFieldNames = outputFieldNames;
+    }
+  }
+
+  private List<Object> getKeyValues(StructuredRecord keyRecord) {
+    List<Object> keyValues = new ArrayList<>();
+    for (Schema.Field field : keyRecord.getSchema().getFields()) {
+      keyValues.add(keyRecord.get(field.getName()));
+    }
+    return keyValues;
+  }
+
   private void validateRequiredInputs(Map<String, Schema> inputSchemas) {
     for (String requiredInput : requiredInputs) {
       if (!inputSchemas.containsKey(requiredInput)) {
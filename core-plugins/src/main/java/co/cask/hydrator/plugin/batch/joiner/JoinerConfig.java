@@ -57,7 +57,11 @@ public class JoinerConfig extends PluginConfig {
     " Required input stages decide the type of the join. If all the input stages are present in required inputs, " +
     "inner join will be performed. Otherwise, outer join will be performed considering non-required inputs as " +
     "optional.";
-
+  private static final String NUM_HOT_KEYS_DESC = "Number of most frequent join keys to track for each input stage, " +
+    "to help detect skew in the join keys. When each task finishes, the number of records it read from each input " +
+    "stage is added to the metric 'join.<stageName>.records', and a lower bound of the number of those records that " +
+    "have one of its most frequent keys is added to the metric 'join.<stageName>.hotkey.records'. The key values " +
+    "themselves are only logged at debug level. If not specified, join keys are not tracked.";
 
   @Nullable
   @Description(NUM_PARTITIONS_DESC)
@@ -73,6 +77,10 @@ public class JoinerConfig extends PluginConfig {
   @Description(REQUIRED_INPUTS_DESC)
   protected String requiredInputs;
 
+  @Nullable
+  @Description(NUM_HOT_KEYS_DESC)
+  protected Integer numHotKeys;
+
   public JoinerConfig() {
     this.joinKeys = "";
     this.selectedFields = "";
@@ -104,6 +112,15 @@ public class JoinerConfig extends PluginConfig {
     return requiredInputs;
   }
 
+  @Nullable
+  public Integer getNumHotKeys() {
+    if (numHotKeys != null && numHotKeys < 1) {
+      throw new IllegalArgumentException(String.format(
+        "The number of hot keys to track must be at least 1, but found %d.", numHotKeys));
+    }
+    return numHotKeys;
+  }
+
 
   Map<String, List<String>> getPerStageJoinKeys() {
     Map<String, List<String>> stageToKey = new HashMap<>();
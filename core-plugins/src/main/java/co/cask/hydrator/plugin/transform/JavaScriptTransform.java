@@ -32,6 +32,7 @@ import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.TransformContext;
 import co.cask.hydrator.plugin.ScriptConstants;
 import co.cask.hydrator.plugin.common.StructuredRecordSerializer;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -64,14 +65,16 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
     .create();
   private static final Logger LOG = LoggerFactory.getLogger(JavaScriptTransform.class);
   private static final String FUNCTION_NAME = "dont_name_your_function_this";
-  private static final String VARIABLE_NAME = "dont_name_your_variable_this";
-  private static final String EMITTER_NAME = "dont_name_your_variable2_this";
-  private static final String CONTEXT_NAME = "dont_name_your_context_this";
+  @VisibleForTesting
+  static final String CONTEXT_NAME = "dont_name_your_context_this";
+  private static final ScriptEnginePool<ScriptEngine> ENGINES =
+    new ScriptEnginePool<>(Runtime.getRuntime().availableProcessors());
   private ScriptEngine engine;
   private Invocable invocable;
   private Schema schema;
   private final Config config;
   private StageMetrics metrics;
+  private JSEmitter jsEmitter;
 
   @Nullable
   private Method somValuesMethod;
@@ -155,13 +158,26 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
     init(context);
   }
 
+  @Override
+  public void destroy() {
+    if (engine != null) {
+      // don't let the pooled engine keep the context, and with it the metrics and lookups of this stage
+      engine.getBindings(javax.script.ScriptContext.ENGINE_SCOPE).remove(CONTEXT_NAME);
+      ENGINES.release(config.script, engine);
+      engine = null;
+      invocable = null;
+      jsEmitter = null;
+    }
+  }
+
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) {
     try {
-      engine.eval(String.format("var %s = %s;", VARIABLE_NAME, GSON.toJson(input)));
-      Emitter<Map> jsEmitter = new JSEmitter(emitter, schema == null ? input.getSchema() : schema);
-      engine.put(EMITTER_NAME, jsEmitter);
-      invocable.invokeFunction(FUNCTION_NAME);
+      Schema outputSchema = schema == null ? input.getSchema() : schema;
+      if (jsEmitter == null || jsEmitter.emitter != emitter || !jsEmitter.schema.equals(outputSchema)) {
+        jsEmitter = new JSEmitter(emitter, outputSchema);
+      }
+      invocable.invokeFunction(FUNCTION_NAME, GSON.toJson(input), jsEmitter);
     } catch (Exception e) {
       throw new IllegalArgumentException("Could not transform input: " + e.getMessage(), e);
     }
@@ -249,6 +265,10 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
       case RECORD:
         return decodeRecord((Map) object, schema);
       case UNION:
+        // null decodes to null with any nullable union, so there is no need to try each schema
+        if (object == null && schema.isNullable()) {
+          return null;
+        }
         return decodeUnion(object, schema.getUnionSchemas());
     }
 
@@ -338,15 +358,22 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
     throw new RuntimeException("Unable decode union with schema " + schemas);
   }
 
+  @VisibleForTesting
+  ScriptEngine getEngine() {
+    return engine;
+  }
+
   private void init(LookupProvider lookup) {
-    ScriptEngineManager manager = new ScriptEngineManager();
-    engine = manager.getEngineByName("JavaScript");
-    try {
-      engine.eval(ScriptConstants.HELPER_DEFINITION);
-    } catch (ScriptException e) {
-      // shouldn't happen
-      throw new IllegalStateException("Couldn't define helper functions", e);
+    // reuse an engine that has already evaluated the script if one is available. Evaluating the script again
+    // in a used engine is much cheaper than in a new one, since the engine caches what it has compiled.
+    engine = ENGINES.borrow(config.script);
+    if (engine == null) {
+      engine = new ScriptEngineManager().getEngineByName("JavaScript");
+    } else {
+      // start from new global variables, so that nothing a previous run of the script left in them is visible
+      engine.setBindings(engine.createBindings(), javax.script.ScriptContext.ENGINE_SCOPE);
     }
+    evaluateScript(engine);
 
     JavaTypeConverters js = ((Invocable) engine).getInterface(
       engine.get(ScriptConstants.HELPER_NAME), JavaTypeConverters.class);
@@ -359,19 +386,6 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
     }
 
     engine.put(CONTEXT_NAME, new ScriptContext(LOG, metrics, lookup, lookupConfig, js));
-
-    try {
-      // this is pretty ugly, but doing this so that we can pass the 'input' json into the transform function.
-      // that is, we want people to implement
-      // function transform(input) { ... }
-      // rather than function transform() { ... } and have them access a global variable in the function
-
-      String script = String.format("function %s() { return transform(%s, %s, %s); }\n%s",
-                                    FUNCTION_NAME, VARIABLE_NAME, EMITTER_NAME, CONTEXT_NAME, config.script);
-      engine.eval(script);
-    } catch (ScriptException e) {
-      throw new IllegalArgumentException("Invalid script: " + e.getMessage(), e);
-    }
     invocable = (Invocable) engine;
     if (config.schema != null) {
       try {
@@ -381,4 +395,29 @@ public class JavaScriptTransform extends Transform<StructuredRecord, StructuredR
       }
     }
   }
+
+  private void evaluateScript(ScriptEngine scriptEngine) {
+    try {
+      scriptEngine.eval(ScriptConstants.HELPER_DEFINITION);
+    } catch (ScriptException e) {
+      // shouldn't happen
+      throw new IllegalStateException("Couldn't define helper functions", e);
+    }
+
+    try {
+      // this is pretty ugly, but doing this so that we can pass the 'input' json into the transform function.
+      // that is, we want people to implement
+      // function transform(input) { ... }
+      // rather than function transform() { ... } and have them access a global variable in the function.
+      // The input is passed as a JSON string and parsed in the script, since evaluating it as a script
+      // would compile the script again for every record.
+
+      String script = String.format("function %s(json, emitter) { " +
+                                      "return transform(JSON.parse(json), emitter, %s); }\n%s",
+                                    FUNCTION_NAME, CONTEXT_NAME, config.script);
+      scriptEngine.eval(script);
+    } catch (ScriptException e) {
+      throw new IllegalArgumentException("Invalid script: " + e.getMessage(), e);
+    }
+  }
 }
@@ -30,12 +30,15 @@ import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.TransformContext;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.python.core.Py;
 import org.python.core.PyCode;
 import org.python.core.PyException;
+import org.python.core.PyString;
+import org.python.core.PyStringMap;
 import org.python.util.PythonInterpreter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,13 +60,21 @@ import javax.annotation.Nullable;
 public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecord> {
   private static final String INPUT_STRUCTURED_RECORD_VARIABLE_NAME = "dont_name_your_variable_this1";
   private static final String EMITTER_VARIABLE_NAME = "dont_name_your_variable_this2";
-  private static final String CONTEXT_NAME = "dont_name_your_context_this";
+  @VisibleForTesting
+  static final String CONTEXT_NAME = "dont_name_your_context_this";
+  private static final ScriptEnginePool<Interpreter> INTERPRETERS =
+    new ScriptEnginePool<Interpreter>(Runtime.getRuntime().availableProcessors()) {
+      @Override
+      protected void dispose(Interpreter interpreter) {
+        interpreter.interpreter.cleanup();
+      }
+    };
   private final Config config;
   private Schema schema;
   private StageMetrics metrics;
   private Logger logger;
-  private PythonInterpreter interpreter;
-  private PyCode compiledScript;
+  private Interpreter interpreter;
+  private PythonEmitter pythonEmitter;
 
   /**
    * Configuration for the script transform.
@@ -91,9 +102,24 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
     @Nullable
     private final String schema;
 
+    @Description("Whether to run the code at the top level of the script only once, when the stage is initialized, " +
+      "instead of before every record. Global variables then persist across all the records processed by a task. " +
+      "Defaults to false.")
+    @Nullable
+    private final Boolean runScriptOnce;
+
     public Config(String script, String schema) {
+      this(script, schema, null);
+    }
+
+    public Config(String script, String schema, @Nullable Boolean runScriptOnce) {
       this.script = script;
       this.schema = schema;
+      this.runScriptOnce = runScriptOnce;
+    }
+
+    private boolean isRunScriptOnce() {
+      return runScriptOnce != null && runScriptOnce;
     }
   }
 
@@ -112,7 +138,13 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
   @Override
   public void destroy() {
     if (interpreter != null) {
-      interpreter.cleanup();
+      // don't hold on to the last record, the emitter and the context of this stage while the interpreter is idle
+      interpreter.interpreter.set(INPUT_STRUCTURED_RECORD_VARIABLE_NAME, null);
+      interpreter.interpreter.set(EMITTER_VARIABLE_NAME, null);
+      interpreter.interpreter.set(CONTEXT_NAME, null);
+      INTERPRETERS.release(config.script, interpreter);
+      interpreter = null;
+      pythonEmitter = null;
     }
   }
 
@@ -164,10 +196,17 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
   @Override
   public void transform(StructuredRecord input, final Emitter<StructuredRecord> emitter) {
     try {
-      Emitter<Map> pythonEmitter = new PythonEmitter(emitter, schema == null ? input.getSchema() : schema);
-      interpreter.set(INPUT_STRUCTURED_RECORD_VARIABLE_NAME, encode(input, input.getSchema()));
-      interpreter.set(EMITTER_VARIABLE_NAME, pythonEmitter);
-      Py.runCode(compiledScript, interpreter.getLocals(), interpreter.getLocals());
+      Schema outputSchema = schema == null ? input.getSchema() : schema;
+      if (pythonEmitter == null || pythonEmitter.emitter != emitter || !pythonEmitter.schema.equals(outputSchema)) {
+        pythonEmitter = new PythonEmitter(emitter, outputSchema);
+      }
+      PythonInterpreter pythonInterpreter = interpreter.interpreter;
+      pythonInterpreter.set(INPUT_STRUCTURED_RECORD_VARIABLE_NAME, encode(input, input.getSchema()));
+      pythonInterpreter.set(EMITTER_VARIABLE_NAME, pythonEmitter);
+      if (!config.isRunScriptOnce()) {
+        Py.runCode(interpreter.script, pythonInterpreter.getLocals(), pythonInterpreter.getLocals());
+      }
+      Py.runCode(interpreter.transformCall, pythonInterpreter.getLocals(), pythonInterpreter.getLocals());
 
     } catch (PyException e) {
       // We put the stack trace as the exception message, because otherwise the information from PyException is lost.
@@ -344,8 +383,23 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
   }
 
   private void init() {
-    interpreter = new PythonInterpreter();
-    interpreter.set(CONTEXT_NAME, new ScriptContext(
+    // reuse an interpreter that has already compiled the script if one is available
+    interpreter = INTERPRETERS.borrow(config.script);
+    if (interpreter == null) {
+      interpreter = createInterpreter();
+    }
+    try {
+      // use new globals, so that nothing a previous run of the script left in them is visible
+      interpreter.reset();
+      if (config.isRunScriptOnce()) {
+        interpreter.interpreter.exec(interpreter.script);
+      }
+    } catch (PyException e) {
+      INTERPRETERS.dispose(interpreter);
+      interpreter = null;
+      throw new IllegalArgumentException("Invalid script.\n" + ExceptionUtils.getStackTrace(e));
+    }
+    interpreter.interpreter.set(CONTEXT_NAME, new ScriptContext(
       logger, metrics,
       new LookupProvider() {
         @Override
@@ -361,20 +415,33 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
         }
       }));
 
-    // this is pretty ugly, but doing this so that we can pass the 'input' record into the transform function.
-    // that is, we want people to implement
-    // def transform(input, emitter, context): ...
-    // rather than def transform(): ...  and have them access the input, emitter, and context via global variables
-
-    String script = String.format("%s\ntransform(%s, %s, %s)",
-                                  config.script, INPUT_STRUCTURED_RECORD_VARIABLE_NAME,
-                                  EMITTER_VARIABLE_NAME, CONTEXT_NAME);
-    compiledScript = interpreter.compile(script);
     if (config.schema != null) {
       schema = parseJson(config.schema);
     }
   }
 
+  private Interpreter createInterpreter() {
+    PythonInterpreter pythonInterpreter = new PythonInterpreter();
+    try {
+      // this is pretty ugly, but doing this so that we can pass the 'input' record into the transform function.
+      // that is, we want people to implement
+      // def transform(input, emitter, context): ...
+      // rather than def transform(): ...  and have them access the input, emitter, and context via global variables.
+      String call = String.format("transform(%s, %s, %s)",
+                                  INPUT_STRUCTURED_RECORD_VARIABLE_NAME, EMITTER_VARIABLE_NAME, CONTEXT_NAME);
+      return new Interpreter(pythonInterpreter, pythonInterpreter.compile(config.script),
+                             pythonInterpreter.compile(call));
+    } catch (PyException e) {
+      pythonInterpreter.cleanup();
+      throw new IllegalArgumentException("Invalid script.\n" + ExceptionUtils.getStackTrace(e));
+    }
+  }
+
+  @VisibleForTesting
+  PythonInterpreter getInterpreter() {
+    return interpreter == null ? null : interpreter.interpreter;
+  }
+
   private Schema parseJson(String schema) {
     try {
       return Schema.parseJson(schema);
@@ -382,4 +449,29 @@ public class PythonEvaluator extends Transform<StructuredRecord, StructuredRecor
       throw new IllegalArgumentException("Unable to parse schema: " + e.getMessage(), e);
     }
   }
+
+  /**
+   * A Python interpreter together with the script and the call to the transform function compiled in it.
+   */
+  private static final class Interpreter {
+    private final PythonInterpreter interpreter;
+    private final PyCode script;
+    private final PyCode transformCall;
+
+    private Interpreter(PythonInterpreter interpreter, PyCode script, PyCode transformCall) {
+      this.interpreter = interpreter;
+      this.script = script;
+      this.transformCall = transformCall;
+    }
+
+    /**
+     * Replaces the globals of the interpreter with the ones of a new interpreter.
+     */
+    private void reset() {
+      PyStringMap globals = new PyStringMap();
+      globals.__setitem__("__name__", new PyString("__main__"));
+      globals.__setitem__("__doc__", Py.None);
+      interpreter.setLocals(globals);
+    }
+  }
 }
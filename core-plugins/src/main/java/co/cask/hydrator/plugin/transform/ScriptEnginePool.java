@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.transform;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Pool of idle script engines that have already evaluated a script, keyed by the script.
+ * Tasks that run the same script one after another in the same JVM can then reuse an engine
+ * that has already compiled it, instead of starting a new engine and compiling the script again.
+ * An engine is only used by one transform at a time: it is removed from the pool when borrowed
+ * and is only added back when the transform that borrowed it is destroyed.
+ * <p>
+ * The pool holds at most a fixed number of idle engines across all scripts. When it is full, the oldest
+ * engine of the least recently used script is evicted and passed to {@link #dispose(Object)}.
+ * The pool does not reset the state of an engine; callers must do so when they borrow one.
+ * </p>
+ *
+ * @param <T> type of script engine
+ */
+class ScriptEnginePool<T> {
+
+  private final int maxIdle;
+  // ordered by access, so the first entry is the least recently used script
+  private final LinkedHashMap<String, Deque<T>> idle = new LinkedHashMap<>(16, 0.75f, true);
+  private int size;
+
+  ScriptEnginePool(int maxIdle) {
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Removes an idle engine for the given script from the pool.
+   *
+   * @param script the script the engine must have evaluated
+   * @return an idle engine, or null if there is none for the script
+   */
+  @Nullable
+  synchronized T borrow(String script) {
+    Deque<T> engines = idle.get(script);
+    if (engines == null) {
+      return null;
+    }
+    // the most recently released engine is the most likely to still be warm
+    T engine = engines.pollLast();
+    size--;
+    if (engines.isEmpty()) {
+      idle.remove(script);
+    }
+    return engine;
+  }
+
+  /**
+   * Returns an engine that is no longer used to the pool, evicting idle engines if the pool is full.
+   *
+   * @param script the script the engine has evaluated
+   * @param engine the engine to return
+   */
+  void release(String script, T engine) {
+    List<T> evicted = new ArrayList<>();
+    synchronized (this) {
+      Deque<T> engines = idle.get(script);
+      if (engines == null) {
+        engines = new ArrayDeque<>();
+        idle.put(script, engines);
+      }
+      engines.addLast(engine);
+      size++;
+
+      Iterator<Deque<T>> iterator = idle.values().iterator();
+      while (size > maxIdle) {
+        Deque<T> eldest = iterator.next();
+        while (size > maxIdle && !eldest.isEmpty()) {
+          evicted.add(eldest.pollFirst());
+          size--;
+        }
+        if (eldest.isEmpty()) {
+          iterator.remove();
+        }
+      }
+    }
+    // disposing an engine can be slow, so it is done without holding the lock
+    for (T evictedEngine : evicted) {
+      dispose(evictedEngine);
+    }
+  }
+
+  /**
+   * Called for an engine that is evicted from the pool. Subclasses can override it to release
+   * any resources held by the engine. Does nothing by default.
+   *
+   * @param engine the evicted engine
+   */
+  protected void dispose(T engine) {
+    // no-op
+  }
+}
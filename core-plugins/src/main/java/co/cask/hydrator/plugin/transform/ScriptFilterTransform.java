@@ -67,7 +67,6 @@ public class ScriptFilterTransform extends Transform<StructuredRecord, Structure
     .registerTypeAdapter(StructuredRecord.class, new StructuredRecordSerializer())
     .create();
   private static final String FUNCTION_NAME = "dont_name_your_function_this";
-  private static final String VARIABLE_NAME = "dont_name_your_variable_this";
   private static final String CONTEXT_NAME = "dont_name_your_context_this";
 
   private final ScriptFilterConfig scriptFilterConfig;
@@ -102,8 +101,7 @@ public class ScriptFilterTransform extends Transform<StructuredRecord, Structure
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) {
     try {
-      engine.eval(String.format("var %s = %s;", VARIABLE_NAME, GSON.toJson(input)));
-      Boolean shouldFilter = (Boolean) invocable.invokeFunction(FUNCTION_NAME);
+      Boolean shouldFilter = (Boolean) invocable.invokeFunction(FUNCTION_NAME, GSON.toJson(input));
       if (!shouldFilter) {
         emitter.emit(input);
       } else {
@@ -141,10 +139,12 @@ public class ScriptFilterTransform extends Transform<StructuredRecord, Structure
     // this is pretty ugly, but doing this so that we can pass the 'input' json into the shouldFilter function.
     // that is, we want people to implement
     // function shouldFilter(input) { ... }
-    // rather than function shouldFilter() { ... } and have them access a global variable in the function
+    // rather than function shouldFilter() { ... } and have them access a global variable in the function.
+    // The input is passed as a JSON string and parsed in the script, rather than evaluated as a script,
+    // so that nothing is compiled per record.
     try {
-      String script = String.format("function %s() { return shouldFilter(%s, %s); }\n%s",
-        FUNCTION_NAME, VARIABLE_NAME, CONTEXT_NAME, scriptFilterConfig.script);
+      String script = String.format("function %s(json) { return shouldFilter(JSON.parse(json), %s); }\n%s",
+        FUNCTION_NAME, CONTEXT_NAME, scriptFilterConfig.script);
       engine.eval(script);
     } catch (ScriptException e) {
       throw new IllegalArgumentException("Invalid script: " + e.getMessage(), e);
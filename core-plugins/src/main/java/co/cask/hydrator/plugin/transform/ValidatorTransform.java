@@ -96,7 +96,6 @@ public class ValidatorTransform extends Transform<StructuredRecord, StructuredRe
     .registerTypeAdapter(StructuredRecord.class, new StructuredRecordSerializer())
     .create();
   private static final Logger LOG = LoggerFactory.getLogger(ValidatorTransform.class);
-  private static final String VARIABLE_NAME = "dont_name_your_variable_this";
   private static final String FUNCTION_NAME = "dont_name_your_function_this";
   private static final String CONTEXT_NAME = "dont_name_your_context_this";
 
@@ -150,8 +149,7 @@ public class ValidatorTransform extends Transform<StructuredRecord, StructuredRe
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) throws Exception {
     try {
-      engine.eval(String.format("var %s = %s;", VARIABLE_NAME, GSON.toJson(input)));
-      Map result = (Map) invocable.invokeFunction(FUNCTION_NAME);
+      Map result = (Map) invocable.invokeFunction(FUNCTION_NAME, GSON.toJson(input));
 
       Preconditions.checkState(result.containsKey("isValid"),
                                "Result map returned by isValid function did not contain an entry for 'isValid'");
@@ -227,9 +225,11 @@ public class ValidatorTransform extends Transform<StructuredRecord, StructuredRe
     // that is, we want people to implement
     // function isValid(input) { ... }
     // rather than function isValid() { ... } with the input record assigned to the global variable
-    // and have them access the global variable in the function
-    String script = String.format("function %s() { return isValid(%s, %s); }\n%s",
-      FUNCTION_NAME, VARIABLE_NAME, CONTEXT_NAME, config.validationScript);
+    // and have them access the global variable in the function.
+    // The input is passed as a JSON string and parsed in the script, rather than evaluated as a script,
+    // so that nothing is compiled per record.
+    String script = String.format("function %s(json) { return isValid(JSON.parse(json), %s); }\n%s",
+      FUNCTION_NAME, CONTEXT_NAME, config.validationScript);
     engine.eval(script);
     invocable = (Invocable) engine;
   }
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RecordProjector}.
+ */
+public class RecordProjectorTest {
+
+  @Test
+  public void testProjectedSchemaIsCached() {
+    final Schema keySchema = Schema.recordOf("key", Schema.Field.of("user", Schema.of(Schema.Type.STRING)));
+    final int[] numCreated = { 0 };
+    RecordProjector projector = new RecordProjector() {
+      @Override
+      protected Schema createProjectedSchema(Schema inputSchema) {
+        numCreated[0]++;
+        return keySchema;
+      }
+    };
+
+    Schema schema1 = Schema.recordOf("purchase",
+                                     Schema.Field.of("user", Schema.of(Schema.Type.STRING)),
+                                     Schema.Field.of("price", Schema.of(Schema.Type.DOUBLE)));
+    // equal to schema1, but a different instance
+    Schema schema2 = Schema.recordOf("purchase",
+                                     Schema.Field.of("user", Schema.of(Schema.Type.STRING)),
+                                     Schema.Field.of("price", Schema.of(Schema.Type.DOUBLE)));
+    Schema schema3 = Schema.recordOf("purchase",
+                                     Schema.Field.of("user", Schema.of(Schema.Type.STRING)),
+                                     Schema.Field.of("item", Schema.of(Schema.Type.STRING)));
+
+    StructuredRecord key = projector.project(
+      StructuredRecord.builder(schema1).set("user", "samuel").set("price", 1d).build());
+    Assert.assertEquals(keySchema, key.getSchema());
+    Assert.assertEquals("samuel", key.get("user"));
+    Assert.assertNull(key.getSchema().getField("price"));
+
+    projector.project(StructuredRecord.builder(schema1).set("user", "john").set("price", 2d).build());
+    projector.project(StructuredRecord.builder(schema2).set("user", "john").set("price", 2d).build());
+    Assert.assertEquals(1, numCreated[0]);
+
+    key = projector.project(StructuredRecord.builder(schema3).set("user", "john").set("item", "donut").build());
+    Assert.assertEquals("john", key.get("user"));
+    Assert.assertEquals(2, numCreated[0]);
+    projector.project(StructuredRecord.builder(schema1).set("user", "john").set("price", 2d).build());
+    Assert.assertEquals(2, numCreated[0]);
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for merging and serializing the partial state of {@link MergeableFunction}s.
+ */
+public class PartialStateTest {
+  private static final Schema SCHEMA = Schema.recordOf(
+    "test",
+    Schema.Field.of("x", Schema.of(Schema.Type.DOUBLE)),
+    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("attrs", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.INT))));
+
+  @Test
+  public void testNumberFunctions() throws IOException {
+    Schema fieldSchema = Schema.of(Schema.Type.DOUBLE);
+    testMergeAndSerialize(new Sum("x", fieldSchema), new Sum("x", fieldSchema), new Sum("x", fieldSchema));
+    testMergeAndSerialize(new Min("x", fieldSchema), new Min("x", fieldSchema), new Min("x", fieldSchema));
+    testMergeAndSerialize(new Max("x", fieldSchema), new Max("x", fieldSchema), new Max("x", fieldSchema));
+    testMergeAndSerialize(new Avg("x", fieldSchema), new Avg("x", fieldSchema), new Avg("x", fieldSchema));
+    testMergeAndSerialize(new Variance("x", fieldSchema), new Variance("x", fieldSchema),
+                          new Variance("x", fieldSchema));
+    testMergeAndSerialize(new Stddev("x", fieldSchema), new Stddev("x", fieldSchema), new Stddev("x", fieldSchema));
+    testMergeAndSerialize(new Count("x"), new Count("x"), new Count("x"));
+    testMergeAndSerialize(new CountAll(), new CountAll(), new CountAll());
+  }
+
+  @Test
+  public void testRecordFunctions() throws IOException {
+    Schema fieldSchema = Schema.of(Schema.Type.DOUBLE);
+    testMergeAndSerialize(new First<Double>("x", fieldSchema), new First<Double>("x", fieldSchema),
+                          new First<Double>("x", fieldSchema));
+    testMergeAndSerialize(new Last<Double>("x", fieldSchema), new Last<Double>("x", fieldSchema),
+                          new Last<Double>("x", fieldSchema));
+  }
+
+  @Test
+  public void testSelectionFunctions() throws IOException {
+    Schema fieldSchema = Schema.of(Schema.Type.DOUBLE);
+    MaxSelection max = new MaxSelection("x", fieldSchema);
+    MaxSelection maxPartial = new MaxSelection("x", fieldSchema);
+    operateOn(max, 0, 5);
+    operateOn(maxPartial, 5, 10);
+    max.merge(roundTrip(maxPartial));
+    Assert.assertEquals(1, max.getSelectedRecords().size());
+    StructuredRecord maxRecord = max.getSelectedRecords().get(0);
+    Assert.assertEquals(9d, maxRecord.<Double>get("x"), 0.000001d);
+    Assert.assertEquals("name7", maxRecord.get("name"));
+    Assert.assertEquals(ImmutableList.of("tag7"), maxRecord.get("tags"));
+    Assert.assertEquals(ImmutableMap.of("i", 7), maxRecord.get("attrs"));
+
+    MinSelection min = new MinSelection("x", fieldSchema);
+    MinSelection minPartial = new MinSelection("x", fieldSchema);
+    operateOn(min, 5, 10);
+    operateOn(minPartial, 0, 5);
+    min.merge(roundTrip(minPartial));
+    Assert.assertEquals(1, min.getSelectedRecords().size());
+    StructuredRecord minRecord = min.getSelectedRecords().get(0);
+    Assert.assertEquals(0d, minRecord.<Double>get("x"), 0.000001d);
+    Assert.assertNull(minRecord.get("name"));
+  }
+
+  @Test
+  public void testMergeEmpty() {
+    Schema fieldSchema = Schema.of(Schema.Type.DOUBLE);
+    Avg avg = new Avg("x", fieldSchema);
+    Avg empty = new Avg("x", fieldSchema);
+    operateOn(avg, 0, 1);
+    operateOn(empty, 0, 0);
+    avg.merge(empty);
+    Assert.assertEquals(0d, avg.getAggregate(), 0.000001d);
+    empty.merge(avg);
+    Assert.assertEquals(0d, empty.getAggregate(), 0.000001d);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeDifferentFunctions() {
+    Schema fieldSchema = Schema.of(Schema.Type.DOUBLE);
+    Min min = new Min("x", fieldSchema);
+    Max max = new Max("x", fieldSchema);
+    operateOn(min, 0, 5);
+    operateOn(max, 5, 10);
+    min.merge(max);
+  }
+
+  @Test
+  public void testSchemaWrittenOncePerStream() throws IOException {
+    Schema fieldSchema = Schema.of(Schema.Type.DOUBLE);
+    List<Last<Double>> partials = new ArrayList<>();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PartialStateOutput out = new PartialStateOutput(bytes);
+    List<Integer> sizes = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Last<Double> last = new Last<>("x", fieldSchema);
+      operateOn(last, i, i + 1);
+      last.writePartial(out);
+      partials.add(last);
+      out.flush();
+      sizes.add(bytes.size());
+    }
+    // only the first partial contains the schema, so the later ones are a fraction of its size
+    int firstSize = sizes.get(0);
+    int secondSize = sizes.get(1) - sizes.get(0);
+    Assert.assertTrue(secondSize < firstSize / 2);
+    Assert.assertTrue(sizes.get(2) - sizes.get(1) < firstSize / 2);
+
+    PartialStateInput in = new PartialStateInput(new ByteArrayInputStream(bytes.toByteArray()));
+    for (Last<Double> expected : partials) {
+      Last<Double> actual = new Last<>("x", fieldSchema);
+      actual.readPartial(in);
+      Assert.assertEquals(expected.getSelectedRecords(), actual.getSelectedRecords());
+    }
+    Assert.assertEquals(-1, in.read());
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadWithoutSchema() throws IOException {
+    Schema fieldSchema = Schema.of(Schema.Type.DOUBLE);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PartialStateOutput out = new PartialStateOutput(bytes);
+    for (int i = 0; i < 2; i++) {
+      First<Double> first = new First<>("x", fieldSchema);
+      operateOn(first, i, i + 1);
+      first.writePartial(out);
+    }
+    out.flush();
+    // the second partial refers to the schema written with the first one, so it cannot be read on its own
+    PartialStateInput firstInput = new PartialStateInput(new ByteArrayInputStream(bytes.toByteArray()));
+    new First<Double>("x", fieldSchema).readPartial(firstInput);
+    int firstSize = bytes.size() - firstInput.available();
+    byte[] second = Arrays.copyOfRange(bytes.toByteArray(), firstSize, bytes.size());
+    new First<Double>("x", fieldSchema).readPartial(new PartialStateInput(new ByteArrayInputStream(second)));
+  }
+
+  /**
+   * Computes the function over records 0 to 9 in a single pass, and checks that the same aggregate is computed by
+   * merging a function over records 0 to 4 with the serialized state of a function over records 5 to 9.
+   */
+  @SuppressWarnings("unchecked")
+  private <F extends AggregateFunction & MergeableFunction> void testMergeAndSerialize(
+    F singlePass, F left, F right) throws IOException {
+    operateOn(singlePass, 0, 10);
+    operateOn(left, 0, 5);
+    operateOn(right, 5, 10);
+
+    left.merge(roundTrip(right));
+    Object expected = singlePass.getAggregate();
+    Object actual = left.getAggregate();
+    if (expected instanceof Double) {
+      Assert.assertEquals((Double) expected, (Double) actual, 0.000001d);
+    } else {
+      Assert.assertEquals(expected, actual);
+    }
+  }
+
+  private void operateOn(RecordFunctionLifecycle function, int start, int end) {
+    function.beginFunction();
+    for (int i = start; i < end; i++) {
+      function.operateOn(createRecord(i));
+    }
+  }
+
+  /**
+   * Writes the partial state of the function, resets the function, then reads the state back into it.
+   */
+  private <F extends MergeableFunction> F roundTrip(F function) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PartialStateOutput out = new PartialStateOutput(bytes);
+    function.writePartial(out);
+    out.close();
+    function.beginFunction();
+    function.readPartial(new PartialStateInput(new ByteArrayInputStream(bytes.toByteArray())));
+    return function;
+  }
+
+  private static StructuredRecord createRecord(int i) {
+    return StructuredRecord.builder(SCHEMA)
+      .set("x", (double) ((i * 7) % 10))
+      .set("name", i % 2 == 0 ? null : "name" + i)
+      .set("tags", ImmutableList.of("tag" + i))
+      .set("attrs", ImmutableMap.of("i", i))
+      .build();
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.batch.aggregator.function;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MinSelection} and {@link MaxSelection}.
+ */
+public class SelectionTest {
+  private static final Schema FIELD_SCHEMA = Schema.nullableOf(Schema.of(Schema.Type.INT));
+  private static final Schema SCHEMA = Schema.recordOf("test", Schema.Field.of("x", FIELD_SCHEMA));
+
+  @Test
+  public void testRestartClearsSelection() {
+    testRestartClearsSelection(new MinSelection("x", FIELD_SCHEMA));
+    testRestartClearsSelection(new MaxSelection("x", FIELD_SCHEMA));
+  }
+
+  private void testRestartClearsSelection(NumberSelection selection) {
+    StructuredRecord record = StructuredRecord.builder(SCHEMA).set("x", 5).build();
+    selection.beginFunction();
+    selection.operateOn(record);
+    Assert.assertEquals(1, selection.getSelectedRecords().size());
+    Assert.assertSame(record, selection.getSelectedRecords().get(0));
+
+    // a group with only null values must not select the record of the previous group
+    selection.beginFunction();
+    selection.operateOn(StructuredRecord.builder(SCHEMA).build());
+    Assert.assertTrue(selection.getSelectedRecords().isEmpty());
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.batch.joiner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link HotKeyTracker}.
+ */
+public class HotKeyTrackerTest {
+
+  @Test
+  public void testTopKeys() {
+    HotKeyTracker<String> tracker = new HotKeyTracker<>(10);
+    // 'hot' makes up half of the keys, 'warm' a quarter, and the rest are distinct
+    for (int i = 0; i < 1000; i++) {
+      if (i % 2 == 0) {
+        tracker.add("hot");
+      } else if (i % 4 == 1) {
+        tracker.add("warm");
+      } else {
+        tracker.add("cold" + i);
+      }
+    }
+
+    Assert.assertEquals(1000, tracker.getTotal());
+    List<Map.Entry<String, Long>> topKeys = tracker.getTopKeys(2);
+    Assert.assertEquals(2, topKeys.size());
+    Assert.assertEquals("hot", topKeys.get(0).getKey());
+    Assert.assertEquals("warm", topKeys.get(1).getKey());
+    // counts are lower bounds that are off by at most total / (capacity + 1)
+    Assert.assertTrue(topKeys.get(0).getValue() <= 500 && topKeys.get(0).getValue() >= 500 - 1000 / 11);
+    Assert.assertTrue(topKeys.get(1).getValue() <= 250 && topKeys.get(1).getValue() >= 250 - 1000 / 11);
+  }
+
+  @Test
+  public void testFewerKeysThanLimit() {
+    HotKeyTracker<String> tracker = new HotKeyTracker<>(10);
+    tracker.add("a");
+    tracker.add("b");
+    tracker.add("a");
+    List<Map.Entry<String, Long>> topKeys = tracker.getTopKeys(5);
+    Assert.assertEquals(2, topKeys.size());
+    Assert.assertEquals("a", topKeys.get(0).getKey());
+    Assert.assertEquals(2L, (long) topKeys.get(0).getValue());
+    Assert.assertEquals("b", topKeys.get(1).getKey());
+    Assert.assertEquals(1L, (long) topKeys.get(1).getValue());
+  }
+}
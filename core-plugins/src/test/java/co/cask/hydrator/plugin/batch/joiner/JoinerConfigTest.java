@@ -16,7 +16,9 @@
 
 package co.cask.hydrator.plugin.batch.joiner;
 
+import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.etl.api.JoinElement;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -25,6 +27,7 @@ import com.google.common.collect.Table;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -219,4 +222,34 @@ public class JoinerConfigTest {
     Joiner joiner = new Joiner(null);
     Assert.assertEquals(outputSchema, joiner.getOutputSchema(getSchemaRequest));
   }
+
+  @Test
+  public void testJoinOnAndMerge() throws Exception {
+    JoinerConfig config = new JoinerConfig("film.film_id=filmActor.film_id&film.film_name=filmActor.film_name",
+                                           "film.film_id, film.film_name, filmActor.actor_name as renamed_actor",
+                                           "film,filmActor");
+    Map<String, Schema> inputSchemas = ImmutableMap.of("film", filmSchema, "filmActor", filmActorSchema);
+    Joiner joiner = new Joiner(config);
+    joiner.init(inputSchemas);
+    Schema joinOutputSchema = joiner.getOutputSchema(inputSchemas);
+    joiner.initStagePlans(inputSchemas, joinOutputSchema);
+
+    StructuredRecord film = StructuredRecord.builder(filmSchema)
+      .set("film_id", "1").set("film_name", "matrix").build();
+    StructuredRecord filmActor = StructuredRecord.builder(filmActorSchema)
+      .set("film_id", "1").set("film_name", "matrix").set("actor_name", "keanu").build();
+
+    StructuredRecord filmKey = joiner.joinOn("film", film);
+    Assert.assertEquals(filmKey, joiner.joinOn("filmActor", filmActor));
+    Assert.assertEquals("1", filmKey.get("1"));
+    Assert.assertEquals("matrix", filmKey.get("2"));
+
+    List<JoinElement<StructuredRecord>> joinRow = ImmutableList.of(new JoinElement<>("film", film),
+                                                                   new JoinElement<>("filmActor", filmActor));
+    StructuredRecord joined = joiner.merge(filmKey, joinRow);
+    Assert.assertEquals(joinOutputSchema, joined.getSchema());
+    Assert.assertEquals("1", joined.get("film_id"));
+    Assert.assertEquals("matrix", joined.get("film_name"));
+    Assert.assertEquals("keanu", joined.get("renamed_actor"));
+  }
 }
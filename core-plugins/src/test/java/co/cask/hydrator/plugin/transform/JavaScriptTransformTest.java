@@ -37,6 +37,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.script.ScriptEngine;
 
 /**
  * Test case for {@link JavaScriptTransform}.
@@ -359,4 +360,132 @@ public class JavaScriptTransformTest {
     Assert.assertEquals(1, mockContext.getMockMetrics().getCount("script.transform.count"));
     Assert.assertEquals(1, mockContext.getMockMetrics().getPipelineCount("transform.1.script.transform.count"));
   }
+
+  @Test
+  public void testEngineReuse() throws Exception {
+    JavaScriptTransform.Config config = new JavaScriptTransform.Config(
+      "var count = 0;\n" +
+        "function transform(x, emitter, context) {\n" +
+        "  x.intField = typeof leaked === 'undefined' ? ++count : -1;\n" +
+        "  leaked = true;\n" +
+        "  emitter.emit(x);\n" +
+        "}", null, null);
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+
+    JavaScriptTransform transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+    ScriptEngine engine = transform.getEngine();
+    transform.transform(RECORD1, emitter);
+    transform.destroy();
+    // the released engine no longer refers to the context of the stage
+    Assert.assertNull(engine.get(JavaScriptTransform.CONTEXT_NAME));
+
+    // the second transform is initialized with the engine released by the first one,
+    // but does not see the global variables the first one left behind
+    transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+    Assert.assertSame(engine, transform.getEngine());
+    transform.transform(RECORD1, emitter);
+    transform.destroy();
+
+    Assert.assertEquals(2, emitter.getEmitted().size());
+    Assert.assertEquals(1, emitter.getEmitted().get(0).get("intField"));
+    Assert.assertEquals(1, emitter.getEmitted().get(1).get("intField"));
+  }
+
+  @Test
+  public void testNestedRecordsWithNulls() throws Exception {
+    Schema innerSchema = Schema.recordOf(
+      "inner",
+      Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("vals", Schema.nullableOf(Schema.arrayOf(Schema.of(Schema.Type.INT)))));
+    Schema schema = Schema.recordOf(
+      "outer",
+      Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("inner", Schema.nullableOf(innerSchema)));
+
+    JavaScriptTransform.Config config = new JavaScriptTransform.Config(
+      "function transform(input, emitter, context) {\n" +
+        "  if (input.inner != null && input.inner.name == null) {\n" +
+        "    input.inner.name = 'unnamed';\n" +
+        "  }\n" +
+        "  emitter.emit(input);\n" +
+        "}",
+      schema.toString(), null);
+    Transform<StructuredRecord, StructuredRecord> transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+
+    StructuredRecord withNulls = StructuredRecord.builder(schema)
+      .set("id", 1)
+      .set("inner", StructuredRecord.builder(innerSchema).build())
+      .build();
+    StructuredRecord withoutInner = StructuredRecord.builder(schema).set("id", 2).build();
+    StructuredRecord full = StructuredRecord.builder(schema)
+      .set("id", 3)
+      .set("inner", StructuredRecord.builder(innerSchema)
+        .set("name", "x")
+        .set("vals", ImmutableList.of(1, 2))
+        .build())
+      .build();
+
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+    transform.transform(withNulls, emitter);
+    transform.transform(withoutInner, emitter);
+    transform.transform(full, emitter);
+    Assert.assertEquals(3, emitter.getEmitted().size());
+
+    StructuredRecord inner = emitter.getEmitted().get(0).get("inner");
+    Assert.assertEquals("unnamed", inner.get("name"));
+    Assert.assertNull(inner.get("vals"));
+
+    Assert.assertEquals(2, emitter.getEmitted().get(1).get("id"));
+    Assert.assertNull(emitter.getEmitted().get(1).get("inner"));
+
+    inner = emitter.getEmitted().get(2).get("inner");
+    Assert.assertEquals("x", inner.get("name"));
+    Assert.assertEquals(ImmutableList.of(1, 2), inner.get("vals"));
+    transform.destroy();
+  }
+
+  @Test
+  public void testEmitterReuse() throws Exception {
+    Schema schema = Schema.recordOf("num", Schema.Field.of("x", Schema.of(Schema.Type.INT)));
+    JavaScriptTransform.Config config = new JavaScriptTransform.Config(
+      "function transform(input, emitter, context) {\n" +
+        "  if (input.x > 100) {\n" +
+        "    emitter.emitError({ 'errorCode': 1, 'errorMsg': 'too big', 'invalidRecord': input });\n" +
+        "  } else {\n" +
+        "    emitter.emit({ 'x': input.x * 2 });\n" +
+        "  }\n" +
+        "}",
+      schema.toString(), null);
+    Transform<StructuredRecord, StructuredRecord> transform = new JavaScriptTransform(config);
+    transform.initialize(new MockTransformContext());
+
+    // consecutive calls with the same emitter each emit only their own output
+    MockEmitter<StructuredRecord> emitter1 = new MockEmitter<>();
+    transform.transform(StructuredRecord.builder(schema).set("x", 1).build(), emitter1);
+    transform.transform(StructuredRecord.builder(schema).set("x", 2).build(), emitter1);
+    Assert.assertEquals(2, emitter1.getEmitted().size());
+    Assert.assertEquals(2, emitter1.getEmitted().get(0).get("x"));
+    Assert.assertEquals(4, emitter1.getEmitted().get(1).get("x"));
+
+    // a call with a different emitter must not write to the previous one
+    MockEmitter<StructuredRecord> emitter2 = new MockEmitter<>();
+    transform.transform(StructuredRecord.builder(schema).set("x", 3).build(), emitter2);
+    transform.transform(StructuredRecord.builder(schema).set("x", 200).build(), emitter2);
+    Assert.assertEquals(2, emitter1.getEmitted().size());
+    Assert.assertTrue(emitter1.getErrors().isEmpty());
+    Assert.assertEquals(1, emitter2.getEmitted().size());
+    Assert.assertEquals(6, emitter2.getEmitted().get(0).get("x"));
+    Assert.assertEquals(1, emitter2.getErrors().size());
+    Assert.assertEquals(200, emitter2.getErrors().get(0).getInvalidRecord().get("x"));
+
+    // switching back to the first emitter
+    transform.transform(StructuredRecord.builder(schema).set("x", 5).build(), emitter1);
+    Assert.assertEquals(3, emitter1.getEmitted().size());
+    Assert.assertEquals(10, emitter1.getEmitted().get(2).get("x"));
+    Assert.assertEquals(1, emitter2.getEmitted().size());
+    transform.destroy();
+  }
 }
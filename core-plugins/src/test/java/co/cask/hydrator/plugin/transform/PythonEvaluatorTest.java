@@ -29,6 +29,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import org.junit.Assert;
 import org.junit.Test;
+import org.python.util.PythonInterpreter;
 
 import java.util.List;
 import java.util.Map;
@@ -286,4 +287,76 @@ public class PythonEvaluatorTest {
     Assert.assertTrue(Math.abs(2.71 * 2.71 + 3.14 * 3.14 * 3.14 - (Double) output.get("x")) < 0.000001);
     Assert.assertEquals(1, mockContext.getMockMetrics().getCount("script.transform.count"));
   }
+
+  @Test
+  public void testScriptRunsForEveryRecord() throws Exception {
+    // by default, module level statements are executed again for every record
+    Assert.assertEquals(ImmutableList.of(1, 1), runCounterScript(null));
+    Assert.assertEquals(ImmutableList.of(1, 1), runCounterScript(false));
+  }
+
+  @Test
+  public void testScriptRunsOnce() throws Exception {
+    // module level statements are executed when the stage is initialized, not for every record
+    Assert.assertEquals(ImmutableList.of(1, 2), runCounterScript(true));
+  }
+
+  private List<Object> runCounterScript(Boolean runScriptOnce) throws Exception {
+    PythonEvaluator.Config config = new PythonEvaluator.Config(
+      "seen = [0]\n" +
+      "def transform(x, emitter, context):\n" +
+      "  seen[0] += 1\n" +
+      "  x['intField'] = seen[0]\n" +
+      "  emitter.emit(x)",
+      null, runScriptOnce);
+    Transform<StructuredRecord, StructuredRecord> transform = new PythonEvaluator(config);
+    transform.initialize(new MockTransformContext());
+
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+    transform.transform(RECORD1, emitter);
+    transform.transform(RECORD2, emitter);
+    transform.destroy();
+    List<Object> counts = Lists.newArrayList();
+    for (StructuredRecord record : emitter.getEmitted()) {
+      counts.add(record.get("intField"));
+    }
+    return counts;
+  }
+
+  @Test
+  public void testInterpreterReuse() throws Exception {
+    PythonEvaluator.Config config = new PythonEvaluator.Config(
+      "seen = [0]\n" +
+      "def transform(x, emitter, context):\n" +
+      "  global leaked\n" +
+      "  if 'leaked' in globals():\n" +
+      "    x['intField'] = -1\n" +
+      "  else:\n" +
+      "    seen[0] += 1\n" +
+      "    x['intField'] = seen[0]\n" +
+      "  leaked = True\n" +
+      "  emitter.emit(x)",
+      null);
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+
+    PythonEvaluator transform = new PythonEvaluator(config);
+    transform.initialize(new MockTransformContext());
+    PythonInterpreter interpreter = transform.getInterpreter();
+    transform.transform(RECORD1, emitter);
+    transform.destroy();
+    // the released interpreter no longer refers to the context of the stage
+    Assert.assertNull(interpreter.get(PythonEvaluator.CONTEXT_NAME, Object.class));
+
+    // the second transform is initialized with the interpreter released by the first one,
+    // but does not see the globals the first one left behind
+    transform = new PythonEvaluator(config);
+    transform.initialize(new MockTransformContext());
+    Assert.assertSame(interpreter, transform.getInterpreter());
+    transform.transform(RECORD1, emitter);
+    transform.destroy();
+
+    Assert.assertEquals(2, emitter.getEmitted().size());
+    Assert.assertEquals(1, emitter.getEmitted().get(0).get("intField"));
+    Assert.assertEquals(1, emitter.getEmitted().get(1).get("intField"));
+  }
 }
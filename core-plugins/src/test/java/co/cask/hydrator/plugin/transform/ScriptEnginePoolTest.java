@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.transform;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link ScriptEnginePool}.
+ */
+public class ScriptEnginePoolTest {
+
+  @Test
+  public void testBorrowAndRelease() {
+    RecordingPool pool = new RecordingPool(2);
+    Assert.assertNull(pool.borrow("script1"));
+
+    Object engine1 = new Object();
+    Object engine2 = new Object();
+    pool.release("script1", engine1);
+    pool.release("script1", engine2);
+
+    // engines are only returned for the script they evaluated
+    Assert.assertNull(pool.borrow("script2"));
+
+    // the most recently released engine is returned first
+    Assert.assertSame(engine2, pool.borrow("script1"));
+    Assert.assertSame(engine1, pool.borrow("script1"));
+    Assert.assertNull(pool.borrow("script1"));
+    Assert.assertTrue(pool.disposed.isEmpty());
+  }
+
+  @Test
+  public void testEviction() {
+    RecordingPool pool = new RecordingPool(3);
+    Object engine1 = new Object();
+    Object engine2 = new Object();
+    Object engine3 = new Object();
+    Object engine4 = new Object();
+    Object engine5 = new Object();
+
+    pool.release("script1", engine1);
+    pool.release("script1", engine2);
+    pool.release("script2", engine3);
+    // script1 is used more recently than script2 now
+    Assert.assertSame(engine2, pool.borrow("script1"));
+    pool.release("script1", engine2);
+
+    // the pool is full, so the engine of the least recently used script is evicted
+    pool.release("script3", engine4);
+    Assert.assertEquals(ImmutableList.of(engine3), pool.disposed);
+    Assert.assertNull(pool.borrow("script2"));
+
+    // then the oldest engine of the next least recently used one
+    pool.release("script3", engine5);
+    Assert.assertEquals(ImmutableList.of(engine3, engine1), pool.disposed);
+    Assert.assertSame(engine2, pool.borrow("script1"));
+    Assert.assertNull(pool.borrow("script1"));
+    Assert.assertSame(engine5, pool.borrow("script3"));
+    Assert.assertSame(engine4, pool.borrow("script3"));
+  }
+
+  @Test
+  public void testNoIdleEngines() {
+    RecordingPool pool = new RecordingPool(0);
+    Object engine = new Object();
+    pool.release("script1", engine);
+    Assert.assertEquals(ImmutableList.of(engine), pool.disposed);
+    Assert.assertNull(pool.borrow("script1"));
+  }
+
+  /**
+   * Pool that records the engines it disposes.
+   */
+  private static final class RecordingPool extends ScriptEnginePool<Object> {
+    private final List<Object> disposed = new ArrayList<>();
+
+    private RecordingPool(int maxIdle) {
+      super(maxIdle);
+    }
+
+    @Override
+    protected void dispose(Object engine) {
+      disposed.add(engine);
+    }
+  }
+}
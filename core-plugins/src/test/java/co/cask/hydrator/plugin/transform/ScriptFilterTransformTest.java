@@ -22,11 +22,14 @@ import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.TransformContext;
 import co.cask.hydrator.common.test.MockEmitter;
 import co.cask.hydrator.common.test.MockTransformContext;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.List;
+
 /**
  */
 @SuppressWarnings("unchecked")
@@ -167,4 +170,62 @@ public class ScriptFilterTransformTest {
     Assert.assertEquals(schema, pipelineConfigurer.getOutputSchema());
   }
 
+  @Test
+  public void testNestedRecordsWithNulls() throws Exception {
+    Schema innerSchema = Schema.recordOf(
+      "inner",
+      Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("vals", Schema.nullableOf(Schema.arrayOf(Schema.of(Schema.Type.INT)))));
+    Schema schema = Schema.recordOf(
+      "outer",
+      Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("inner", Schema.nullableOf(innerSchema)));
+
+    ScriptFilterTransform.ScriptFilterConfig config = new ScriptFilterTransform.ScriptFilterConfig();
+    config.script = "function shouldFilter(input) {\n" +
+      "  return input.inner == null || input.inner.name == null || input.inner.vals.length < 2;\n" +
+      "}";
+    Transform transform = new ScriptFilterTransform(config);
+    transform.initialize(new MockTransformContext());
+
+    StructuredRecord withoutInner = StructuredRecord.builder(schema).set("id", 1).build();
+    StructuredRecord withNulls = StructuredRecord.builder(schema)
+      .set("id", 2)
+      .set("inner", StructuredRecord.builder(innerSchema).build())
+      .build();
+    StructuredRecord full = StructuredRecord.builder(schema)
+      .set("id", 3)
+      .set("inner", StructuredRecord.builder(innerSchema)
+        .set("name", "x")
+        .set("vals", ImmutableList.of(1, 2))
+        .build())
+      .build();
+
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+    transform.transform(withoutInner, emitter);
+    transform.transform(withNulls, emitter);
+    transform.transform(full, emitter);
+    Assert.assertEquals(ImmutableList.of(full), emitter.getEmitted());
+  }
+
+  @Test
+  public void testEmitterReuse() throws Exception {
+    ScriptFilterTransform.ScriptFilterConfig config = new ScriptFilterTransform.ScriptFilterConfig();
+    config.script = "function shouldFilter(input) { return input.x % 2 == 0; }";
+    Schema schema = Schema.recordOf("number", Schema.Field.of("x", Schema.of(Schema.Type.INT)));
+    Transform transform = new ScriptFilterTransform(config);
+    transform.initialize(new MockTransformContext());
+
+    MockEmitter<StructuredRecord> emitter1 = new MockEmitter<>();
+    MockEmitter<StructuredRecord> emitter2 = new MockEmitter<>();
+    List<StructuredRecord> inputs = Lists.newArrayList();
+    for (int i = 0; i < 6; i++) {
+      StructuredRecord input = StructuredRecord.builder(schema).set("x", i).build();
+      inputs.add(input);
+      transform.transform(input, i < 3 ? emitter1 : emitter2);
+    }
+    Assert.assertEquals(ImmutableList.of(inputs.get(1)), emitter1.getEmitted());
+    Assert.assertEquals(ImmutableList.of(inputs.get(3), inputs.get(5)), emitter2.getEmitted());
+  }
+
 }
@@ -134,4 +134,99 @@ public class ValidatorTransformTest {
     transform.configurePipeline(pipelineConfigurer);
     Assert.assertEquals(outputSchema, pipelineConfigurer.getOutputSchema());
   }
+
+  @Test
+  public void testNestedRecordsWithNulls() throws Exception {
+    Schema innerSchema = Schema.recordOf(
+      "inner",
+      Schema.Field.of("url", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("sizes", Schema.nullableOf(Schema.arrayOf(Schema.of(Schema.Type.INT)))));
+    Schema schema = Schema.recordOf(
+      "outer",
+      Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("inner", Schema.nullableOf(innerSchema)));
+
+    ValidatorTransform.ValidatorConfig config = new ValidatorTransform.ValidatorConfig();
+    config.validationScript =
+      "function isValid(input, context) {\n" +
+        "  var coreValidator = context.getValidator('coreValidator');\n" +
+        "  if (input.inner == null) {\n" +
+        "    return {'isValid': false, 'errorCode': 1, 'errorMsg': 'missing inner'};\n" +
+        "  }\n" +
+        "  if (input.inner.url == null || !coreValidator.isUrl(input.inner.url)) {\n" +
+        "    return {'isValid': false, 'errorCode': 2, 'errorMsg': 'invalid url'};\n" +
+        "  }\n" +
+        "  if (input.inner.sizes == null || input.inner.sizes[0] > 10) {\n" +
+        "    return {'isValid': false, 'errorCode': 3, 'errorMsg': 'invalid sizes'};\n" +
+        "  }\n" +
+        "  return {'isValid': true};\n" +
+        "}";
+    config.validators = "core";
+
+    ValidatorTransform transform = new ValidatorTransform(config);
+    transform.setUpInitialScript(new MockTransformContext(), ImmutableList.<Validator>of(new CoreValidator()));
+
+    StructuredRecord withoutInner = StructuredRecord.builder(schema).set("id", 1).build();
+    StructuredRecord withNulls = StructuredRecord.builder(schema)
+      .set("id", 2)
+      .set("inner", StructuredRecord.builder(innerSchema).build())
+      .build();
+    StructuredRecord nullSizes = StructuredRecord.builder(schema)
+      .set("id", 3)
+      .set("inner", StructuredRecord.builder(innerSchema).set("url", "http://xyz.com").build())
+      .build();
+    StructuredRecord valid = StructuredRecord.builder(schema)
+      .set("id", 4)
+      .set("inner", StructuredRecord.builder(innerSchema)
+        .set("url", "http://xyz.com")
+        .set("sizes", ImmutableList.of(5))
+        .build())
+      .build();
+
+    MockEmitter<StructuredRecord> emitter = new MockEmitter<>();
+    transform.transform(withoutInner, emitter);
+    transform.transform(withNulls, emitter);
+    transform.transform(nullSizes, emitter);
+    transform.transform(valid, emitter);
+
+    Assert.assertEquals(ImmutableList.of(valid), emitter.getEmitted());
+    Assert.assertEquals(3, emitter.getErrors().size());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(i + 1, emitter.getErrors().get(i).getErrorCode());
+      Assert.assertEquals(i + 1, emitter.getErrors().get(i).getInvalidRecord().get("id"));
+    }
+  }
+
+  @Test
+  public void testEmitterReuse() throws Exception {
+    ValidatorTransform.ValidatorConfig config = new ValidatorTransform.ValidatorConfig();
+    config.validationScript =
+      "function isValid(input, context) {\n" +
+        "  var valid = context.getValidator('coreValidator').isInRange(input.content_length, 0, 100);\n" +
+        "  return {'isValid': valid, 'errorCode': 10, 'errorMsg': 'content length out of range'};\n" +
+        "}";
+    config.validators = "core";
+
+    ValidatorTransform transform = new ValidatorTransform(config);
+    transform.setUpInitialScript(new MockTransformContext(), ImmutableList.<Validator>of(new CoreValidator()));
+
+    MockEmitter<StructuredRecord> emitter1 = new MockEmitter<>();
+    MockEmitter<StructuredRecord> emitter2 = new MockEmitter<>();
+    StructuredRecord[] records = new StructuredRecord[4];
+    for (int i = 0; i < records.length; i++) {
+      records[i] = StructuredRecord.builder(SCHEMA)
+        .set("date", "1/2/1988")
+        .set("url", "http://xyz.com")
+        .set("content_length", i % 2 == 0 ? 50 : 500)
+        .build();
+      transform.transform(records[i], i < 2 ? emitter1 : emitter2);
+    }
+
+    Assert.assertEquals(ImmutableList.of(records[0]), emitter1.getEmitted());
+    Assert.assertEquals(1, emitter1.getErrors().size());
+    Assert.assertEquals(records[1], emitter1.getErrors().get(0).getInvalidRecord());
+    Assert.assertEquals(ImmutableList.of(records[2]), emitter2.getEmitted());
+    Assert.assertEquals(1, emitter2.getErrors().size());
+    Assert.assertEquals(records[3], emitter2.getErrors().get(0).getInvalidRecord());
+  }
 }
@@ -39,7 +39,9 @@ import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 import javax.sql.rowset.serial.SerialBlob;
 
@@ -50,7 +52,7 @@ import javax.sql.rowset.serial.SerialBlob;
  * @see org.apache.hadoop.mapreduce.lib.db.DBOutputFormat DBOutputFormat
  * @see DBWritable DBWritable
  */
-public class DBRecord implements Writable, DBWritable, Configurable {
+public class DBRecord implements Writable, MultiRowDBWritable, Configurable {
 
   private StructuredRecord record;
   private Configuration conf;
@@ -62,6 +64,13 @@ public class DBRecord implements Writable, DBWritable, Configurable {
    */
   private int [] columnTypes;
 
+  // plan for reading records from a result set, computed by #initReadPlan
+  private ResultSet planResultSet;
+  private Schema readSchema;
+  private String[] readFieldNames;
+  private int[] columnIndices;
+  private ColumnReader[] columnReaders;
+
   /**
    * Used to construct a DBRecord from a StructuredRecord in the ETL Pipeline
    *
@@ -96,16 +105,42 @@ public class DBRecord implements Writable, DBWritable, Configurable {
    * @param resultSet the {@link ResultSet} to build the {@link StructuredRecord} from
    */
   public void readFields(ResultSet resultSet) throws SQLException {
+    if (resultSet != planResultSet) {
+      initReadPlan(resultSet);
+    }
+    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(readSchema);
+    for (int i = 0; i < readFieldNames.length; i++) {
+      recordBuilder.set(readFieldNames[i], columnReaders[i].read(resultSet, columnIndices[i], columnTypes[i]));
+    }
+    record = recordBuilder.build();
+  }
+
+  /**
+   * Computes the schema of the records read from the result set, and how to read each field from it.
+   * The record reader reuses the same instance to read every row of a split, so this is done once per split.
+   */
+  private void initReadPlan(ResultSet resultSet) throws SQLException {
     ResultSetMetaData metadata = resultSet.getMetaData();
     List<Schema.Field> schemaFields = DBUtils.getSchemaFields(resultSet, conf.get(DBUtils.OVERRIDE_SCHEMA));
-    Schema schema = Schema.recordOf("dbRecord", schemaFields);
-    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(schema);
+    Map<String, Integer> columns = new HashMap<>();
+    // ResultSetMetadata columns are numbered starting with 1. Like ResultSet#findColumn, the first column wins.
+    for (int i = metadata.getColumnCount(); i >= 1; i--) {
+      columns.put(metadata.getColumnName(i), i);
+    }
+
+    readSchema = Schema.recordOf("dbRecord", schemaFields);
+    readFieldNames = new String[schemaFields.size()];
+    columnIndices = new int[schemaFields.size()];
+    columnTypes = new int[schemaFields.size()];
+    columnReaders = new ColumnReader[schemaFields.size()];
     for (int i = 0; i < schemaFields.size(); i++) {
-      Schema.Field field = schemaFields.get(i);
-      int sqlColumnType = metadata.getColumnType(i + 1);
-      recordBuilder.set(field.getName(), transformValue(sqlColumnType, resultSet.getObject(field.getName())));
+      String name = schemaFields.get(i).getName();
+      readFieldNames[i] = name;
+      columnIndices[i] = columns.get(name);
+      columnTypes[i] = metadata.getColumnType(columnIndices[i]);
+      columnReaders[i] = ColumnReader.forType(columnTypes[i]);
     }
-    record = recordBuilder.build();
+    planResultSet = resultSet;
   }
 
   public void write(DataOutput out) throws IOException {
@@ -125,6 +160,11 @@ public class DBRecord implements Writable, DBWritable, Configurable {
    * @param stmt the {@link PreparedStatement} to write the {@link StructuredRecord} to
    */
   public void write(PreparedStatement stmt) throws SQLException {
+    write(stmt, 0);
+  }
+
+  @Override
+  public void write(PreparedStatement stmt, int parameterOffset) throws SQLException {
     Schema recordSchema = record.getSchema();
     List<Schema.Field> schemaFields = recordSchema.getFields();
     for (int i = 0; i < schemaFields.size(); i++) {
@@ -132,10 +172,16 @@ public class DBRecord implements Writable, DBWritable, Configurable {
       String fieldName = field.getName();
       Schema.Type fieldType = getNonNullableType(field);
       Object fieldValue = record.get(fieldName);
-      writeToDB(stmt, fieldType, fieldValue, i);
+      writeToDB(stmt, fieldType, fieldValue, i, parameterOffset + i + 1);
     }
   }
 
+  @Nullable
+  @Override
+  public Object get(int index) {
+    return record.get(record.getSchema().getFields().get(index).getName());
+  }
+
   private Schema.Type getNonNullableType(Schema.Field field) {
     Schema.Type type;
     if (field.getSchema().isNullable()) {
@@ -151,7 +197,7 @@ public class DBRecord implements Writable, DBWritable, Configurable {
   }
 
   @Nullable
-  private Object transformValue(int sqlColumnType, Object original) throws SQLException {
+  private static Object transformValue(int sqlColumnType, Object original) throws SQLException {
     if (original != null) {
       switch (sqlColumnType) {
         case Types.SMALLINT:
@@ -238,8 +284,7 @@ public class DBRecord implements Writable, DBWritable, Configurable {
   }
 
   private void writeToDB(PreparedStatement stmt, Schema.Type fieldType, @Nullable Object fieldValue,
-                         int fieldIndex) throws SQLException {
-    int sqlIndex = fieldIndex + 1;
+                         int fieldIndex, int sqlIndex) throws SQLException {
     if (fieldValue == null) {
       stmt.setNull(sqlIndex, columnTypes[fieldIndex]);
       return;
@@ -317,6 +362,140 @@ public class DBRecord implements Writable, DBWritable, Configurable {
     }
   }
 
+  /**
+   * Reads the value of a column from the current row of a {@link ResultSet}, as the type of the schema field
+   * that {@link DBUtils#getSchemaFields(ResultSet)} maps the column type to.
+   */
+  private enum ColumnReader {
+    INT {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        int value = resultSet.getInt(column);
+        return resultSet.wasNull() ? null : value;
+      }
+    },
+    LONG {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        long value = resultSet.getLong(column);
+        return resultSet.wasNull() ? null : value;
+      }
+    },
+    FLOAT {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        float value = resultSet.getFloat(column);
+        return resultSet.wasNull() ? null : value;
+      }
+    },
+    DOUBLE {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        double value = resultSet.getDouble(column);
+        return resultSet.wasNull() ? null : value;
+      }
+    },
+    DECIMAL {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        BigDecimal value = resultSet.getBigDecimal(column);
+        return value == null ? null : value.doubleValue();
+      }
+    },
+    BOOLEAN {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        boolean value = resultSet.getBoolean(column);
+        return resultSet.wasNull() ? null : value;
+      }
+    },
+    STRING {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        return resultSet.getString(column);
+      }
+    },
+    BYTES {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        return resultSet.getBytes(column);
+      }
+    },
+    DATE {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        Date value = resultSet.getDate(column);
+        return value == null ? null : value.getTime();
+      }
+    },
+    TIME {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        Time value = resultSet.getTime(column);
+        return value == null ? null : value.getTime();
+      }
+    },
+    TIMESTAMP {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        Timestamp value = resultSet.getTimestamp(column);
+        return value == null ? null : value.getTime();
+      }
+    },
+    /**
+     * Reads the column as an object and converts it, for types whose Java type depends on the driver or the column.
+     */
+    OBJECT {
+      @Override
+      Object read(ResultSet resultSet, int column, int sqlType) throws SQLException {
+        return transformValue(sqlType, resultSet.getObject(column));
+      }
+    };
+
+    @Nullable
+    abstract Object read(ResultSet resultSet, int column, int sqlType) throws SQLException;
+
+    static ColumnReader forType(int sqlType) {
+      switch (sqlType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+          return INT;
+        case Types.BIGINT:
+          return LONG;
+        case Types.REAL:
+          return FLOAT;
+        case Types.DOUBLE:
+          return DOUBLE;
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+          return DECIMAL;
+        case Types.BOOLEAN:
+          return BOOLEAN;
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGNVARCHAR:
+          return STRING;
+        case Types.BINARY:
+        case Types.VARBINARY:
+        case Types.LONGVARBINARY:
+          return BYTES;
+        case Types.DATE:
+          return DATE;
+        case Types.TIME:
+          return TIME;
+        case Types.TIMESTAMP:
+          return TIMESTAMP;
+        default:
+          // BIT can be a boolean or bytes, FLOAT is read as a double, and LOBs need to be freed
+          return OBJECT;
+      }
+    }
+  }
+
   @Override
   public void setConf(Configuration conf) {
     this.conf = conf;
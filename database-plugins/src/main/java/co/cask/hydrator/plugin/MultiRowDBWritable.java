@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin;
+
+import org.apache.hadoop.mapreduce.lib.db.DBWritable;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import javax.annotation.Nullable;
+
+/**
+ * {@link DBWritable} that can write its fields at any position of a {@link PreparedStatement},
+ * so that several rows can be written to a single multi-row INSERT statement.
+ */
+public interface MultiRowDBWritable extends DBWritable {
+
+  /**
+   * Writes the fields of this object to the given statement, starting after the given parameter index.
+   *
+   * @param statement the statement to write the fields to
+   * @param parameterOffset number of parameters of the statement that come before the first field of this object
+   */
+  void write(PreparedStatement statement, int parameterOffset) throws SQLException;
+
+  /**
+   * Returns the value of a field of this object.
+   *
+   * @param index index of the field, in the order in which the fields are written to a statement
+   * @return the value of the field
+   */
+  @Nullable
+  Object get(int index);
+}
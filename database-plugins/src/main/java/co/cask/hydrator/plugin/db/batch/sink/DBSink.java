@@ -42,6 +42,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapred.lib.db.DBConfiguration;
 import org.slf4j.Logger;
@@ -57,7 +58,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
 
 
 /**
@@ -88,11 +92,13 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
     super.configurePipeline(pipelineConfigurer);
+    dbSinkConfig.validate();
     dbManager.validateJDBCPluginPipeline(pipelineConfigurer, getJDBCPluginId());
   }
 
   @Override
   public void prepareRun(BatchSinkContext context) {
+    dbSinkConfig.validate();
     LOG.debug("tableName = {}; pluginType = {}; pluginName = {}; connectionString = {}; columns = {}",
               dbSinkConfig.tableName, dbSinkConfig.jdbcPluginType, dbSinkConfig.jdbcPluginName,
               dbSinkConfig.connectionString, dbSinkConfig.columns);
@@ -199,6 +205,10 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
   public static class DBSinkConfig extends DBConfig {
     public static final String COLUMNS = "columns";
     public static final String TABLE_NAME = "tableName";
+    public static final String BATCH_SIZE = "batchSize";
+    public static final String COMMIT_INTERVAL = "commitInterval";
+    public static final String ROWS_PER_INSERT = "rowsPerInsert";
+    public static final String UPSERT_KEYS = "upsertKeys";
 
     @Name(COLUMNS)
     @Description("Comma-separated list of columns in the specified table to export to.")
@@ -209,6 +219,65 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
     @Macro
     public String tableName;
 
+    @Nullable
+    @Name(BATCH_SIZE)
+    @Description("Number of rows to send to the database in a single batch. Larger batches need fewer round trips " +
+      "to the database, but more memory in the JDBC driver. Defaults to 1000.")
+    @Macro
+    public Integer batchSize;
+
+    @Nullable
+    @Name(COMMIT_INTERVAL)
+    @Description("Number of rows after which the rows written so far are committed. Rows are committed once a " +
+      "batch containing the row has been executed, so this is rounded up to a multiple of the batch size. " +
+      "If not specified, each task commits all of its rows in a single transaction when it finishes.")
+    @Macro
+    public Integer commitInterval;
+
+    @Nullable
+    @Name(ROWS_PER_INSERT)
+    @Description("Number of rows to insert with each INSERT statement, using a multi-row VALUES clause. " +
+      "Inserting several rows per statement is usually much faster, but is only supported by some databases, " +
+      "such as PostgreSQL, MySQL, SQL Server, H2, HSQLDB and Derby. The number of rows is lowered if a statement " +
+      "would have more parameters than the database supports. Defaults to 1.")
+    @Macro
+    public Integer rowsPerInsert;
+
+    @Nullable
+    @Name(UPSERT_KEYS)
+    @Description("Comma-separated list of columns that identify a row in the table. If specified, a row whose " +
+      "key columns match an existing row updates that row instead of inserting a new one. The columns must be a " +
+      "subset of the columns written by this sink, and must have a primary key or unique constraint on them.")
+    @Macro
+    public String upsertKeys;
+
+    public int getBatchSize() {
+      return batchSize == null ? ETLDBOutputFormat.DEFAULT_BATCH_SIZE : batchSize;
+    }
+
+    private void validate() {
+      if (!containsMacro(BATCH_SIZE) && batchSize != null && batchSize < 1) {
+        throw new IllegalArgumentException("Invalid value for batchSize. Must be at least 1, but got " + batchSize);
+      }
+      if (!containsMacro(COMMIT_INTERVAL) && commitInterval != null && commitInterval < 1) {
+        throw new IllegalArgumentException(
+          "Invalid value for commitInterval. Must be at least 1, but got " + commitInterval);
+      }
+      if (!containsMacro(ROWS_PER_INSERT) && rowsPerInsert != null && rowsPerInsert < 1) {
+        throw new IllegalArgumentException(
+          "Invalid value for rowsPerInsert. Must be at least 1, but got " + rowsPerInsert);
+      }
+      if (!containsMacro(UPSERT_KEYS) && !containsMacro(COLUMNS) && upsertKeys != null) {
+        Set<String> columnNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        Iterables.addAll(columnNames, Splitter.on(",").omitEmptyStrings().trimResults().split(columns));
+        for (String key : Splitter.on(",").omitEmptyStrings().trimResults().split(upsertKeys)) {
+          if (!columnNames.contains(key)) {
+            throw new IllegalArgumentException(String.format(
+              "Invalid value for upsertKeys. Key column '%s' is not one of the columns '%s'.", key, columns));
+          }
+        }
+      }
+    }
   }
 
   private static class DBOutputFormatProvider implements OutputFormatProvider {
@@ -218,6 +287,16 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
       this.conf = new HashMap<>();
 
       conf.put(ETLDBOutputFormat.AUTO_COMMIT_ENABLED, String.valueOf(dbSinkConfig.getEnableAutoCommit()));
+      conf.put(ETLDBOutputFormat.BATCH_SIZE, String.valueOf(dbSinkConfig.getBatchSize()));
+      if (dbSinkConfig.commitInterval != null) {
+        conf.put(ETLDBOutputFormat.COMMIT_INTERVAL, String.valueOf(dbSinkConfig.commitInterval));
+      }
+      if (dbSinkConfig.rowsPerInsert != null) {
+        conf.put(ETLDBOutputFormat.ROWS_PER_INSERT, String.valueOf(dbSinkConfig.rowsPerInsert));
+      }
+      if (dbSinkConfig.upsertKeys != null) {
+        conf.put(ETLDBOutputFormat.UPSERT_KEYS, dbSinkConfig.upsertKeys);
+      }
       conf.put(DBConfiguration.DRIVER_CLASS_PROPERTY, driverClass.getName());
       conf.put(DBConfiguration.URL_PROPERTY, dbSinkConfig.connectionString);
       if (dbSinkConfig.user != null) {
@@ -18,9 +18,11 @@ package co.cask.hydrator.plugin.db.batch.sink;
 
 import co.cask.hydrator.plugin.DBUtils;
 import co.cask.hydrator.plugin.JDBCDriverShim;
+import co.cask.hydrator.plugin.MultiRowDBWritable;
 import co.cask.hydrator.plugin.db.batch.NoOpCommitConnection;
 import com.google.common.base.Throwables;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
@@ -31,11 +33,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Class that extends {@link DBOutputFormat} to load the database driver class correctly.
@@ -47,6 +58,13 @@ import java.sql.SQLException;
  */
 public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<K, V> {
   public static final String AUTO_COMMIT_ENABLED = "co.cask.hydrator.db.output.autocommit.enabled";
+  public static final String BATCH_SIZE = "co.cask.hydrator.db.output.batch.size";
+  public static final String COMMIT_INTERVAL = "co.cask.hydrator.db.output.commit.interval";
+  public static final String ROWS_PER_INSERT = "co.cask.hydrator.db.output.rows.per.insert";
+  public static final String UPSERT_KEYS = "co.cask.hydrator.db.output.upsert.keys";
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  private static final String COUNTER_GROUP = "DBSink";
 
   private static final Logger LOG = LoggerFactory.getLogger(ETLDBOutputFormat.class);
   private Driver driver;
@@ -63,56 +81,287 @@ public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<
       fieldNames = new String[dbConf.getOutputFieldCount()];
     }
 
+    Set<String> upsertKeys = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    for (String key : conf.getTrimmedStringCollection(UPSERT_KEYS)) {
+      upsertKeys.add(key);
+    }
+    if (!upsertKeys.isEmpty()) {
+      for (int i = 0; i < fieldNames.length; i++) {
+        if (fieldNames[i] == null) {
+          throw new IOException("Upserting rows requires the names of the output fields.");
+        }
+        fieldNames[i] = fieldNames[i].trim();
+      }
+    }
+
     try {
       Connection connection = getConnection(conf);
-      PreparedStatement statement = connection.prepareStatement(constructQuery(tableName, fieldNames));
-      return new DBRecordWriter(connection, statement) {
-
-        private boolean emptyData = true;
-
-        //Implementation of the close method below is the exact implementation in DBOutputFormat except that
-        //we check if there is any data to be written and if not, we skip executeBatch call.
-        //There might be reducers that don't receive any data and thus this check is necessary to prevent
-        //empty data to be committed (since some Databases doesn't support that).
-        @Override
-        public void close(TaskAttemptContext context) throws IOException {
-          try {
-            if (!emptyData) {
-              getStatement().executeBatch();
-              getConnection().commit();
-            }
-          } catch (SQLException e) {
-            try {
-              getConnection().rollback();
-            } catch (SQLException ex) {
-              LOG.warn(StringUtils.stringifyException(ex));
-            }
-            throw new IOException(e.getMessage());
-          } finally {
-            try {
-              getStatement().close();
-              getConnection().close();
-            } catch (SQLException ex) {
-              throw new IOException(ex.getMessage());
-            }
+      String productName = connection.getMetaData().getDatabaseProductName();
+      UpsertDialect upsertDialect = null;
+      if (!upsertKeys.isEmpty()) {
+        upsertDialect = UpsertDialect.forDatabase(productName);
+        LOG.debug("Upserting rows into {} with keys {} using {} statements.", tableName, upsertKeys, upsertDialect);
+      }
+      QueryBuilder queryBuilder = new QueryBuilder(tableName, fieldNames, upsertDialect, upsertKeys);
+      int rowsPerInsert = getRowsPerStatement(productName, fieldNames.length, conf.getInt(ROWS_PER_INSERT, 1));
+      int[] keyIndices = null;
+      if (upsertDialect != null) {
+        keyIndices = new int[upsertKeys.size()];
+        int numKeys = 0;
+        for (int i = 0; i < fieldNames.length; i++) {
+          if (upsertKeys.contains(fieldNames[i])) {
+            keyIndices[numKeys++] = i;
           }
+        }
+      }
+      PreparedStatement statement = connection.prepareStatement(queryBuilder.constructQuery(rowsPerInsert));
+      return new BatchingDBRecordWriter(connection, statement, context, queryBuilder, fieldNames.length, rowsPerInsert,
+                                        keyIndices, conf.getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE),
+                                        conf.getInt(COMMIT_INTERVAL, 0));
+    } catch (Exception ex) {
+      throw new IOException(ex.getMessage());
+    }
+  }
+
+  /**
+   * {@link DBRecordWriter} that executes the batch of rows every batchSize rows, instead of holding all rows
+   * in a single batch until it is closed, and optionally commits every commitInterval rows.
+   * If rowsPerInsert is more than one, rows are inserted that many at a time with multi-row INSERT statements,
+   * which requires the keys to be {@link MultiRowDBWritable}. When upserting several rows per statement,
+   * a row replaces an earlier row with the same key that is still waiting for its statement to fill up.
+   */
+  private class BatchingDBRecordWriter extends DBRecordWriter {
+    private final QueryBuilder queryBuilder;
+    private final int numFields;
+    private final int rowsPerInsert;
+    private final MultiRowDBWritable[] pendingRows;
+    // indices of the upsert key fields, or null if rows are not upserted
+    @Nullable
+    private final int[] keyIndices;
+    private final Map<List<Object>, Integer> pendingKeys;
+    private final int batchSize;
+    private final int commitInterval;
+    @Nullable
+    private final Counter rowsCounter;
+    @Nullable
+    private final Counter batchesCounter;
+    @Nullable
+    private final Counter batchMillisCounter;
+    private int numPendingRows;
+    private int rowsInBatch;
+    private long rowsSinceCommit;
+    private long rowsWritten;
+    private long batches;
+    private long batchNanos;
+    private long replacedRows;
+
+    BatchingDBRecordWriter(Connection connection, PreparedStatement statement, TaskAttemptContext context,
+                           QueryBuilder queryBuilder, int numFields, int rowsPerInsert, @Nullable int[] keyIndices,
+                           int batchSize, int commitInterval) throws SQLException {
+      super(connection, statement);
+      this.queryBuilder = queryBuilder;
+      this.numFields = numFields;
+      this.rowsPerInsert = rowsPerInsert;
+      this.pendingRows = new MultiRowDBWritable[rowsPerInsert];
+      this.keyIndices = keyIndices;
+      this.pendingKeys = new HashMap<>();
+      this.batchSize = batchSize;
+      this.commitInterval = commitInterval;
+      // counters are not available from every execution engine
+      this.rowsCounter = context.getCounter(COUNTER_GROUP, "rows.written");
+      this.batchesCounter = context.getCounter(COUNTER_GROUP, "batches");
+      this.batchMillisCounter = context.getCounter(COUNTER_GROUP, "batch.time.ms");
+    }
 
-          try {
-            DriverManager.deregisterDriver(driverShim);
-          } catch (SQLException e) {
-            throw new IOException(e);
+    @Override
+    public void write(K key, V value) throws IOException {
+      try {
+        if (rowsPerInsert == 1) {
+          super.write(key, value);
+          rowsInBatch++;
+        } else {
+          if (!(key instanceof MultiRowDBWritable)) {
+            throw new IOException(String.format("Inserting multiple rows per statement requires %s, but got %s.",
+                                                MultiRowDBWritable.class.getName(), key.getClass().getName()));
+          }
+          MultiRowDBWritable row = (MultiRowDBWritable) key;
+          if (replacePendingRow(row)) {
+            return;
+          }
+          pendingRows[numPendingRows++] = row;
+          if (numPendingRows == rowsPerInsert) {
+            writePendingRows(getStatement());
+            getStatement().addBatch();
+            rowsInBatch += rowsPerInsert;
           }
         }
+        if (batchSize > 0 && rowsInBatch >= batchSize) {
+          executeBatch();
+        }
+      } catch (SQLException e) {
+        rollback();
+        throw new IOException(e.getMessage(), e);
+      }
+    }
 
-        @Override
-        public void write(K key, V value) throws IOException {
-          super.write(key, value);
-          emptyData = false;
+    //Implementation of the close method below is the same as the implementation in DBOutputFormat except that
+    //we check if there is any data to be written and if not, we skip executeBatch call.
+    //There might be reducers that don't receive any data and thus this check is necessary to prevent
+    //empty data to be committed (since some Databases doesn't support that).
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
+      try {
+        if (rowsInBatch > 0) {
+          executeBatch();
         }
-      };
-    } catch (Exception ex) {
-      throw new IOException(ex.getMessage());
+        if (numPendingRows > 0) {
+          insertPendingRows();
+        }
+        if (rowsSinceCommit > 0) {
+          getConnection().commit();
+        }
+      } catch (SQLException e) {
+        rollback();
+        throw new IOException(e.getMessage());
+      } finally {
+        try {
+          getStatement().close();
+          getConnection().close();
+        } catch (SQLException ex) {
+          throw new IOException(ex.getMessage());
+        }
+      }
+
+      if (rowsWritten > 0) {
+        long rowsPerSecond = batchNanos == 0 ? rowsWritten : rowsWritten * TimeUnit.SECONDS.toNanos(1) / batchNanos;
+        LOG.info("Wrote {} rows in {} batches. Executing the batches took {} ms, {} rows per second.",
+                 rowsWritten, batches, TimeUnit.NANOSECONDS.toMillis(batchNanos), rowsPerSecond);
+      }
+      if (replacedRows > 0) {
+        LOG.info("Skipped {} rows that were replaced by a later row with the same key in the same statement.",
+                 replacedRows);
+      }
+
+      try {
+        DriverManager.deregisterDriver(driverShim);
+      } catch (SQLException e) {
+        throw new IOException(e);
+      }
     }
+
+    private void executeBatch() throws SQLException {
+      long start = System.nanoTime();
+      getStatement().executeBatch();
+      rowsSinceCommit += rowsInBatch;
+      if (commitInterval > 0 && rowsSinceCommit >= commitInterval) {
+        getConnection().commit();
+        rowsSinceCommit = 0;
+      }
+      long elapsed = System.nanoTime() - start;
+      LOG.trace("Executed batch of {} rows in {} ms.", rowsInBatch, TimeUnit.NANOSECONDS.toMillis(elapsed));
+
+      rowsWritten += rowsInBatch;
+      batches++;
+      batchNanos += elapsed;
+      increment(rowsCounter, rowsInBatch);
+      increment(batchesCounter, 1);
+      increment(batchMillisCounter, TimeUnit.NANOSECONDS.toMillis(elapsed));
+      rowsInBatch = 0;
+    }
+
+    private void writePendingRows(PreparedStatement statement) throws SQLException {
+      for (int i = 0; i < numPendingRows; i++) {
+        pendingRows[i].write(statement, i * numFields);
+        pendingRows[i] = null;
+      }
+      numPendingRows = 0;
+      pendingKeys.clear();
+    }
+
+    // A statement cannot upsert the same row twice, so a row replaces the pending row with the same key, if any.
+    // Returns whether a pending row was replaced.
+    private boolean replacePendingRow(MultiRowDBWritable row) {
+      if (keyIndices == null) {
+        return false;
+      }
+      List<Object> rowKey = new ArrayList<>(keyIndices.length);
+      for (int index : keyIndices) {
+        Object value = row.get(index);
+        // arrays don't implement equals
+        rowKey.add(value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value);
+      }
+      Integer pendingIndex = pendingKeys.get(rowKey);
+      if (pendingIndex == null) {
+        pendingKeys.put(rowKey, numPendingRows);
+        return false;
+      }
+      pendingRows[pendingIndex] = row;
+      replacedRows++;
+      return true;
+    }
+
+    // inserts the rows that did not fill a whole statement
+    private void insertPendingRows() throws SQLException {
+      long start = System.nanoTime();
+      int numRows = numPendingRows;
+      try (PreparedStatement statement =
+             getConnection().prepareStatement(queryBuilder.constructQuery(numRows))) {
+        writePendingRows(statement);
+        statement.executeUpdate();
+      }
+      rowsSinceCommit += numRows;
+      rowsWritten += numRows;
+      batchNanos += System.nanoTime() - start;
+      increment(rowsCounter, numRows);
+    }
+
+    private void rollback() {
+      try {
+        getConnection().rollback();
+      } catch (SQLException ex) {
+        LOG.warn(StringUtils.stringifyException(ex));
+      }
+    }
+
+    private void increment(@Nullable Counter counter, long amount) {
+      if (counter != null) {
+        counter.increment(amount);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of rows to write with each statement. This is the configured number of rows, unless
+   * a statement with that many rows would have more parameters than the database supports.
+   */
+  static int getRowsPerStatement(String productName, int numFields, int rowsPerInsert) {
+    int maxRows = Math.max(1, getMaxParameters(productName) / Math.max(1, numFields));
+    if (rowsPerInsert <= maxRows) {
+      return rowsPerInsert;
+    }
+    LOG.warn("Writing {} rows per statement instead of the configured {}, since {} supports at most {} parameters " +
+               "in a statement, and each row has {} fields.",
+             maxRows, rowsPerInsert, productName, getMaxParameters(productName), numFields);
+    return maxRows;
+  }
+
+  // maximum number of parameters in a statement, given the product name of the database
+  private static int getMaxParameters(String productName) {
+    String name = productName.toLowerCase();
+    if (name.contains("microsoft sql server")) {
+      return 2100;
+    }
+    if (name.contains("postgresql")) {
+      // the protocol allows 65535, but older drivers send the count as a signed 16 bit integer
+      return Short.MAX_VALUE;
+    }
+    if (name.contains("mysql") || name.contains("mariadb")) {
+      return 65535;
+    }
+    if (name.contains("sqlite")) {
+      return 999;
+    }
+    return Integer.MAX_VALUE;
   }
 
   private Connection getConnection(Configuration conf) {
@@ -163,6 +412,42 @@ public class ETLDBOutputFormat<K extends DBWritable, V>  extends DBOutputFormat<
     return connection;
   }
 
+  /**
+   * Constructs the statements that write a given number of rows to the output table, either with a multi-row
+   * INSERT statement, or with an upsert statement if upsert keys are configured.
+   */
+  private final class QueryBuilder {
+    private final String tableName;
+    private final String[] fieldNames;
+    @Nullable
+    private final UpsertDialect upsertDialect;
+    private final Set<String> upsertKeys;
+
+    QueryBuilder(String tableName, String[] fieldNames, @Nullable UpsertDialect upsertDialect,
+                 Set<String> upsertKeys) {
+      this.tableName = tableName;
+      this.fieldNames = fieldNames;
+      this.upsertDialect = upsertDialect;
+      this.upsertKeys = upsertKeys;
+    }
+
+    String constructQuery(int numRows) {
+      if (upsertDialect != null) {
+        return upsertDialect.constructQuery(tableName, fieldNames, upsertKeys, numRows);
+      }
+      String query = ETLDBOutputFormat.this.constructQuery(tableName, fieldNames);
+      if (numRows == 1) {
+        return query;
+      }
+      String row = query.substring(query.lastIndexOf('('));
+      StringBuilder builder = new StringBuilder(query);
+      for (int i = 1; i < numRows; i++) {
+        builder.append(',').append(row);
+      }
+      return builder.toString();
+    }
+  }
+
   @Override
   public String constructQuery(String table, String[] fieldNames) {
     String query = super.constructQuery(table, fieldNames);
@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.db.batch.sink;
+
+import com.google.common.base.Joiner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds statements that insert rows into a table, or update the existing rows that have the same key columns,
+ * in the syntax supported by a particular database.
+ */
+enum UpsertDialect {
+
+  /**
+   * INSERT ... ON CONFLICT (keys) DO UPDATE, supported by PostgreSQL 9.5 and later.
+   */
+  POSTGRESQL {
+    @Override
+    String constructQuery(String table, String[] columns, Set<String> keys, int numRows) {
+      StringBuilder query = insertQuery(table, columns, numRows);
+      query.append(" ON CONFLICT (").append(JOINER.join(keys)).append(')');
+      List<String> updates = new ArrayList<>();
+      for (String column : nonKeyColumns(columns, keys)) {
+        updates.add(column + " = EXCLUDED." + column);
+      }
+      if (updates.isEmpty()) {
+        return query.append(" DO NOTHING").toString();
+      }
+      return query.append(" DO UPDATE SET ").append(JOINER.join(updates)).toString();
+    }
+  },
+
+  /**
+   * INSERT ... ON DUPLICATE KEY UPDATE, supported by MySQL and MariaDB. These databases detect duplicates using
+   * every primary key and unique index of the table, rather than the configured key columns.
+   */
+  MYSQL {
+    @Override
+    String constructQuery(String table, String[] columns, Set<String> keys, int numRows) {
+      StringBuilder query = insertQuery(table, columns, numRows);
+      List<String> updates = new ArrayList<>();
+      for (String column : nonKeyColumns(columns, keys)) {
+        updates.add(column + " = VALUES(" + column + ")");
+      }
+      if (updates.isEmpty()) {
+        // assigning a key column to itself leaves an existing row unchanged
+        String key = keys.iterator().next();
+        updates.add(key + " = " + key);
+      }
+      return query.append(" ON DUPLICATE KEY UPDATE ").append(JOINER.join(updates)).toString();
+    }
+  },
+
+  /**
+   * MERGE with the rows selected from DUAL, since Oracle does not support VALUES as a table.
+   */
+  ORACLE {
+    @Override
+    String constructQuery(String table, String[] columns, Set<String> keys, int numRows) {
+      StringBuilder source = new StringBuilder();
+      for (int i = 0; i < numRows; i++) {
+        if (i > 0) {
+          source.append(" UNION ALL ");
+        }
+        source.append("SELECT ");
+        for (int j = 0; j < columns.length; j++) {
+          source.append(j == 0 ? "" : ", ").append("? ").append(columns[j]);
+        }
+        source.append(" FROM DUAL");
+      }
+      return mergeQuery(table + " t", source.toString() + ") s", columns, keys);
+    }
+  },
+
+  /**
+   * MERGE as defined by the SQL standard, supported by DB2, HSQLDB and H2 among others.
+   */
+  MERGE {
+    @Override
+    String constructQuery(String table, String[] columns, Set<String> keys, int numRows) {
+      StringBuilder source = new StringBuilder("VALUES ");
+      appendRows(source, columns.length, numRows);
+      source.append(") AS s (").append(JOINER.join(columns)).append(')');
+      return mergeQuery(table + " AS t", source.toString(), columns, keys);
+    }
+  },
+
+  /**
+   * MERGE as defined by the SQL standard, terminated with a semicolon since SQL Server requires one.
+   */
+  SQLSERVER {
+    @Override
+    String constructQuery(String table, String[] columns, Set<String> keys, int numRows) {
+      return MERGE.constructQuery(table, columns, keys, numRows) + ";";
+    }
+  };
+
+  private static final Joiner JOINER = Joiner.on(", ");
+
+  /**
+   * Constructs a statement that inserts the given number of rows, updating the existing rows that have the same
+   * values for the key columns. The statement has a parameter for every column of every row, in the order of the
+   * columns and rows. The rows of a statement must have distinct keys, since most databases do not allow
+   * a statement to update the same row twice.
+   */
+  abstract String constructQuery(String table, String[] columns, Set<String> keys, int numRows);
+
+  /**
+   * Returns the dialect to use for a database, given its product name as returned by the JDBC driver.
+   */
+  static UpsertDialect forDatabase(String productName) {
+    String name = productName.toLowerCase();
+    if (name.contains("postgresql")) {
+      return POSTGRESQL;
+    }
+    if (name.contains("mysql") || name.contains("mariadb")) {
+      return MYSQL;
+    }
+    if (name.contains("oracle")) {
+      return ORACLE;
+    }
+    if (name.contains("microsoft sql server")) {
+      return SQLSERVER;
+    }
+    return MERGE;
+  }
+
+  private static StringBuilder insertQuery(String table, String[] columns, int numRows) {
+    StringBuilder query = new StringBuilder("INSERT INTO ").append(table)
+      .append(" (").append(JOINER.join(columns)).append(") VALUES ");
+    appendRows(query, columns.length, numRows);
+    return query;
+  }
+
+  private static void appendRows(StringBuilder query, int numColumns, int numRows) {
+    for (int i = 0; i < numRows; i++) {
+      query.append(i == 0 ? "(" : ", (");
+      for (int j = 0; j < numColumns; j++) {
+        query.append(j == 0 ? "?" : ", ?");
+      }
+      query.append(')');
+    }
+  }
+
+  private static String mergeQuery(String target, String source, String[] columns, Set<String> keys) {
+    StringBuilder query = new StringBuilder("MERGE INTO ").append(target).append(" USING (").append(source);
+    List<String> conditions = new ArrayList<>();
+    for (String key : keys) {
+      conditions.add("t." + key + " = s." + key);
+    }
+    query.append(" ON (").append(Joiner.on(" AND ").join(conditions)).append(')');
+
+    List<String> updates = new ArrayList<>();
+    for (String column : nonKeyColumns(columns, keys)) {
+      updates.add(column + " = s." + column);
+    }
+    if (!updates.isEmpty()) {
+      query.append(" WHEN MATCHED THEN UPDATE SET ").append(JOINER.join(updates));
+    }
+
+    List<String> values = new ArrayList<>();
+    for (String column : columns) {
+      values.add("s." + column);
+    }
+    return query.append(" WHEN NOT MATCHED THEN INSERT (").append(JOINER.join(columns))
+      .append(") VALUES (").append(JOINER.join(values)).append(')').toString();
+  }
+
+  private static List<String> nonKeyColumns(String[] columns, Set<String> keys) {
+    List<String> nonKeyColumns = new ArrayList<>(Arrays.asList(columns));
+    nonKeyColumns.removeAll(keys);
+    return nonKeyColumns;
+  }
+}
@@ -20,10 +20,13 @@ import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.annotation.Name;
 import co.cask.cdap.api.annotation.Plugin;
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.batch.Input;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.plugin.EndpointPluginContext;
 import co.cask.cdap.api.plugin.PluginConfig;
 import co.cask.cdap.api.plugin.PluginProperties;
@@ -74,6 +77,8 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
   private final DBSourceConfig sourceConfig;
   private final DBManager dbManager;
   private Class<? extends Driver> driverClass;
+  // the watermark to save if the run succeeds
+  private String nextWatermark;
 
   public DBSource(DBSourceConfig sourceConfig) {
     super(new ReferencePluginConfig(sourceConfig.referenceName));
@@ -89,6 +94,9 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     if (!Strings.isNullOrEmpty(sourceConfig.schema)) {
       pipelineConfigurer.getStageConfigurer().setOutputSchema(sourceConfig.getSchema());
     }
+    if (sourceConfig.watermarkTable != null && !sourceConfig.containsMacro(DBSourceConfig.WATERMARK_TABLE)) {
+      pipelineConfigurer.createDataset(sourceConfig.watermarkTable, KeyValueTable.class.getName());
+    }
   }
 
   class GetSchemaRequest {
@@ -179,6 +187,10 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
 
     // Load the plugin class to make sure it is available.
     Class<? extends Driver> driverClass = context.loadPluginClass(getJDBCPluginId());
+    String importQuery = sourceConfig.getImportQuery();
+    if (!Strings.isNullOrEmpty(sourceConfig.watermarkColumn)) {
+      importQuery = getIncrementalImportQuery(context, driverClass);
+    }
     if (sourceConfig.user == null && sourceConfig.password == null) {
       DBConfiguration.configureDB(hConf, driverClass.getName(), sourceConfig.connectionString);
     } else {
@@ -186,7 +198,7 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
                                   sourceConfig.user, sourceConfig.password);
     }
     DataDrivenETLDBInputFormat.setInput(hConf, DBRecord.class,
-                                        sourceConfig.getImportQuery(), sourceConfig.getBoundingQuery(),
+                                        importQuery, sourceConfig.getBoundingQuery(),
                                         sourceConfig.getEnableAutoCommit());
     if (sourceConfig.numSplits == null || sourceConfig.numSplits != 1) {
       if (!sourceConfig.getImportQuery().contains("$CONDITIONS")) {
@@ -201,10 +213,77 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     if (sourceConfig.schema != null) {
       hConf.set(DBUtils.OVERRIDE_SCHEMA, sourceConfig.schema);
     }
+    if (sourceConfig.fetchSize != null) {
+      hConf.setInt(DataDrivenETLDBInputFormat.FETCH_SIZE, sourceConfig.fetchSize);
+    }
+    hConf.setBoolean(DataDrivenETLDBInputFormat.QUANTILE_SPLITS,
+                     DBSourceConfig.QUANTILE_SPLIT_STRATEGY.equalsIgnoreCase(sourceConfig.splitStrategy));
     context.setInput(Input.of(sourceConfig.referenceName,
                               new SourceInputFormatProvider(DataDrivenETLDBInputFormat.class, hConf)));
   }
 
+  /**
+   * Returns the import query restricted to the rows whose watermark column is larger than the watermark saved by the
+   * last successful run, and at most the current maximum value of the column, which is saved if this run succeeds.
+   */
+  private String getIncrementalImportQuery(BatchSourceContext context,
+                                           Class<? extends Driver> driverClass) throws Exception {
+    if (!context.datasetExists(sourceConfig.watermarkTable)) {
+      context.createDataset(sourceConfig.watermarkTable, KeyValueTable.class.getName(), DatasetProperties.EMPTY);
+    }
+    KeyValueTable watermarks = context.getDataset(sourceConfig.watermarkTable);
+    byte[] watermarkKey = Bytes.toBytes(sourceConfig.referenceName);
+    String watermark = Bytes.toString(watermarks.read(watermarkKey));
+
+    String column = sourceConfig.watermarkColumn;
+    String condition = watermark == null ? "1=1" : String.format("%s > %s", column, watermark);
+    String importQuery = sourceConfig.getImportQuery();
+    String maxQuery = String.format("SELECT MAX(%s) FROM (%s) t",
+                                    DataDrivenETLDBInputFormat.getUnqualifiedColumnName(column),
+                                    importQuery.replace(DataDrivenETLDBInputFormat.SUBSTITUTE_TOKEN, condition));
+    Object maxValue;
+    DriverCleanup driverCleanup = DBUtils.ensureJDBCDriverIsAvailable(driverClass, sourceConfig.connectionString,
+                                                                      sourceConfig.jdbcPluginType,
+                                                                      sourceConfig.jdbcPluginName);
+    try (Connection connection = getConnection(sourceConfig.connectionString, sourceConfig.user,
+                                               sourceConfig.password);
+         Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(maxQuery)) {
+      resultSet.next();
+      maxValue = resultSet.getObject(1);
+    } finally {
+      driverCleanup.destroy();
+      DBUtils.cleanup(driverClass);
+    }
+
+    if (maxValue == null) {
+      LOG.info("No rows with {} larger than the watermark {}.", column, watermark);
+      nextWatermark = null;
+      condition = "1=0";
+    } else {
+      nextWatermark = DataDrivenETLDBInputFormat.toLiteral(maxValue);
+      if (nextWatermark == null) {
+        throw new IllegalArgumentException(String.format(
+          "The watermarkColumn %s must be a number, string, date or timestamp, but its maximum value is a %s.",
+          column, maxValue.getClass().getName()));
+      }
+      LOG.info("Reading rows with {} larger than the watermark {} and at most {}.", column, watermark, nextWatermark);
+      condition = String.format("%s AND %s <= %s", condition, column, nextWatermark);
+    }
+    return importQuery.replace(DataDrivenETLDBInputFormat.SUBSTITUTE_TOKEN,
+                               String.format("(%s) AND %s", condition, DataDrivenETLDBInputFormat.SUBSTITUTE_TOKEN));
+  }
+
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+    super.onRunFinish(succeeded, context);
+    if (succeeded && nextWatermark != null) {
+      KeyValueTable watermarks = context.getDataset(sourceConfig.watermarkTable);
+      watermarks.write(Bytes.toBytes(sourceConfig.referenceName), Bytes.toBytes(nextWatermark));
+      LOG.debug("Saved watermark {} for {}.", nextWatermark, sourceConfig.referenceName);
+    }
+  }
+
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
@@ -239,6 +318,12 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     public static final String SPLIT_BY = "splitBy";
     public static final String NUM_SPLITS = "numSplits";
     public static final String SCHEMA = "schema";
+    public static final String SPLIT_STRATEGY = "splitStrategy";
+    public static final String FETCH_SIZE = "fetchSize";
+    public static final String WATERMARK_COLUMN = "watermarkColumn";
+    public static final String WATERMARK_TABLE = "watermarkTable";
+    public static final String UNIFORM_SPLIT_STRATEGY = "uniform";
+    public static final String QUANTILE_SPLIT_STRATEGY = "quantile";
 
     @Name(IMPORT_QUERY)
     @Description("The SELECT query to use to import data from the specified table. " +
@@ -253,7 +338,8 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     @Name(BOUNDING_QUERY)
     @Description("Bounding Query should return the min and max of the " +
       "values of the 'splitBy' field. For example, 'SELECT MIN(id),MAX(id) FROM table'. " +
-      "This is required unless numSplits is set to one.")
+      "If not specified, the min and max are computed over the rows returned by the importQuery, " +
+      "which must then select the 'splitBy' field.")
     @Macro
     String boundingQuery;
 
@@ -271,6 +357,40 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     @Macro
     Integer numSplits;
 
+    @Nullable
+    @Name(SPLIT_STRATEGY)
+    @Description("How to divide the values of the 'splitBy' field into splits. 'uniform' divides the range between " +
+      "the min and max into ranges of equal size, which can make some splits much larger than others if the values " +
+      "are skewed. 'quantile' queries the quantiles of the values with the NTILE window function, so that every " +
+      "split reads about the same number of rows, and falls back to 'uniform' if the database does not support " +
+      "NTILE. Defaults to 'uniform'.")
+    @Macro
+    String splitStrategy;
+
+    @Nullable
+    @Name(FETCH_SIZE)
+    @Description("Number of rows to fetch from the database at a time. Some JDBC drivers, such as the PostgreSQL " +
+      "driver, read all the rows of a query into memory unless this is set. If not specified, the default of the " +
+      "JDBC driver is used.")
+    @Macro
+    Integer fetchSize;
+
+    @Nullable
+    @Name(WATERMARK_COLUMN)
+    @Description("Column that increases as rows are added or updated, such as a last modified timestamp or an " +
+      "increasing id. If specified, each run only reads the rows whose value for this column is larger than the " +
+      "largest value read by the last successful run. The importQuery must select this column and contain the " +
+      "'$CONDITIONS' string. Rows where the column is null are not read.")
+    @Macro
+    String watermarkColumn;
+
+    @Nullable
+    @Name(WATERMARK_TABLE)
+    @Description("Name of the KeyValueTable that stores the largest value of the watermarkColumn read by the last " +
+      "successful run, keyed by the reference name of this source. Required if watermarkColumn is specified.")
+    @Macro
+    String watermarkTable;
+
     @Nullable
     @Name(SCHEMA)
     @Description("The schema of records output by the source. This will be used in place of whatever schema comes " +
@@ -307,8 +427,26 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
         throw new IllegalArgumentException("The splitBy must be specified if numSplits is not set to 1.");
       }
 
-      if (!hasOneSplit && !containsMacro("boundingQuery") && (boundingQuery == null || boundingQuery.isEmpty())) {
-        throw new IllegalArgumentException("The boundingQuery must be specified if numSplits is not set to 1.");
+      if (!containsMacro(SPLIT_STRATEGY) && splitStrategy != null &&
+        !UNIFORM_SPLIT_STRATEGY.equalsIgnoreCase(splitStrategy) &&
+        !QUANTILE_SPLIT_STRATEGY.equalsIgnoreCase(splitStrategy)) {
+        throw new IllegalArgumentException(String.format(
+          "Invalid value for splitStrategy. Must be '%s' or '%s', but got '%s'.",
+          UNIFORM_SPLIT_STRATEGY, QUANTILE_SPLIT_STRATEGY, splitStrategy));
+      }
+
+      if (!containsMacro(WATERMARK_COLUMN) && !Strings.isNullOrEmpty(watermarkColumn)) {
+        if (!containsMacro(WATERMARK_TABLE) && Strings.isNullOrEmpty(watermarkTable)) {
+          throw new IllegalArgumentException("The watermarkTable must be specified if watermarkColumn is specified.");
+        }
+        if (!containsMacro(IMPORT_QUERY) && !getImportQuery().contains("$CONDITIONS")) {
+          throw new IllegalArgumentException(String.format(
+            "Import Query %s must contain the string '$CONDITIONS' if watermarkColumn is specified.", importQuery));
+        }
+      }
+
+      if (!containsMacro(FETCH_SIZE) && fetchSize != null && fetchSize < 1) {
+        throw new IllegalArgumentException("Invalid value for fetchSize. Must be at least 1, but got " + fetchSize);
       }
 
     }
@@ -19,29 +19,44 @@ package co.cask.hydrator.plugin.db.batch.source;
 import co.cask.hydrator.plugin.DBUtils;
 import co.cask.hydrator.plugin.JDBCDriverShim;
 import co.cask.hydrator.plugin.db.batch.NoOpCommitConnection;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
 import org.apache.hadoop.mapreduce.lib.db.DBInputFormat;
 import org.apache.hadoop.mapreduce.lib.db.DBWritable;
 import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBInputFormat;
+import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBRecordReader;
+import org.apache.hadoop.mapreduce.lib.db.OracleDataDrivenDBRecordReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * Class that extends {@link DBInputFormat} to load the database driver class correctly.
  */
 public class DataDrivenETLDBInputFormat extends DataDrivenDBInputFormat {
   public static final String AUTO_COMMIT_ENABLED = "co.cask.hydrator.db.autocommit.enabled";
+  public static final String FETCH_SIZE = "co.cask.hydrator.db.fetch.size";
+  public static final String QUANTILE_SPLITS = "co.cask.hydrator.db.quantile.splits";
 
   private static final Logger LOG = LoggerFactory.getLogger(DataDrivenETLDBInputFormat.class);
   private Driver driver;
@@ -108,9 +123,148 @@ public class DataDrivenETLDBInputFormat extends DataDrivenDBInputFormat {
     return this.connection;
   }
 
+  /**
+   * Returns the query that finds the minimum and maximum values of the split column. If no bounding query was
+   * configured, they are computed over the rows returned by the input query, which must select the split column.
+   */
+  @Override
+  protected String getBoundingValsQuery() {
+    DBConfiguration dbConf = getDBConf();
+    if (!Strings.isNullOrEmpty(dbConf.getInputBoundingQuery())) {
+      return dbConf.getInputBoundingQuery();
+    }
+    String column = getUnqualifiedColumnName(dbConf.getInputOrderBy());
+    return String.format("SELECT MIN(%s), MAX(%s) FROM (%s) t", column, column, getUnconditionedInputQuery());
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext job) throws IOException {
+    Configuration conf = job.getConfiguration();
+    int numSplits = conf.getInt(MRJobConfig.NUM_MAPS, 1);
+    if (numSplits == 1 || !conf.getBoolean(QUANTILE_SPLITS, false)) {
+      return super.getSplits(job);
+    }
+
+    String splitBy = getDBConf().getInputOrderBy();
+    List<Object> boundaries = new ArrayList<>();
+    try (Statement statement = getConnection().createStatement();
+         ResultSet resultSet = statement.executeQuery(getQuantilesQuery(numSplits))) {
+      while (resultSet.next()) {
+        boundaries.add(resultSet.getObject(1));
+      }
+    } catch (SQLException e) {
+      // most likely the database does not support the NTILE window function
+      LOG.warn("Unable to compute the quantiles of {}. Generating splits of equal ranges between its minimum " +
+                 "and maximum values instead.", splitBy, e);
+      rollback();
+      return super.getSplits(job);
+    }
+
+    List<InputSplit> splits = getQuantileSplits(splitBy, boundaries);
+    if (splits == null) {
+      LOG.warn("Unable to generate splits from the quantiles of {}, since its values are not numbers, strings or " +
+                 "dates. Generating splits of equal ranges between its minimum and maximum values instead.", splitBy);
+      return super.getSplits(job);
+    }
+    try {
+      getConnection().commit();
+    } catch (SQLException e) {
+      LOG.debug("Unable to commit the split transaction.", e);
+    } finally {
+      closeConnection();
+    }
+    LOG.debug("Generated {} splits from the quantiles of {}: {}", splits.size(), splitBy, boundaries);
+    return splits;
+  }
+
+  /**
+   * Returns the query that divides the rows of the input query into the given number of tiles ordered by the split
+   * column, and returns the maximum value of the split column in each tile. A tile that only contains nulls
+   * returns null.
+   */
+  private String getQuantilesQuery(int numSplits) {
+    String column = getUnqualifiedColumnName(getDBConf().getInputOrderBy());
+    return String.format("SELECT MAX(%s) FROM (SELECT %s, NTILE(%d) OVER (ORDER BY %s) AS split_tile FROM (%s) t) q " +
+                           "GROUP BY split_tile ORDER BY 1", column, column, numSplits, column,
+                         getUnconditionedInputQuery());
+  }
+
+  /**
+   * Generates splits that read the rows between consecutive quantiles of the split column, and a split that reads
+   * the rows where the split column is null. The null split is always added, since null values that share a tile
+   * with other values do not show up in the quantiles. Returns null if a quantile can not be written as a SQL literal.
+   */
+  @Nullable
+  @VisibleForTesting
+  static List<InputSplit> getQuantileSplits(String splitBy, List<Object> quantiles) {
+    List<String> literals = new ArrayList<>();
+    for (Object quantile : quantiles) {
+      if (quantile == null) {
+        continue;
+      }
+      String literal = toLiteral(quantile);
+      if (literal == null) {
+        return null;
+      }
+      // a value that appears in many rows can end several tiles
+      if (!literals.contains(literal)) {
+        literals.add(literal);
+      }
+    }
+
+    List<InputSplit> splits = new ArrayList<>();
+    if (literals.size() == 1) {
+      splits.add(new DataDrivenDBInputSplit(splitBy + " IS NOT NULL", "1=1"));
+    } else {
+      for (int i = 0; i < literals.size(); i++) {
+        String lower = i == 0 ? "1=1" : splitBy + " > " + literals.get(i - 1);
+        // the last split also reads values larger than the maximum, in case rows were added since
+        String upper = i == literals.size() - 1 ? splitBy + " IS NOT NULL" : splitBy + " <= " + literals.get(i);
+        splits.add(new DataDrivenDBInputSplit(lower, upper));
+      }
+    }
+    splits.add(new DataDrivenDBInputSplit(splitBy + " IS NULL", splitBy + " IS NULL"));
+    return splits;
+  }
+
+  /**
+   * Returns the value as a SQL literal, or null if it is not a number, string or date.
+   */
+  @Nullable
+  static String toLiteral(Object value) {
+    if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).toPlainString();
+    }
+    if (value instanceof Number) {
+      return value.toString();
+    }
+    if (value instanceof String || value instanceof java.util.Date) {
+      // dates are written the same way as DateSplitter does
+      return "'" + value.toString().replace("'", "''") + "'";
+    }
+    return null;
+  }
+
+  // the input query selects a column by its name, without any table qualifier used in the conditions
+  static String getUnqualifiedColumnName(String column) {
+    return column.substring(column.lastIndexOf('.') + 1).trim();
+  }
+
+  private String getUnconditionedInputQuery() {
+    return getDBConf().getInputQuery().replace(SUBSTITUTE_TOKEN, "1=1");
+  }
+
+  private void rollback() {
+    try {
+      getConnection().rollback();
+    } catch (SQLException e) {
+      LOG.debug("Unable to roll back the split transaction.", e);
+    }
+  }
+
   @Override
   protected RecordReader createDBRecordReader(DBInputSplit split, Configuration conf) throws IOException {
-    final RecordReader dbRecordReader = super.createDBRecordReader(split, conf);
+    final RecordReader dbRecordReader = createFetchingRecordReader(split, conf);
     return new RecordReader() {
       @Override
       public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
@@ -149,6 +303,53 @@ public class DataDrivenETLDBInputFormat extends DataDrivenDBInputFormat {
     };
   }
 
+  /**
+   * Creates a record reader that uses the configured fetch size for its query. The MySQL reader is left as is,
+   * since it already streams the results one row at a time. Oracle still gets its own reader, which sets up
+   * the session time zone of the connection.
+   */
+  @SuppressWarnings("unchecked")
+  private RecordReader createFetchingRecordReader(DBInputSplit split, Configuration conf) throws IOException {
+    final int fetchSize = conf.getInt(FETCH_SIZE, 0);
+    String dbProductName = getDBProductName();
+    if (fetchSize <= 0 || dbProductName.startsWith("MYSQL")) {
+      return super.createDBRecordReader(split, conf);
+    }
+    DBConfiguration dbConf = getDBConf();
+    try {
+      if (dbProductName.startsWith("ORACLE")) {
+        return new OracleDataDrivenDBRecordReader(split, dbConf.getInputClass(), conf, getConnection(), dbConf,
+                                                  dbConf.getInputConditions(), dbConf.getInputFieldNames(),
+                                                  dbConf.getInputTableName()) {
+          @Override
+          protected ResultSet executeQuery(String query) throws SQLException {
+            statement = prepareFetchingStatement(getConnection(), query, fetchSize);
+            return statement.executeQuery();
+          }
+        };
+      }
+      return new DataDrivenDBRecordReader(split, dbConf.getInputClass(), conf, getConnection(), dbConf,
+                                          dbConf.getInputConditions(), dbConf.getInputFieldNames(),
+                                          dbConf.getInputTableName(), dbProductName) {
+        @Override
+        protected ResultSet executeQuery(String query) throws SQLException {
+          statement = prepareFetchingStatement(getConnection(), query, fetchSize);
+          return statement.executeQuery();
+        }
+      };
+    } catch (SQLException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private static PreparedStatement prepareFetchingStatement(Connection connection, String query,
+                                                            int fetchSize) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                                                              ResultSet.CONCUR_READ_ONLY);
+    statement.setFetchSize(fetchSize);
+    return statement;
+  }
+
   @Override
   protected void closeConnection() {
     super.closeConnection();
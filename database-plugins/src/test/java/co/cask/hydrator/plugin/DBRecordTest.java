@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * Tests for reading {@link DBRecord} from a {@link ResultSet}.
+ */
+public class DBRecordTest {
+  private static final String QUERY = "SELECT * FROM items ORDER BY id";
+  private static Connection connection;
+
+  @BeforeClass
+  public static void setup() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:hsqldb:mem:dbrecordtest");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE items (id INT NOT NULL, small SMALLINT, big BIGINT, price DECIMAL(10, 2), " +
+                          "weight DOUBLE, sold BOOLEAN, name VARCHAR(20), data VARBINARY(10), added DATE, " +
+                          "updated TIMESTAMP, description CLOB)");
+      statement.execute("INSERT INTO items VALUES (1, 2, 3, 4.5, 6.5, true, 'one', X'0102', '2016-01-02', " +
+                          "'2016-01-02 03:04:05', 'first item')");
+      statement.execute("INSERT INTO items (id) VALUES (2)");
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  public void testReadFields() throws Exception {
+    DBRecord dbRecord = new DBRecord();
+    dbRecord.setConf(new Configuration());
+    try (Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(QUERY)) {
+      Assert.assertTrue(resultSet.next());
+      dbRecord.readFields(resultSet);
+      StructuredRecord record = dbRecord.getRecord();
+      Assert.assertEquals(11, record.getSchema().getFields().size());
+      Assert.assertEquals(1, record.get("ID"));
+      Assert.assertEquals(2, record.get("SMALL"));
+      Assert.assertEquals(3L, record.get("BIG"));
+      Assert.assertEquals(4.5d, record.get("PRICE"));
+      Assert.assertEquals(6.5d, record.get("WEIGHT"));
+      Assert.assertEquals(true, record.get("SOLD"));
+      Assert.assertEquals("one", record.get("NAME"));
+      Assert.assertArrayEquals(new byte[] {1, 2}, (byte[]) record.get("DATA"));
+      Assert.assertEquals(Date.valueOf("2016-01-02").getTime(), record.get("ADDED"));
+      Assert.assertEquals(Timestamp.valueOf("2016-01-02 03:04:05").getTime(), record.get("UPDATED"));
+      Assert.assertEquals("first item", record.get("DESCRIPTION"));
+
+      // the same instance is used to read every row of a split
+      Assert.assertTrue(resultSet.next());
+      dbRecord.readFields(resultSet);
+      record = dbRecord.getRecord();
+      Assert.assertEquals(2, record.get("ID"));
+      for (String field : new String[] {"SMALL", "BIG", "PRICE", "WEIGHT", "SOLD", "NAME", "DATA", "ADDED",
+                                        "UPDATED", "DESCRIPTION"}) {
+        Assert.assertNull(record.get(field));
+      }
+    }
+  }
+
+  @Test
+  public void testReadFieldsWithSchema() throws Exception {
+    // a subset of the columns, in a different order than the query returns them
+    Schema schema = Schema.recordOf("items",
+                                    Schema.Field.of("NAME", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                                    Schema.Field.of("ID", Schema.of(Schema.Type.INT)));
+    Configuration conf = new Configuration();
+    conf.set(DBUtils.OVERRIDE_SCHEMA, schema.toString());
+    DBRecord dbRecord = new DBRecord();
+    dbRecord.setConf(conf);
+    try (Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(QUERY)) {
+      Assert.assertTrue(resultSet.next());
+      dbRecord.readFields(resultSet);
+      StructuredRecord record = dbRecord.getRecord();
+      Assert.assertEquals(Schema.recordOf("dbRecord", schema.getFields()), record.getSchema());
+      Assert.assertEquals("one", record.get("NAME"));
+      Assert.assertEquals(1, record.get("ID"));
+    }
+  }
+}
@@ -18,6 +18,7 @@ package co.cask.hydrator.plugin.db.batch.sink;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.etl.api.batch.BatchSource;
 import co.cask.cdap.etl.mock.batch.MockSink;
@@ -216,6 +217,45 @@ public class DBSourceTestRun extends DatabasePluginTestBase {
     Assert.assertEquals(2, row2.get("id"));
   }
   
+  @Test
+  public void testDBSourceIncremental() throws Exception {
+    String importQuery = "SELECT ID, NAME FROM \"my_table\" WHERE $CONDITIONS";
+    ETLPlugin sourceConfig = new ETLPlugin(
+      "Database",
+      BatchSource.PLUGIN_TYPE,
+      ImmutableMap.<String, String>builder()
+        .put(DBConfig.CONNECTION_STRING, getConnectionURL())
+        .put(DBSource.DBSourceConfig.IMPORT_QUERY, importQuery)
+        .put(DBSource.DBSourceConfig.SPLIT_BY, "ID")
+        .put(DBSource.DBSourceConfig.WATERMARK_COLUMN, "ID")
+        .put(DBSource.DBSourceConfig.WATERMARK_TABLE, "dbSourceWatermarks")
+        .put(DBConfig.JDBC_PLUGIN_NAME, "hypersql")
+        .put(Constants.Reference.REFERENCE_NAME, "DBIncrementalTest")
+        .build(),
+      null
+    );
+
+    String outputDatasetName = "output-incrementaltest";
+    ETLPlugin sinkConfig = MockSink.getPlugin(outputDatasetName);
+
+    ApplicationManager appManager = deployETL(sourceConfig, sinkConfig);
+    // pretend that a previous run read the first three rows
+    DataSetManager<KeyValueTable> watermarkManager = getDataset("dbSourceWatermarks");
+    watermarkManager.get().write("DBIncrementalTest", "3");
+    watermarkManager.flush();
+
+    runETLOnce(appManager);
+
+    DataSetManager<Table> outputManager = getDataset(outputDatasetName);
+    List<StructuredRecord> outputRecords = MockSink.readOutput(outputManager);
+    Assert.assertEquals(2, outputRecords.size());
+    for (StructuredRecord record : outputRecords) {
+      Assert.assertTrue((int) record.get("ID") > 3);
+    }
+    watermarkManager.flush();
+    Assert.assertEquals("5", Bytes.toString(watermarkManager.get().read("DBIncrementalTest")));
+  }
+
   @Test
   public void testDbSourceMultipleTables() throws Exception {
     // have the same data in both tables ('\"my_table\"' and '\"your_table\"'), and select the ID and NAME fields from
@@ -0,0 +1,254 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.hydrator.plugin.db.batch.sink;
+
+import co.cask.hydrator.plugin.MultiRowDBWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Tests for {@link ETLDBOutputFormat}.
+ */
+public class ETLDBOutputFormatTest {
+
+  @Test
+  public void testBatchesAndCommits() throws Exception {
+    String url = "jdbc:hsqldb:mem:etldboutputformat";
+    Configuration conf = createConf(url);
+    conf.setInt(ETLDBOutputFormat.BATCH_SIZE, 2);
+    conf.setInt(ETLDBOutputFormat.COMMIT_INTERVAL, 3);
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+
+    RecordWriter<NumberRecord, Void> writer = new ETLDBOutputFormat<NumberRecord, Void>().getRecordWriter(context);
+    for (int i = 0; i < 5; i++) {
+      writer.write(new NumberRecord(i), null);
+    }
+    // the second batch completed the commit interval, and the fifth row is still waiting for its batch to fill up
+    Assert.assertEquals(4, countRows(url));
+    writer.close(context);
+    Assert.assertEquals(5, countRows(url));
+  }
+
+  @Test
+  public void testMultiRowInserts() throws Exception {
+    String url = "jdbc:hsqldb:mem:etldboutputformatmultirow";
+    Configuration conf = createConf(url);
+    conf.setInt(ETLDBOutputFormat.ROWS_PER_INSERT, 2);
+    conf.setInt(ETLDBOutputFormat.BATCH_SIZE, 4);
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+
+    RecordWriter<NumberRecord, Void> writer = new ETLDBOutputFormat<NumberRecord, Void>().getRecordWriter(context);
+    for (int i = 0; i < 7; i++) {
+      writer.write(new NumberRecord(i), null);
+    }
+    writer.close(context);
+    Assert.assertEquals(7, countRows(url));
+    try (Connection connection = DriverManager.getConnection(url);
+         Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery("SELECT SUM(n) FROM numbers")) {
+      resultSet.next();
+      Assert.assertEquals(21, resultSet.getInt(1));
+    }
+  }
+
+  @Test
+  public void testUpserts() throws Exception {
+    String url = "jdbc:hsqldb:mem:etldboutputformatupsert";
+    try (Connection connection = DriverManager.getConnection(url);
+         Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE squares (n INT PRIMARY KEY, square INT)");
+      statement.execute("INSERT INTO squares VALUES (1, 0), (2, 0)");
+    }
+    Configuration conf = new Configuration();
+    conf.set(DBConfiguration.DRIVER_CLASS_PROPERTY, JDBCDriver.class.getName());
+    conf.set(DBConfiguration.URL_PROPERTY, url);
+    conf.set(DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY, "squares");
+    conf.set(DBConfiguration.OUTPUT_FIELD_NAMES_PROPERTY, "n, square");
+    conf.set(ETLDBOutputFormat.UPSERT_KEYS, "n");
+    conf.setInt(ETLDBOutputFormat.ROWS_PER_INSERT, 2);
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+
+    RecordWriter<SquareRecord, Void> writer = new ETLDBOutputFormat<SquareRecord, Void>().getRecordWriter(context);
+    for (int i = 0; i < 5; i++) {
+      writer.write(new SquareRecord(i), null);
+    }
+    writer.close(context);
+    try (Connection connection = DriverManager.getConnection(url);
+         Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery("SELECT COUNT(*), SUM(square) FROM squares")) {
+      resultSet.next();
+      Assert.assertEquals(5, resultSet.getInt(1));
+      Assert.assertEquals(30, resultSet.getInt(2));
+    }
+  }
+
+  @Test
+  public void testUpsertDuplicateKeys() throws Exception {
+    String url = "jdbc:hsqldb:mem:etldboutputformatupsertduplicates";
+    try (Connection connection = DriverManager.getConnection(url);
+         Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE squares (n INT PRIMARY KEY, square INT)");
+      statement.execute("INSERT INTO squares VALUES (1, 0)");
+    }
+    Configuration conf = new Configuration();
+    conf.set(DBConfiguration.DRIVER_CLASS_PROPERTY, JDBCDriver.class.getName());
+    conf.set(DBConfiguration.URL_PROPERTY, url);
+    conf.set(DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY, "squares");
+    conf.set(DBConfiguration.OUTPUT_FIELD_NAMES_PROPERTY, "n, square");
+    conf.set(ETLDBOutputFormat.UPSERT_KEYS, "N");
+    conf.setInt(ETLDBOutputFormat.ROWS_PER_INSERT, 3);
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+
+    // the first statement has the key 1 three times, and the rows that did not fill a statement have 2 twice
+    RecordWriter<SquareRecord, Void> writer = new ETLDBOutputFormat<SquareRecord, Void>().getRecordWriter(context);
+    writer.write(new SquareRecord(1, 10), null);
+    writer.write(new SquareRecord(2, 20), null);
+    writer.write(new SquareRecord(1, 11), null);
+    writer.write(new SquareRecord(1, 12), null);
+    writer.write(new SquareRecord(3, 30), null);
+    writer.write(new SquareRecord(2, 21), null);
+    writer.write(new SquareRecord(2, 22), null);
+    writer.close(context);
+
+    try (Connection connection = DriverManager.getConnection(url);
+         Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery("SELECT n, square FROM squares ORDER BY n")) {
+      // the last row written for each key wins
+      int[][] expected = {{1, 12}, {2, 22}, {3, 30}};
+      for (int[] row : expected) {
+        Assert.assertTrue(resultSet.next());
+        Assert.assertEquals(row[0], resultSet.getInt(1));
+        Assert.assertEquals(row[1], resultSet.getInt(2));
+      }
+      Assert.assertFalse(resultSet.next());
+    }
+  }
+
+  @Test
+  public void testRowsPerStatement() {
+    // capped to the number of parameters the database supports
+    Assert.assertEquals(210, ETLDBOutputFormat.getRowsPerStatement("Microsoft SQL Server", 10, 500));
+    Assert.assertEquals(3276, ETLDBOutputFormat.getRowsPerStatement("PostgreSQL", 10, 5000));
+    Assert.assertEquals(99, ETLDBOutputFormat.getRowsPerStatement("SQLite", 10, 100));
+    // always at least one row, even if a single row has more parameters than the database supports
+    Assert.assertEquals(1, ETLDBOutputFormat.getRowsPerStatement("Microsoft SQL Server", 3000, 10));
+    // unchanged if below the limit, or if the limit of the database is not known
+    Assert.assertEquals(100, ETLDBOutputFormat.getRowsPerStatement("Microsoft SQL Server", 10, 100));
+    Assert.assertEquals(5000, ETLDBOutputFormat.getRowsPerStatement("HSQL Database Engine", 10, 5000));
+  }
+
+  private Configuration createConf(String url) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(url);
+         Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE numbers (n INT)");
+    }
+
+    Configuration conf = new Configuration();
+    conf.set(DBConfiguration.DRIVER_CLASS_PROPERTY, JDBCDriver.class.getName());
+    conf.set(DBConfiguration.URL_PROPERTY, url);
+    conf.set(DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY, "numbers");
+    conf.set(DBConfiguration.OUTPUT_FIELD_NAMES_PROPERTY, "n");
+    return conf;
+  }
+
+  private int countRows(String url) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(url);
+         Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM numbers")) {
+      resultSet.next();
+      return resultSet.getInt(1);
+    }
+  }
+
+  private static final class NumberRecord implements MultiRowDBWritable {
+    private final int number;
+
+    NumberRecord(int number) {
+      this.number = number;
+    }
+
+    @Override
+    public void write(PreparedStatement statement) throws SQLException {
+      write(statement, 0);
+    }
+
+    @Override
+    public void write(PreparedStatement statement, int parameterOffset) throws SQLException {
+      statement.setInt(parameterOffset + 1, number);
+    }
+
+    @Override
+    public Object get(int index) {
+      return number;
+    }
+
+    @Override
+    public void readFields(ResultSet resultSet) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static final class SquareRecord implements MultiRowDBWritable {
+    private final int number;
+    private final int square;
+
+    SquareRecord(int number) {
+      this(number, number * number);
+    }
+
+    SquareRecord(int number, int square) {
+      this.number = number;
+      this.square = square;
+    }
+
+    @Override
+    public void write(PreparedStatement statement) throws SQLException {
+      write(statement, 0);
+    }
+
+    @Override
+    public void write(PreparedStatement statement, int parameterOffset) throws SQLException {
+      statement.setInt(parameterOffset + 1, number);
+      statement.setInt(parameterOffset + 2, square);
+    }
+
+    @Override
+    public Object get(int index) {
+      return index == 0 ? number : square;
+    }
+
+    @Override
+    public void readFields(ResultSet resultSet) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.db.batch.sink;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+
+/**
+ * Tests for {@link UpsertDialect}.
+ */
+public class UpsertDialectTest {
+  private static final String[] COLUMNS = {"id", "name", "price"};
+  private static final Set<String> KEYS = ImmutableSet.of("id");
+
+  @Test
+  public void testForDatabase() {
+    Assert.assertEquals(UpsertDialect.POSTGRESQL, UpsertDialect.forDatabase("PostgreSQL"));
+    Assert.assertEquals(UpsertDialect.MYSQL, UpsertDialect.forDatabase("MySQL"));
+    Assert.assertEquals(UpsertDialect.MYSQL, UpsertDialect.forDatabase("MariaDB"));
+    Assert.assertEquals(UpsertDialect.ORACLE, UpsertDialect.forDatabase("Oracle"));
+    Assert.assertEquals(UpsertDialect.SQLSERVER, UpsertDialect.forDatabase("Microsoft SQL Server"));
+    Assert.assertEquals(UpsertDialect.MERGE, UpsertDialect.forDatabase("HSQL Database Engine"));
+  }
+
+  @Test
+  public void testQueries() {
+    Assert.assertEquals(
+      "INSERT INTO items (id, name, price) VALUES (?, ?, ?), (?, ?, ?) " +
+        "ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name, price = EXCLUDED.price",
+      UpsertDialect.POSTGRESQL.constructQuery("items", COLUMNS, KEYS, 2));
+    Assert.assertEquals(
+      "INSERT INTO items (id, name, price) VALUES (?, ?, ?) " +
+        "ON DUPLICATE KEY UPDATE name = VALUES(name), price = VALUES(price)",
+      UpsertDialect.MYSQL.constructQuery("items", COLUMNS, KEYS, 1));
+    Assert.assertEquals(
+      "MERGE INTO items t USING (SELECT ? id, ? name, ? price FROM DUAL UNION ALL " +
+        "SELECT ? id, ? name, ? price FROM DUAL) s ON (t.id = s.id) " +
+        "WHEN MATCHED THEN UPDATE SET name = s.name, price = s.price " +
+        "WHEN NOT MATCHED THEN INSERT (id, name, price) VALUES (s.id, s.name, s.price)",
+      UpsertDialect.ORACLE.constructQuery("items", COLUMNS, KEYS, 2));
+    Assert.assertEquals(
+      "MERGE INTO items AS t USING (VALUES (?, ?, ?)) AS s (id, name, price) ON (t.id = s.id) " +
+        "WHEN MATCHED THEN UPDATE SET name = s.name, price = s.price " +
+        "WHEN NOT MATCHED THEN INSERT (id, name, price) VALUES (s.id, s.name, s.price)",
+      UpsertDialect.MERGE.constructQuery("items", COLUMNS, KEYS, 1));
+    Assert.assertEquals(
+      "MERGE INTO items AS t USING (VALUES (?, ?, ?), (?, ?, ?)) AS s (id, name, price) ON (t.id = s.id) " +
+        "WHEN MATCHED THEN UPDATE SET name = s.name, price = s.price " +
+        "WHEN NOT MATCHED THEN INSERT (id, name, price) VALUES (s.id, s.name, s.price);",
+      UpsertDialect.SQLSERVER.constructQuery("items", COLUMNS, KEYS, 2));
+  }
+
+  @Test
+  public void testOnlyKeyColumns() {
+    String[] columns = {"id"};
+    Assert.assertEquals("INSERT INTO items (id) VALUES (?) ON CONFLICT (id) DO NOTHING",
+                        UpsertDialect.POSTGRESQL.constructQuery("items", columns, KEYS, 1));
+    Assert.assertEquals("INSERT INTO items (id) VALUES (?) ON DUPLICATE KEY UPDATE id = id",
+                        UpsertDialect.MYSQL.constructQuery("items", columns, KEYS, 1));
+    Assert.assertEquals("MERGE INTO items AS t USING (VALUES (?)) AS s (id) ON (t.id = s.id) " +
+                          "WHEN NOT MATCHED THEN INSERT (id) VALUES (s.id)",
+                        UpsertDialect.MERGE.constructQuery("items", columns, KEYS, 1));
+  }
+}
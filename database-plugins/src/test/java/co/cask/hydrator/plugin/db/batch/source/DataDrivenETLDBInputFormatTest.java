@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.db.batch.source;
+
+import co.cask.hydrator.plugin.DBRecord;
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
+import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBInputFormat.DataDrivenDBInputSplit;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link DataDrivenETLDBInputFormat}.
+ */
+public class DataDrivenETLDBInputFormatTest {
+  private static final String URL = "jdbc:hsqldb:mem:datadrivenetldbinputformat";
+  private static final int NUM_ROWS = 100;
+
+  @BeforeClass
+  public static void setup() throws SQLException {
+    try (Connection connection = DriverManager.getConnection(URL);
+         Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE items (id INT, name VARCHAR(10))");
+      try (PreparedStatement insert = connection.prepareStatement("INSERT INTO items VALUES (?, ?)")) {
+        for (int i = 0; i < NUM_ROWS; i++) {
+          insert.setInt(1, i);
+          insert.setString(2, "item" + i);
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+    }
+  }
+
+  @Test
+  public void testSplitsWithoutBoundingQuery() throws Exception {
+    Configuration conf = createConf("SELECT id, name FROM items WHERE $CONDITIONS", "id");
+    conf.setInt(DataDrivenETLDBInputFormat.FETCH_SIZE, 10);
+    Assert.assertEquals(NUM_ROWS, readAll(conf));
+  }
+
+  @Test
+  public void testQuantileSplitsFallBack() throws Exception {
+    // HSQLDB does not support NTILE, so the splits are generated from the min and max instead
+    Configuration conf = createConf("SELECT id, name FROM items WHERE $CONDITIONS", "items.id");
+    conf.setBoolean(DataDrivenETLDBInputFormat.QUANTILE_SPLITS, true);
+    Assert.assertEquals(NUM_ROWS, readAll(conf));
+  }
+
+  @Test
+  public void testQuantileSplits() {
+    List<InputSplit> splits = DataDrivenETLDBInputFormat.getQuantileSplits(
+      "id", Arrays.<Object>asList(1, 1, new BigDecimal("2.50"), 1000L, null));
+    Assert.assertEquals(4, splits.size());
+    assertSplit("1=1", "id <= 1", splits.get(0));
+    assertSplit("id > 1", "id <= 2.50", splits.get(1));
+    assertSplit("id > 2.50", "id IS NOT NULL", splits.get(2));
+    assertSplit("id IS NULL", "id IS NULL", splits.get(3));
+
+    // nulls that share a tile with other values do not show up in the quantiles, so the null split is always added
+    splits = DataDrivenETLDBInputFormat.getQuantileSplits(
+      "name", ImmutableList.<Object>of("a", "it's", "z"));
+    Assert.assertEquals(4, splits.size());
+    assertSplit("name > 'a'", "name <= 'it''s'", splits.get(1));
+    assertSplit("name IS NULL", "name IS NULL", splits.get(3));
+
+    Timestamp timestamp = Timestamp.valueOf("2016-01-02 03:04:05");
+    splits = DataDrivenETLDBInputFormat.getQuantileSplits("ts", ImmutableList.<Object>of(timestamp));
+    Assert.assertEquals(2, splits.size());
+    assertSplit("ts IS NOT NULL", "1=1", splits.get(0));
+    assertSplit("ts IS NULL", "ts IS NULL", splits.get(1));
+
+    Assert.assertNull(DataDrivenETLDBInputFormat.getQuantileSplits("id", ImmutableList.<Object>of(new byte[1])));
+  }
+
+  private void assertSplit(String lower, String upper, InputSplit split) {
+    DataDrivenDBInputSplit dbSplit = (DataDrivenDBInputSplit) split;
+    Assert.assertEquals(lower, dbSplit.getLowerClause());
+    Assert.assertEquals(upper, dbSplit.getUpperClause());
+  }
+
+  private Configuration createConf(String importQuery, String splitBy) {
+    Configuration conf = new Configuration();
+    DBConfiguration.configureDB(conf, JDBCDriver.class.getName(), URL);
+    DataDrivenETLDBInputFormat.setInput(conf, DBRecord.class, importQuery, null, false);
+    conf.set(DBConfiguration.INPUT_ORDER_BY_PROPERTY, splitBy);
+    conf.setInt(MRJobConfig.NUM_MAPS, 4);
+    return conf;
+  }
+
+  private int readAll(Configuration conf) throws Exception {
+    DataDrivenETLDBInputFormat inputFormat = new DataDrivenETLDBInputFormat();
+    inputFormat.setConf(conf);
+    List<InputSplit> splits = inputFormat.getSplits(new JobContextImpl(conf, null));
+    Assert.assertTrue(splits.size() > 1);
+    int rows = 0;
+    for (InputSplit split : splits) {
+      inputFormat = new DataDrivenETLDBInputFormat();
+      inputFormat.setConf(conf);
+      TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+      RecordReader reader = inputFormat.createRecordReader(split, context);
+      reader.initialize(split, context);
+      while (reader.nextKeyValue()) {
+        rows++;
+      }
+      reader.close();
+    }
+    return rows;
+  }
+}
@@ -30,6 +30,12 @@ public class ESProperties {
   public static final String TRANSPORT_ADDRESSES = "es.transportAddresses";
   public static final String CLUSTER = "es.cluster";
 
+  public static final String BATCH_SIZE_BYTES = "es.batchSizeBytes";
+  public static final String BATCH_SIZE_ENTRIES = "es.batchSizeEntries";
+  public static final String BATCH_WRITE_REFRESH = "es.batchWriteRefresh";
+  public static final String BATCH_WRITE_RETRY_COUNT = "es.batchWriteRetryCount";
+  public static final String BATCH_WRITE_RETRY_WAIT = "es.batchWriteRetryWait";
+
   private ESProperties() {
   }
 }
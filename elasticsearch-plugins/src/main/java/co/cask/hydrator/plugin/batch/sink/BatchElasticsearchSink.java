@@ -24,6 +24,7 @@ import co.cask.cdap.api.data.batch.Output;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.PipelineConfigurer;
 import co.cask.cdap.etl.api.batch.BatchSink;
 import co.cask.cdap.etl.api.batch.BatchSinkContext;
 import co.cask.cdap.format.StructuredRecordStringConverter;
@@ -33,12 +34,15 @@ import co.cask.hydrator.common.batch.JobUtils;
 import co.cask.hydrator.common.batch.sink.SinkOutputFormatProvider;
 import co.cask.hydrator.plugin.batch.ESProperties;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Job;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
 import org.elasticsearch.hadoop.mr.EsOutputFormat;
 
 import java.io.IOException;
+import javax.annotation.Nullable;
 
 /**
  * A {@link BatchSink} that writes data to a Elasticsearch.
@@ -72,6 +76,12 @@ public class BatchElasticsearchSink extends ReferenceBatchSink<StructuredRecord,
     this.config = config;
   }
 
+  @Override
+  public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
+    super.configurePipeline(pipelineConfigurer);
+    config.validate();
+  }
+
   @Override
   public void prepareRun(BatchSinkContext context) throws IOException {
     Job job = JobUtils.createInstance();
@@ -83,16 +93,28 @@ public class BatchElasticsearchSink extends ReferenceBatchSink<StructuredRecord,
     conf.set("es.resource", String.format("%s/%s", config.index, config.type));
     conf.set("es.input.json", "yes");
     conf.set("es.mapping.id", config.idField);
+    setIfNotNull(conf, ConfigurationOptions.ES_BATCH_SIZE_BYTES, config.batchSizeBytes);
+    setIfNotNull(conf, ConfigurationOptions.ES_BATCH_SIZE_ENTRIES, config.batchSizeEntries);
+    setIfNotNull(conf, ConfigurationOptions.ES_BATCH_WRITE_REFRESH, config.batchWriteRefresh);
+    setIfNotNull(conf, ConfigurationOptions.ES_BATCH_WRITE_RETRY_COUNT, config.batchWriteRetryCount);
+    setIfNotNull(conf, ConfigurationOptions.ES_BATCH_WRITE_RETRY_WAIT, config.batchWriteRetryWait);
 
     context.addOutput(Output.of(config.referenceName, new SinkOutputFormatProvider(EsOutputFormat.class, conf)));
   }
 
   @Override
   public void transform(StructuredRecord record, Emitter<KeyValue<Writable, Writable>> emitter) throws Exception {
-    emitter.emit(new KeyValue<Writable, Writable>(new Text(StructuredRecordStringConverter.toJsonString(record)),
+    // EsOutputFormat only indexes the value, so the record is only converted to JSON for the value
+    emitter.emit(new KeyValue<Writable, Writable>(NullWritable.get(),
                                                   new Text(StructuredRecordStringConverter.toJsonString(record))));
   }
 
+  private static void setIfNotNull(Configuration conf, String name, @Nullable Object value) {
+    if (value != null) {
+      conf.set(name, value.toString());
+    }
+  }
+
   /**
    * Config class for BatchElasticsearchSink.java
    */
@@ -117,12 +139,63 @@ public class BatchElasticsearchSink extends ReferenceBatchSink<StructuredRecord,
     @Macro
     private String idField;
 
+    @Name(ESProperties.BATCH_SIZE_BYTES)
+    @Description("Maximum size of a bulk request to Elasticsearch, such as 1mb. Defaults to 1mb.")
+    @Nullable
+    @Macro
+    private String batchSizeBytes;
+
+    @Name(ESProperties.BATCH_SIZE_ENTRIES)
+    @Description("Maximum number of documents in a bulk request to Elasticsearch. Defaults to 1000.")
+    @Nullable
+    @Macro
+    private Integer batchSizeEntries;
+
+    @Name(ESProperties.BATCH_WRITE_REFRESH)
+    @Description("Whether to refresh the index after the documents are written. Defaults to true.")
+    @Nullable
+    @Macro
+    private Boolean batchWriteRefresh;
+
+    @Name(ESProperties.BATCH_WRITE_RETRY_COUNT)
+    @Description("Number of times a bulk request is retried if Elasticsearch rejects documents because it is " +
+      "overloaded. A negative value retries indefinitely. Defaults to 3.")
+    @Nullable
+    @Macro
+    private Integer batchWriteRetryCount;
+
+    @Name(ESProperties.BATCH_WRITE_RETRY_WAIT)
+    @Description("Time to wait before retrying a bulk request, such as 10s. Defaults to 10s.")
+    @Nullable
+    @Macro
+    private String batchWriteRetryWait;
+
     public ESConfig(String referenceName, String hostname, String index, String type, String idField) {
+      this(referenceName, hostname, index, type, idField, null, null, null, null, null);
+    }
+
+    public ESConfig(String referenceName, String hostname, String index, String type, String idField,
+                    @Nullable String batchSizeBytes, @Nullable Integer batchSizeEntries,
+                    @Nullable Boolean batchWriteRefresh, @Nullable Integer batchWriteRetryCount,
+                    @Nullable String batchWriteRetryWait) {
       super(referenceName);
       this.hostname = hostname;
       this.index = index;
       this.type = type;
       this.idField = idField;
+      this.batchSizeBytes = batchSizeBytes;
+      this.batchSizeEntries = batchSizeEntries;
+      this.batchWriteRefresh = batchWriteRefresh;
+      this.batchWriteRetryCount = batchWriteRetryCount;
+      this.batchWriteRetryWait = batchWriteRetryWait;
+    }
+
+    private void validate() {
+      if (!containsMacro(ESProperties.BATCH_SIZE_ENTRIES) && batchSizeEntries != null && batchSizeEntries < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for %s. Must be at least 1, but got %d",
+                        ESProperties.BATCH_SIZE_ENTRIES, batchSizeEntries));
+      }
     }
   }
 }
@@ -142,7 +142,7 @@ public class ETLESTest extends HydratorTestBase {
     httpPort = Networks.getRandomPort();
     transportPort = Networks.getRandomPort();
     ImmutableSettings.Builder elasticsearchSettings = ImmutableSettings.settingsBuilder()
-      .put("path.data", tmpFolder.newFolder("data"))
+      .put("path.data", tmpFolder.newFolder())
       .put("cluster.name", "testcluster")
       .put("http.port", httpPort)
       .put("transport.tcp.port", transportPort);
@@ -167,6 +167,59 @@ public class ETLESTest extends HydratorTestBase {
     testRealtimeESSink();
   }
 
+  @Test
+  public void testBatchESSinkBulkSettings() throws Exception {
+    String inputDatasetName = "input-batchsinkbulktest";
+    ETLStage source = new ETLStage("source", MockSource.getPlugin(inputDatasetName));
+
+    ETLStage sink = new ETLStage("Elasticsearch", new ETLPlugin(
+      "Elasticsearch",
+      BatchSink.PLUGIN_TYPE,
+      ImmutableMap.<String, String>builder()
+        .put(ESProperties.HOST, InetAddress.getLocalHost().getHostName() + ":" + httpPort)
+        .put(ESProperties.INDEX_NAME, "batch")
+        .put(ESProperties.TYPE_NAME, "testing")
+        .put(ESProperties.ID_FIELD, "ticker")
+        // write the records in more than one bulk request, without refreshing the index
+        .put(ESProperties.BATCH_SIZE_BYTES, "1kb")
+        .put(ESProperties.BATCH_SIZE_ENTRIES, "1")
+        .put(ESProperties.BATCH_WRITE_REFRESH, "false")
+        .put(ESProperties.BATCH_WRITE_RETRY_COUNT, "1")
+        .put(ESProperties.BATCH_WRITE_RETRY_WAIT, "1s")
+        .put(Constants.Reference.REFERENCE_NAME, "BatchESSinkBulkTest")
+        .build(),
+      null));
+    ETLBatchConfig etlConfig = ETLBatchConfig.builder("* * * * *")
+      .addStage(source)
+      .addStage(sink)
+      .addConnection(source.getName(), sink.getName())
+      .build();
+
+    AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(ETLBATCH_ARTIFACT, etlConfig);
+    Id.Application appId = Id.Application.from(Id.Namespace.DEFAULT, "esSinkBulkTest");
+    ApplicationManager appManager = deployApplication(appId, appRequest);
+
+    List<StructuredRecord> input = ImmutableList.of(
+      StructuredRecord.builder(TICKER_SCHEMA).set("ticker", "AAPL").set("num", 10).set("price", 500.32).build(),
+      StructuredRecord.builder(TICKER_SCHEMA).set("ticker", "CDAP").set("num", 13).set("price", 212.36).build(),
+      StructuredRecord.builder(TICKER_SCHEMA).set("ticker", "GOOG").set("num", 7).set("price", 700.21).build()
+    );
+    DataSetManager<Table> inputManager = getDataset(inputDatasetName);
+    MockSource.writeInput(inputManager, input);
+
+    MapReduceManager mrManager = appManager.getMapReduceManager(ETLMapReduce.NAME);
+    mrManager.start();
+    mrManager.waitForFinish(5, TimeUnit.MINUTES);
+
+    // the sink did not refresh the index
+    client.admin().indices().prepareRefresh("batch").execute().actionGet();
+    SearchResponse searchResponse = client.prepareSearch("batch").execute().actionGet();
+    Assert.assertEquals(3, searchResponse.getHits().getTotalHits());
+    searchResponse = client.prepareSearch().setQuery(matchQuery("ticker", "GOOG")).execute().actionGet();
+    Assert.assertEquals(1, searchResponse.getHits().getTotalHits());
+    Assert.assertEquals("GOOG", searchResponse.getHits().getAt(0).getId());
+  }
+
   private void testBatchESSink() throws Exception {
     String inputDatasetName = "input-batchsinktest";
     ETLStage source = new ETLStage("source", MockSource.getPlugin(inputDatasetName));
@@ -0,0 +1,374 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.sink;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Closeables;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
+import org.apache.hadoop.hbase.regionserver.HStore;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An {@link FileOutputFormat} that writes {@link Put Puts} to HFiles for an HBase table, instead of sending them
+ * to the region servers. The HFiles are written under the output directory in one directory per column family,
+ * which is the layout expected by {@link LoadIncrementalHFiles}.
+ * <p>
+ * Each task sorts its puts in a buffer. When the buffer is full, it is spilled to a sorted file on the local disk
+ * of the task. When the task finishes, the spilled files are merged and written to a single HFile per region and
+ * column family, using the region boundaries of the table at the time the task starts, so that the number of HFiles
+ * loaded into a region does not grow with the amount of data written by a task. The column family settings of the
+ * table, such as compression, are used for the HFiles.
+ * </p>
+ */
+public class HBaseBulkLoadOutputFormat extends FileOutputFormat<NullWritable, Mutation> implements Configurable {
+  public static final String BUFFER_SIZE = "co.cask.hydrator.hbase.bulkload.buffer.size";
+
+  private static final Logger LOG = LoggerFactory.getLogger(HBaseBulkLoadOutputFormat.class);
+  private static final long DEFAULT_BUFFER_SIZE = 64 * 1024 * 1024;
+  // the spilled buffers are written to the local directories of the task, like the map output spills
+  private static final LocalDirAllocator LOCAL_DIR_ALLOCATOR = new LocalDirAllocator(MRConfig.LOCAL_DIR);
+  // orders the spills by their current cell, and the spills of the same cell from the last spilled to the first
+  private static final Comparator<Spill> SPILL_COMPARATOR = new Comparator<Spill>() {
+    @Override
+    public int compare(Spill spill1, Spill spill2) {
+      int result = KeyValue.COMPARATOR.compare(spill1.current, spill2.current);
+      return result != 0 ? result : Integer.compare(spill2.index, spill1.index);
+    }
+  };
+
+  private Configuration conf;
+
+  @Override
+  public void setConf(Configuration configuration) {
+    conf = HBaseSinkOutputFormat.createHBaseConfiguration(configuration);
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  /**
+   * Raises the maximum number of HFiles that {@link LoadIncrementalHFiles} loads into a region and column family,
+   * so that all the HFiles written to the given output directory can be loaded. Each task writes at most one HFile
+   * per region and column family, so the number of HFiles in a column family directory is an upper bound.
+   *
+   * @param conf the configuration used to load the HFiles
+   * @param outputPath the output directory of the HFiles
+   */
+  public static void setMaxFilesPerRegionPerFamily(Configuration conf, Path outputPath) throws IOException {
+    FileSystem fs = outputPath.getFileSystem(conf);
+    int maxFiles = 0;
+    for (FileStatus familyDir : fs.listStatus(outputPath)) {
+      // the committer also writes files such as _SUCCESS to the output directory, which are not loaded
+      if (familyDir.isDirectory() && !familyDir.getPath().getName().startsWith("_")) {
+        maxFiles = Math.max(maxFiles, fs.listStatus(familyDir.getPath()).length);
+      }
+    }
+    if (maxFiles > conf.getInt(LoadIncrementalHFiles.MAX_FILES_PER_REGION_PER_FAMILY, 32)) {
+      conf.setInt(LoadIncrementalHFiles.MAX_FILES_PER_REGION_PER_FAMILY, maxFiles);
+    }
+  }
+
+  @Override
+  public RecordWriter<NullWritable, Mutation> getRecordWriter(TaskAttemptContext context) throws IOException {
+    String tableName = conf.get(TableOutputFormat.OUTPUT_TABLE);
+    if (Strings.isNullOrEmpty(tableName)) {
+      throw new IllegalArgumentException("Must specify table name");
+    }
+    byte[][] startKeys;
+    HTableDescriptor tableDescriptor;
+    HTable table = new HTable(conf, tableName);
+    try {
+      startKeys = table.getStartKeys();
+      tableDescriptor = table.getTableDescriptor();
+    } finally {
+      table.close();
+    }
+    Path workPath = ((FileOutputCommitter) getOutputCommitter(context)).getWorkPath();
+    return new BulkLoadRecordWriter(conf, context, workPath, startKeys, tableDescriptor,
+                                    conf.getLong(BUFFER_SIZE, DEFAULT_BUFFER_SIZE));
+  }
+
+  /**
+   * Sorts the cells of the puts in memory, spills them to local files when the buffer is full, and merges them into
+   * HFiles partitioned by region when the task finishes.
+   */
+  private static final class BulkLoadRecordWriter extends RecordWriter<NullWritable, Mutation> {
+    private final Configuration conf;
+    private final TaskAttemptContext context;
+    private final FileSystem fs;
+    private final Path workPath;
+    private final byte[][] startKeys;
+    private final HTableDescriptor tableDescriptor;
+    private final long bufferSize;
+    // cells without a timestamp get the time at which the task started, like they do in HFileOutputFormat2
+    private final byte[] now = Bytes.toBytes(System.currentTimeMillis());
+    private final TreeSet<KeyValue> buffer = new TreeSet<>(KeyValue.COMPARATOR);
+    private final List<Spill> spills = new ArrayList<>();
+    private long bufferedSize;
+
+    private BulkLoadRecordWriter(Configuration conf, TaskAttemptContext context, Path workPath, byte[][] startKeys,
+                                 HTableDescriptor tableDescriptor, long bufferSize) throws IOException {
+      // the HFiles are not read by the task, so they do not need to be cached
+      this.conf = new Configuration(conf);
+      this.conf.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.0f);
+      this.context = context;
+      this.fs = workPath.getFileSystem(conf);
+      this.workPath = workPath;
+      this.startKeys = startKeys;
+      this.tableDescriptor = tableDescriptor;
+      this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void write(NullWritable key, Mutation mutation) throws IOException {
+      if (!(mutation instanceof Put)) {
+        throw new IOException("Only Puts can be bulk loaded");
+      }
+      for (List<Cell> cells : mutation.getFamilyCellMap().values()) {
+        for (Cell cell : cells) {
+          KeyValue keyValue = KeyValueUtil.ensureKeyValue(cell);
+          keyValue.updateLatestStamp(now);
+          // a later write of the same cell replaces the earlier one, as it would with a put
+          if (!buffer.add(keyValue)) {
+            buffer.remove(keyValue);
+            buffer.add(keyValue);
+          }
+          bufferedSize += keyValue.heapSize();
+        }
+      }
+      if (bufferedSize >= bufferSize) {
+        spill();
+      }
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
+      try {
+        HFileWriter writer = new HFileWriter();
+        try {
+          if (spills.isEmpty()) {
+            for (KeyValue keyValue : buffer) {
+              writer.append(keyValue);
+            }
+          } else {
+            spill();
+            LOG.info("Merging {} spilled buffers into HFiles", spills.size());
+            merge(writer);
+          }
+        } finally {
+          writer.close();
+        }
+      } finally {
+        for (Spill spill : spills) {
+          Closeables.closeQuietly(spill);
+          if (!spill.file.delete()) {
+            LOG.warn("Failed to delete the spill file {}", spill.file);
+          }
+        }
+      }
+    }
+
+    private void spill() throws IOException {
+      File file = LOCAL_DIR_ALLOCATOR.createTmpFileForWrite("bulkload-spill", bufferedSize, conf);
+      Spill spill = new Spill(file, spills.size(), buffer.size());
+      spills.add(spill);
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try {
+        for (KeyValue keyValue : buffer) {
+          KeyValue.write(keyValue, output);
+        }
+      } finally {
+        output.close();
+      }
+      buffer.clear();
+      bufferedSize = 0;
+    }
+
+    private void merge(HFileWriter writer) throws IOException {
+      PriorityQueue<Spill> queue = new PriorityQueue<>(spills.size(), SPILL_COMPARATOR);
+      for (Spill spill : spills) {
+        spill.open();
+        if (spill.next()) {
+          queue.add(spill);
+        }
+      }
+      KeyValue previous = null;
+      while (!queue.isEmpty()) {
+        Spill spill = queue.poll();
+        KeyValue keyValue = spill.current;
+        // the same cell can be in several spills, and the one that was spilled last replaces the others,
+        // since it comes first in the queue
+        if (previous == null || KeyValue.COMPARATOR.compare(previous, keyValue) != 0) {
+          writer.append(keyValue);
+          previous = keyValue;
+        }
+        if (spill.next()) {
+          queue.add(spill);
+        }
+      }
+    }
+
+    private StoreFile.Writer createWriter(byte[] family) throws IOException {
+      HColumnDescriptor familyDescriptor = tableDescriptor.getFamily(family);
+      if (familyDescriptor == null) {
+        throw new IOException(String.format("Column family %s does not exist in table %s",
+                                            Bytes.toString(family), tableDescriptor.getNameAsString()));
+      }
+      HFileContext fileContext = new HFileContextBuilder()
+        .withCompression(familyDescriptor.getCompression())
+        .withBlockSize(familyDescriptor.getBlocksize())
+        .withDataBlockEncoding(familyDescriptor.getDataBlockEncoding())
+        .withChecksumType(HStore.getChecksumType(conf))
+        .withBytesPerCheckSum(HStore.getBytesPerChecksum(conf))
+        .build();
+      return new StoreFile.WriterBuilder(conf, new CacheConfig(conf), fs)
+        .withOutputDir(new Path(workPath, Bytes.toString(family)))
+        .withBloomType(familyDescriptor.getBloomFilterType())
+        .withComparator(KeyValue.COMPARATOR)
+        .withFileContext(fileContext)
+        .build();
+    }
+
+    /**
+     * Writes sorted cells to one HFile per region and column family.
+     */
+    private final class HFileWriter {
+      private final Map<byte[], StoreFile.Writer> writers = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      private int region;
+
+      private void append(KeyValue keyValue) throws IOException {
+        // the cells are sorted by row, so the regions they belong to are visited in order
+        int nextRegion = region;
+        while (nextRegion + 1 < startKeys.length &&
+          Bytes.compareTo(keyValue.getRowArray(), keyValue.getRowOffset(), keyValue.getRowLength(),
+                          startKeys[nextRegion + 1], 0, startKeys[nextRegion + 1].length) >= 0) {
+          nextRegion++;
+        }
+        if (nextRegion != region) {
+          close();
+          region = nextRegion;
+        }
+        byte[] family = CellUtil.cloneFamily(keyValue);
+        StoreFile.Writer writer = writers.get(family);
+        if (writer == null) {
+          writer = createWriter(family);
+          writers.put(family, writer);
+        }
+        writer.append(keyValue);
+      }
+
+      private void close() throws IOException {
+        for (StoreFile.Writer writer : writers.values()) {
+          writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+          writer.appendFileInfo(StoreFile.BULKLOAD_TASK_KEY, Bytes.toBytes(context.getTaskAttemptID().toString()));
+          writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(false));
+          writer.appendFileInfo(StoreFile.EXCLUDE_FROM_MINOR_COMPACTION_KEY, Bytes.toBytes(false));
+          writer.appendTrackedTimestampsToMetadata();
+          writer.close();
+        }
+        writers.clear();
+      }
+    }
+  }
+
+  /**
+   * A sorted buffer that was spilled to a local file, which is read back one cell at a time.
+   */
+  private static final class Spill implements Closeable {
+    private final File file;
+    private final int index;
+    private int remaining;
+    private DataInputStream input;
+    private KeyValue current;
+
+    private Spill(File file, int index, int size) {
+      this.file = file;
+      this.index = index;
+      this.remaining = size;
+    }
+
+    private void open() throws IOException {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private boolean next() throws IOException {
+      if (remaining == 0) {
+        current = null;
+        return false;
+      }
+      current = KeyValue.create(input);
+      remaining--;
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (input != null) {
+        input.close();
+      }
+    }
+  }
+}
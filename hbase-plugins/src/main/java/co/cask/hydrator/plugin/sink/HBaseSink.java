@@ -17,6 +17,7 @@
 package co.cask.hydrator.plugin.sink;
 
 import co.cask.cdap.api.annotation.Description;
+import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.annotation.Name;
 import co.cask.cdap.api.annotation.Plugin;
 import co.cask.cdap.api.data.batch.Output;
@@ -38,16 +39,25 @@ import co.cask.hydrator.plugin.HBaseConfig;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.Durability;
+import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.mapreduce.KeyValueSerialization;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
 import org.apache.hadoop.hbase.mapreduce.MutationSerialization;
 import org.apache.hadoop.hbase.mapreduce.ResultSerialization;
 import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import javax.annotation.Nullable;
@@ -59,9 +69,14 @@ import javax.annotation.Nullable;
 @Name("HBase")
 @Description("HBase Batch Sink")
 public class HBaseSink extends ReferenceBatchSink<StructuredRecord, NullWritable, Mutation> {
+  private static final Logger LOG = LoggerFactory.getLogger(HBaseSink.class);
 
   private HBaseSinkConfig config;
   private RecordPutTransformer recordPutTransformer;
+  private Durability durability;
+  // the directory the HFiles are written to, and the configuration used to load them, in bulk load mode
+  private Path bulkLoadPath;
+  private Configuration bulkLoadConf;
 
   public HBaseSink(HBaseSinkConfig config) {
     super(config);
@@ -87,7 +102,53 @@ public class HBaseSink extends ReferenceBatchSink<StructuredRecord, NullWritable
     Configuration conf = job.getConfiguration();
     HBaseConfiguration.addHbaseResources(conf);
 
-    context.addOutput(Output.of(config.referenceName, new HBaseOutputFormatProvider(config, conf)));
+    if (config.bulkLoad != null && config.bulkLoad) {
+      String bulkLoadDirectory = !Strings.isNullOrEmpty(config.bulkLoadDirectory) ?
+        config.bulkLoadDirectory : conf.get("hadoop.tmp.dir");
+      bulkLoadPath = new Path(bulkLoadDirectory,
+                              String.format("%s-%d", config.referenceName, context.getLogicalStartTime()));
+    }
+    HBaseOutputFormatProvider outputFormatProvider = new HBaseOutputFormatProvider(config, conf, bulkLoadPath);
+    if (bulkLoadPath != null) {
+      for (Map.Entry<String, String> entry : outputFormatProvider.getOutputFormatConfiguration().entrySet()) {
+        conf.set(entry.getKey(), entry.getValue());
+      }
+      bulkLoadConf = HBaseSinkOutputFormat.createHBaseConfiguration(conf);
+    }
+    context.addOutput(Output.of(config.referenceName, outputFormatProvider));
+  }
+
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSinkContext context) {
+    super.onRunFinish(succeeded, context);
+    if (bulkLoadPath == null) {
+      return;
+    }
+    try {
+      if (succeeded) {
+        LOG.info("Bulk loading HFiles from {} into table {}", bulkLoadPath, config.tableName);
+        // every task can write an HFile to each region, which can be more than LoadIncrementalHFiles accepts
+        HBaseBulkLoadOutputFormat.setMaxFilesPerRegionPerFamily(bulkLoadConf, bulkLoadPath);
+        HTable table = new HTable(bulkLoadConf, config.tableName);
+        try {
+          new LoadIncrementalHFiles(bulkLoadConf).doBulkLoad(bulkLoadPath, table);
+        } finally {
+          table.close();
+        }
+      }
+    } catch (Exception e) {
+      // keep the HFiles, so that they can be loaded without running the pipeline again
+      LOG.error("Failed to bulk load the HFiles in {} into table {}. They can be loaded with the " +
+                  "LoadIncrementalHFiles tool.", bulkLoadPath, config.tableName, e);
+      throw new RuntimeException(e);
+    }
+    // the loaded HFiles are moved into the table, so only the empty directories are left
+    try {
+      FileSystem fs = bulkLoadPath.getFileSystem(bulkLoadConf);
+      fs.delete(bulkLoadPath, true);
+    } catch (IOException e) {
+      LOG.warn("Failed to delete the bulk load directory {}", bulkLoadPath, e);
+    }
   }
 
   @Override
@@ -95,6 +156,7 @@ public class HBaseSink extends ReferenceBatchSink<StructuredRecord, NullWritable
     super.configurePipeline(pipelineConfigurer);
     Preconditions.checkArgument(!Strings.isNullOrEmpty(config.rowField),
                                 "Row field must be given as a property.");
+    config.validate();
     Schema outputSchema =
       SchemaValidator.validateOutputSchemaAndInputSchemaIfPresent(config.schema,
                                                                   config.rowField, pipelineConfigurer);
@@ -105,8 +167,10 @@ public class HBaseSink extends ReferenceBatchSink<StructuredRecord, NullWritable
   private class HBaseOutputFormatProvider implements OutputFormatProvider {
 
     private final Map<String, String> conf;
+    private final boolean bulkLoad;
 
-    HBaseOutputFormatProvider(HBaseSinkConfig config, Configuration configuration) {
+    HBaseOutputFormatProvider(HBaseSinkConfig config, Configuration configuration, @Nullable Path bulkLoadPath) {
+      this.bulkLoad = bulkLoadPath != null;
       this.conf = new HashMap<>();
       conf.put(TableOutputFormat.OUTPUT_TABLE, config.tableName);
       String zkQuorum = !Strings.isNullOrEmpty(config.zkQuorum) ? config.zkQuorum : "localhost";
@@ -119,11 +183,26 @@ public class HBaseSink extends ReferenceBatchSink<StructuredRecord, NullWritable
         ResultSerialization.class.getName(),
         KeyValueSerialization.class.getName() };
       conf.put("io.serializations", StringUtils.arrayToString(serializationClasses));
+      if (config.writeBufferSize != null) {
+        conf.put(HBaseSinkOutputFormat.WRITE_BUFFER_SIZE, String.valueOf(config.writeBufferSize));
+      }
+      if (config.autoFlush != null) {
+        conf.put(HBaseSinkOutputFormat.AUTO_FLUSH, String.valueOf(config.autoFlush));
+      }
+      if (config.groupByRegionServer != null) {
+        conf.put(HBaseSinkOutputFormat.GROUP_BY_REGION_SERVER, String.valueOf(config.groupByRegionServer));
+      }
+      if (bulkLoad) {
+        conf.put(FileOutputFormat.OUTDIR, bulkLoadPath.toString());
+        if (config.bulkLoadBufferSize != null) {
+          conf.put(HBaseBulkLoadOutputFormat.BUFFER_SIZE, String.valueOf(config.bulkLoadBufferSize));
+        }
+      }
     }
 
     @Override
     public String getOutputFormatClassName() {
-      return TableOutputFormat.class.getName();
+      return bulkLoad ? HBaseBulkLoadOutputFormat.class.getName() : HBaseSinkOutputFormat.class.getName();
     }
 
     @Override
@@ -143,6 +222,7 @@ public class HBaseSink extends ReferenceBatchSink<StructuredRecord, NullWritable
       outputSchema = Schema.parseJson(schemaString);
     }
     recordPutTransformer = new RecordPutTransformer(config.rowField, outputSchema);
+    durability = config.getDurability();
   }
 
   @Override
@@ -152,6 +232,9 @@ public class HBaseSink extends ReferenceBatchSink<StructuredRecord, NullWritable
     for (Map.Entry<byte[], byte[]> entry : put.getValues().entrySet()) {
       hbasePut.add(config.columnFamily.getBytes(), entry.getKey(), entry.getValue());
     }
+    if (durability != null) {
+      hbasePut.setDurability(durability);
+    }
     emitter.emit(new KeyValue<NullWritable, Mutation>(NullWritable.get(), hbasePut));
   }
 
@@ -163,6 +246,49 @@ public class HBaseSink extends ReferenceBatchSink<StructuredRecord, NullWritable
     @Nullable
     private String zkNodeParent;
 
+    @Description("Size in bytes of the client-side write buffer. Puts are sent to HBase when the buffer is full. " +
+      "Defaults to 2097152 (2 MB).")
+    @Nullable
+    @Macro
+    private Long writeBufferSize;
+
+    @Description("Durability of the puts. One of 'USE_DEFAULT', 'SKIP_WAL', 'ASYNC_WAL', 'SYNC_WAL' or " +
+      "'FSYNC_WAL'. 'SKIP_WAL' and 'ASYNC_WAL' are faster, but puts may be lost if a region server fails. " +
+      "Defaults to 'USE_DEFAULT', which uses the durability of the table.")
+    @Nullable
+    @Macro
+    private String durability;
+
+    @Description("Whether to send every put to HBase as soon as it is written, instead of buffering it. " +
+      "Defaults to false.")
+    @Nullable
+    @Macro
+    private Boolean autoFlush;
+
+    @Description("Whether to group the buffered puts by region server, and send the puts of each region server " +
+      "in a single batch when the write buffer is full. Defaults to false.")
+    @Nullable
+    @Macro
+    private Boolean groupByRegionServer;
+
+    @Description("Whether to write the records to HFiles and bulk load them into the table when the run " +
+      "succeeds, instead of sending puts to the region servers. Defaults to false.")
+    @Nullable
+    @Macro
+    private Boolean bulkLoad;
+
+    @Description("Directory in which the HFiles are written in bulk load mode. HBase must be able to move files " +
+      "out of this directory. Defaults to the Hadoop temporary directory.")
+    @Nullable
+    @Macro
+    private String bulkLoadDirectory;
+
+    @Description("Size in bytes of the buffer in which each task sorts the records in bulk load mode. Each time " +
+      "the buffer is full, it is spilled to the local disk of the task. Defaults to 67108864 (64 MB).")
+    @Nullable
+    @Macro
+    private Long bulkLoadBufferSize;
+
     public HBaseSinkConfig(String tableName, String rowField, @Nullable String schema) {
       super(String.format("HBase_%s", tableName), tableName, rowField, schema);
     }
@@ -170,5 +296,43 @@ public class HBaseSink extends ReferenceBatchSink<StructuredRecord, NullWritable
     public HBaseSinkConfig(String referenceName, String tableName, String rowField, @Nullable String schema) {
       super(referenceName, tableName, rowField, schema);
     }
+
+    public HBaseSinkConfig(String referenceName, String tableName, String rowField, @Nullable String schema,
+                           @Nullable Long writeBufferSize, @Nullable String durability, @Nullable Boolean autoFlush,
+                           @Nullable Boolean groupByRegionServer) {
+      super(referenceName, tableName, rowField, schema);
+      this.writeBufferSize = writeBufferSize;
+      this.durability = durability;
+      this.autoFlush = autoFlush;
+      this.groupByRegionServer = groupByRegionServer;
+    }
+
+    @Nullable
+    private Durability getDurability() {
+      if (Strings.isNullOrEmpty(durability)) {
+        return null;
+      }
+      try {
+        return Durability.valueOf(durability.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for durability. Must be one of USE_DEFAULT, SKIP_WAL, ASYNC_WAL, SYNC_WAL " +
+                          "or FSYNC_WAL, but got %s", durability));
+      }
+    }
+
+    private void validate() {
+      if (!containsMacro("writeBufferSize") && writeBufferSize != null && writeBufferSize < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for writeBufferSize. Must be at least 1, but got %d", writeBufferSize));
+      }
+      if (!containsMacro("bulkLoadBufferSize") && bulkLoadBufferSize != null && bulkLoadBufferSize < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for bulkLoadBufferSize. Must be at least 1, but got %d", bulkLoadBufferSize));
+      }
+      if (!containsMacro("durability")) {
+        getDurability();
+      }
+    }
   }
 }
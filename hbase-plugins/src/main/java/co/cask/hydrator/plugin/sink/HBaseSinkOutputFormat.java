@@ -0,0 +1,312 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.sink;
+
+import com.google.common.base.Strings;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.mapreduce.TableOutputCommitter;
+import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
+import org.apache.hadoop.hbase.zookeeper.ZKUtil;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link OutputFormat} that writes {@link Put Puts} and {@link Delete Deletes} to an HBase table, like
+ * {@link TableOutputFormat}, with a configurable write buffer and auto-flush. It can also buffer the mutations
+ * per region server, and send each region server its mutations in a single batch when the buffer is full.
+ * The time spent writing to HBase, and in grouping mode the number of mutations and batches sent, are reported
+ * as counters. Since the number of counters of a job is limited, the time spent and the number of mutations sent
+ * per region server are logged by each task rather than reported as counters.
+ */
+public class HBaseSinkOutputFormat extends OutputFormat<NullWritable, Mutation> implements Configurable {
+  public static final String WRITE_BUFFER_SIZE = "hbase.client.write.buffer";
+  public static final String AUTO_FLUSH = "co.cask.hydrator.hbase.output.autoflush";
+  public static final String GROUP_BY_REGION_SERVER = "co.cask.hydrator.hbase.output.group.by.region.server";
+
+  static final String COUNTER_GROUP = "HBase Sink";
+  static final String FLUSH_TIME_COUNTER = "Flush Time (ms)";
+  static final String MUTATIONS_COUNTER = "Mutations";
+  static final String BATCHES_COUNTER = "Batches";
+
+  private static final Logger LOG = LoggerFactory.getLogger(HBaseSinkOutputFormat.class);
+  // number of region servers with the largest flush time that are logged at info level
+  private static final int LOGGED_SERVERS = 5;
+
+  private static final long DEFAULT_WRITE_BUFFER_SIZE = 2097152;
+
+  private Configuration conf;
+
+  @Override
+  public void setConf(Configuration configuration) {
+    conf = createHBaseConfiguration(configuration);
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public RecordWriter<NullWritable, Mutation> getRecordWriter(TaskAttemptContext context) throws IOException {
+    String tableName = conf.get(TableOutputFormat.OUTPUT_TABLE);
+    if (Strings.isNullOrEmpty(tableName)) {
+      throw new IllegalArgumentException("Must specify table name");
+    }
+    long writeBufferSize = conf.getLong(WRITE_BUFFER_SIZE, DEFAULT_WRITE_BUFFER_SIZE);
+    HTable table = new HTable(conf, tableName);
+    table.setAutoFlush(conf.getBoolean(AUTO_FLUSH, false), true);
+    table.setWriteBufferSize(writeBufferSize);
+    if (conf.getBoolean(GROUP_BY_REGION_SERVER, false)) {
+      return new GroupingRecordWriter(table, context, writeBufferSize);
+    }
+    return new BufferedRecordWriter(table, context);
+  }
+
+  @Override
+  public void checkOutputSpecs(JobContext context) {
+    // the table is checked when the record writers are created
+  }
+
+  @Override
+  public OutputCommitter getOutputCommitter(TaskAttemptContext context) {
+    return new TableOutputCommitter();
+  }
+
+  /**
+   * Creates an HBase configuration from the given configuration, connecting to the cluster given by
+   * {@link TableOutputFormat#QUORUM_ADDRESS} if it is set.
+   */
+  static Configuration createHBaseConfiguration(Configuration configuration) {
+    Configuration conf = HBaseConfiguration.create(configuration);
+    String quorumAddress = conf.get(TableOutputFormat.QUORUM_ADDRESS);
+    try {
+      if (!Strings.isNullOrEmpty(quorumAddress)) {
+        ZKUtil.applyClusterKeyToConf(conf, quorumAddress);
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid value for " + TableOutputFormat.QUORUM_ADDRESS + ": " +
+                                           quorumAddress, e);
+    }
+    return conf;
+  }
+
+  /**
+   * Writes the mutations through the write buffer of the {@link HTable}.
+   */
+  private static final class BufferedRecordWriter extends RecordWriter<NullWritable, Mutation> {
+    private final HTable table;
+    private final FlushTimer flushTimer;
+
+    private BufferedRecordWriter(HTable table, TaskAttemptContext context) {
+      this.table = table;
+      this.flushTimer = new FlushTimer(context);
+    }
+
+    @Override
+    public void write(NullWritable key, Mutation mutation) throws IOException {
+      // the write buffer is flushed by a put that fills it, so the time of every write is counted
+      long start = System.nanoTime();
+      if (mutation instanceof Put) {
+        table.put((Put) mutation);
+      } else if (mutation instanceof Delete) {
+        table.delete((Delete) mutation);
+      } else {
+        throw new IOException("Pass a Delete or a Put");
+      }
+      flushTimer.add(start);
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
+      try {
+        long start = System.nanoTime();
+        table.flushCommits();
+        flushTimer.add(start);
+        flushTimer.report();
+      } finally {
+        table.close();
+      }
+    }
+  }
+
+  /**
+   * Buffers the mutations per region server, and sends the mutations of each region server in one batch.
+   */
+  private static final class GroupingRecordWriter extends RecordWriter<NullWritable, Mutation> {
+    private final HTable table;
+    private final TaskAttemptContext context;
+    private final FlushTimer flushTimer;
+    private final long writeBufferSize;
+    private final Map<String, List<Mutation>> buffers = new HashMap<>();
+    private final Map<String, ServerStats> serverStats = new HashMap<>();
+    private long bufferedSize;
+
+    private GroupingRecordWriter(HTable table, TaskAttemptContext context, long writeBufferSize) {
+      this.table = table;
+      this.context = context;
+      this.flushTimer = new FlushTimer(context);
+      this.writeBufferSize = writeBufferSize;
+    }
+
+    @Override
+    public void write(NullWritable key, Mutation mutation) throws IOException, InterruptedException {
+      if (!(mutation instanceof Put) && !(mutation instanceof Delete)) {
+        throw new IOException("Pass a Delete or a Put");
+      }
+      // region locations are cached by the connection, so this only goes to HBase for regions not seen before
+      String server = table.getRegionLocation(mutation.getRow()).getHostnamePort();
+      List<Mutation> buffer = buffers.get(server);
+      if (buffer == null) {
+        buffer = new ArrayList<>();
+        buffers.put(server, buffer);
+      }
+      buffer.add(mutation);
+      bufferedSize += mutation.heapSize();
+      if (bufferedSize >= writeBufferSize) {
+        flush();
+      }
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+      try {
+        flush();
+      } finally {
+        table.close();
+      }
+      logServerStats();
+    }
+
+    private void flush() throws IOException, InterruptedException {
+      for (Map.Entry<String, List<Mutation>> entry : buffers.entrySet()) {
+        List<Mutation> buffer = entry.getValue();
+        if (buffer.isEmpty()) {
+          continue;
+        }
+        long start = System.nanoTime();
+        table.batch(buffer, new Object[buffer.size()]);
+        long elapsedNanos = flushTimer.add(start);
+        context.getCounter(COUNTER_GROUP, MUTATIONS_COUNTER).increment(buffer.size());
+        context.getCounter(COUNTER_GROUP, BATCHES_COUNTER).increment(1);
+        ServerStats stats = serverStats.get(entry.getKey());
+        if (stats == null) {
+          stats = new ServerStats(entry.getKey());
+          serverStats.put(entry.getKey(), stats);
+        }
+        stats.add(buffer.size(), elapsedNanos);
+        buffer.clear();
+      }
+      bufferedSize = 0;
+      flushTimer.report();
+    }
+
+    private void logServerStats() {
+      if (serverStats.isEmpty()) {
+        return;
+      }
+      List<ServerStats> stats = new ArrayList<>(serverStats.values());
+      Collections.sort(stats);
+      LOG.info("Sent mutations to {} region servers. Region servers with the largest flush time: {}",
+               stats.size(), stats.subList(0, Math.min(LOGGED_SERVERS, stats.size())));
+      if (stats.size() > LOGGED_SERVERS) {
+        LOG.debug("Mutations sent to all region servers: {}", stats);
+      }
+    }
+  }
+
+  /**
+   * Number of mutations and batches sent to a region server, and the time spent sending them.
+   * Ordered by decreasing time.
+   */
+  private static final class ServerStats implements Comparable<ServerStats> {
+    private final String server;
+    private long mutations;
+    private long batches;
+    private long nanos;
+
+    private ServerStats(String server) {
+      this.server = server;
+    }
+
+    void add(int numMutations, long elapsedNanos) {
+      mutations += numMutations;
+      batches++;
+      nanos += elapsedNanos;
+    }
+
+    @Override
+    public int compareTo(ServerStats other) {
+      return Long.compare(other.nanos, nanos);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s (%d mutations in %d batches, %d ms)",
+                           server, mutations, batches, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+  }
+
+  /**
+   * Adds up the time spent writing to HBase, and reports it as a counter in milliseconds.
+   */
+  private static final class FlushTimer {
+    private final TaskAttemptContext context;
+    private long nanos;
+    private long reportedMillis;
+
+    private FlushTimer(TaskAttemptContext context) {
+      this.context = context;
+    }
+
+    /**
+     * Adds the time since the given start.
+     *
+     * @return the time added, in nanoseconds
+     */
+    long add(long startNanos) {
+      long elapsedNanos = System.nanoTime() - startNanos;
+      nanos += elapsedNanos;
+      return elapsedNanos;
+    }
+
+    void report() {
+      long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+      context.getCounter(COUNTER_GROUP, FLUSH_TIME_COUNTER).increment(millis - reportedMillis);
+      reportedMillis = millis;
+    }
+  }
+}
@@ -17,8 +17,10 @@
 package co.cask.hydrator.plugin.source;
 
 import co.cask.cdap.api.annotation.Description;
+import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.annotation.Name;
 import co.cask.cdap.api.annotation.Plugin;
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.batch.Input;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
@@ -31,6 +33,7 @@ import co.cask.cdap.etl.api.batch.BatchSourceContext;
 import co.cask.hydrator.common.ReferenceBatchSource;
 import co.cask.hydrator.common.SourceInputFormatProvider;
 import co.cask.hydrator.plugin.HBaseConfig;
+import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.Result;
@@ -40,6 +43,10 @@ import org.apache.hadoop.hbase.mapreduce.MutationSerialization;
 import org.apache.hadoop.hbase.mapreduce.ResultSerialization;
 import org.apache.hadoop.hbase.mapreduce.TableInputFormat;
 
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
 /**
  *
  */
@@ -48,9 +55,9 @@ import org.apache.hadoop.hbase.mapreduce.TableInputFormat;
 @Description("Read from an HBase table in batch")
 public class HBaseSource extends ReferenceBatchSource<ImmutableBytesWritable, Result, StructuredRecord> {
   private RowRecordTransformer rowRecordTransformer;
-  private HBaseConfig config;
+  private HBaseSourceConfig config;
 
-  public HBaseSource(HBaseConfig config) {
+  public HBaseSource(HBaseSourceConfig config) {
     super(config);
     this.config = config;
   }
@@ -62,7 +69,42 @@ public class HBaseSource extends ReferenceBatchSource<ImmutableBytesWritable, Re
     conf.clear();
 
     conf.set(TableInputFormat.INPUT_TABLE, config.tableName);
-    conf.set(TableInputFormat.SCAN_COLUMN_FAMILY, config.columnFamily);
+    // only read the columns of the fields in the schema, if there are any
+    Schema schema = Schema.parseJson(config.schema);
+    List<String> columns = new ArrayList<>();
+    for (Schema.Field field : schema.getFields()) {
+      if (!field.getName().equals(config.rowField)) {
+        columns.add(config.columnFamily + ":" + field.getName());
+      }
+    }
+    if (columns.isEmpty()) {
+      conf.set(TableInputFormat.SCAN_COLUMN_FAMILY, config.columnFamily);
+    } else {
+      conf.set(TableInputFormat.SCAN_COLUMNS, Joiner.on(' ').join(columns));
+    }
+    if (config.scanCaching != null) {
+      conf.setInt(TableInputFormat.SCAN_CACHEDROWS, config.scanCaching);
+    }
+    if (config.cacheBlocks != null) {
+      conf.setBoolean(TableInputFormat.SCAN_CACHEBLOCKS, config.cacheBlocks);
+    }
+    if (!Strings.isNullOrEmpty(config.startRow)) {
+      conf.set(HBaseSourceInputFormat.SCAN_ROW_START_BINARY,
+               Bytes.toStringBinary(toRowKey(schema, config.rowField, config.startRow)));
+    }
+    if (!Strings.isNullOrEmpty(config.stopRow)) {
+      conf.set(HBaseSourceInputFormat.SCAN_ROW_STOP_BINARY,
+               Bytes.toStringBinary(toRowKey(schema, config.rowField, config.stopRow)));
+    }
+    // the time range is only applied by TableInputFormat if both ends are set
+    if (config.timeRangeStart != null || config.timeRangeEnd != null) {
+      conf.setLong(TableInputFormat.SCAN_TIMERANGE_START, config.timeRangeStart == null ? 0 : config.timeRangeStart);
+      conf.setLong(TableInputFormat.SCAN_TIMERANGE_END,
+                   config.timeRangeEnd == null ? Long.MAX_VALUE : config.timeRangeEnd);
+    }
+    if (config.maxSplitSize != null) {
+      conf.setLong(HBaseSourceInputFormat.MAX_SPLIT_SIZE, config.maxSplitSize);
+    }
     String zkQuorum = !Strings.isNullOrEmpty(config.zkQuorum) ? config.zkQuorum : "localhost";
     String zkClientPort = !Strings.isNullOrEmpty(config.zkClientPort) ? config.zkClientPort : "2181";
     conf.set("hbase.zookeeper.quorum", zkQuorum);
@@ -70,17 +112,21 @@ public class HBaseSource extends ReferenceBatchSource<ImmutableBytesWritable, Re
     conf.setStrings(ioSerializations,
                     MutationSerialization.class.getName(), ResultSerialization.class.getName(),
                     KeyValueSerialization.class.getName());
-    context.setInput(Input.of(config.referenceName, new SourceInputFormatProvider(TableInputFormat.class, conf)));
+    context.setInput(Input.of(config.referenceName,
+                              new SourceInputFormatProvider(HBaseSourceInputFormat.class, conf)));
   }
 
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
     super.configurePipeline(pipelineConfigurer);
+    Schema schema;
     try {
-      pipelineConfigurer.getStageConfigurer().setOutputSchema(Schema.parseJson(config.schema));
+      schema = Schema.parseJson(config.schema);
     } catch (Exception e) {
       throw new IllegalArgumentException("Invalid output schema: " + e.getMessage(), e);
     }
+    config.validate(schema);
+    pipelineConfigurer.getStageConfigurer().setOutputSchema(schema);
   }
 
   @Override
@@ -98,4 +144,127 @@ public class HBaseSource extends ReferenceBatchSource<ImmutableBytesWritable, Re
     StructuredRecord record = rowRecordTransformer.toRecord(cdapRow);
     emitter.emit(record);
   }
+
+  /**
+   * Converts a row given in a property to a row key, using the type of the row field, in the same way as
+   * the values of the row field are converted.
+   */
+  private static byte[] toRowKey(Schema schema, @Nullable String rowField, String row) {
+    Schema.Field field = rowField == null ? null : schema.getField(rowField);
+    if (field == null) {
+      return Bytes.toBytes(row);
+    }
+    Schema fieldSchema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+    try {
+      switch (fieldSchema.getType()) {
+        case BOOLEAN:
+          return Bytes.toBytes(Boolean.parseBoolean(row));
+        case INT:
+          return Bytes.toBytes(Integer.parseInt(row));
+        case LONG:
+          return Bytes.toBytes(Long.parseLong(row));
+        case FLOAT:
+          return Bytes.toBytes(Float.parseFloat(row));
+        case DOUBLE:
+          return Bytes.toBytes(Double.parseDouble(row));
+        case BYTES:
+          return Bytes.toBytesBinary(row);
+        default:
+          return Bytes.toBytes(row);
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+        String.format("Invalid row '%s'. Must be a value of the type of the row field, %s.",
+                      row, fieldSchema.getType()), e);
+    }
+  }
+
+  /**
+   * Config for the HBase source.
+   */
+  public static class HBaseSourceConfig extends HBaseConfig {
+    @Description("Number of rows fetched from HBase in each call to the region servers. A larger value makes " +
+      "fewer calls, but uses more memory. Defaults to the 'hbase.client.scanner.caching' setting of HBase.")
+    @Nullable
+    @Macro
+    private Integer scanCaching;
+
+    @Description("Whether the blocks read by the scan are added to the block cache of the region servers. " +
+      "Reading a whole table usually evicts more useful blocks from the cache, so this defaults to false.")
+    @Nullable
+    @Macro
+    private Boolean cacheBlocks;
+
+    @Description("First row to read, inclusive. The value is converted to the type of the row field. " +
+      "If not set, the table is read from its first row.")
+    @Nullable
+    @Macro
+    private String startRow;
+
+    @Description("Row at which to stop reading, exclusive. The value is converted to the type of the row field. " +
+      "If not set, the table is read until its last row.")
+    @Nullable
+    @Macro
+    private String stopRow;
+
+    @Description("Only read cells with a timestamp of at least this value, in milliseconds since epoch.")
+    @Nullable
+    @Macro
+    private Long timeRangeStart;
+
+    @Description("Only read cells with a timestamp lower than this value, in milliseconds since epoch.")
+    @Nullable
+    @Macro
+    private Long timeRangeEnd;
+
+    @Description("Maximum size in bytes of the data read by each task. Regions that are larger are split into " +
+      "several tasks. If not set, each region is read by a single task.")
+    @Nullable
+    @Macro
+    private Long maxSplitSize;
+
+    public HBaseSourceConfig(String referenceName, String tableName, String rowField, @Nullable String schema) {
+      super(referenceName, tableName, rowField, schema);
+    }
+
+    public HBaseSourceConfig(String referenceName, String tableName, String rowField, @Nullable String schema,
+                             @Nullable String startRow, @Nullable String stopRow, @Nullable Long timeRangeStart,
+                             @Nullable Long timeRangeEnd, @Nullable Integer scanCaching,
+                             @Nullable Long maxSplitSize) {
+      super(referenceName, tableName, rowField, schema);
+      this.startRow = startRow;
+      this.stopRow = stopRow;
+      this.timeRangeStart = timeRangeStart;
+      this.timeRangeEnd = timeRangeEnd;
+      this.scanCaching = scanCaching;
+      this.maxSplitSize = maxSplitSize;
+    }
+
+    private void validate(Schema schema) {
+      if (!containsMacro("scanCaching") && scanCaching != null && scanCaching < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for scanCaching. Must be at least 1, but got %d", scanCaching));
+      }
+      if (!containsMacro("maxSplitSize") && maxSplitSize != null && maxSplitSize < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for maxSplitSize. Must be at least 1, but got %d", maxSplitSize));
+      }
+      if (!containsMacro("timeRangeStart") && timeRangeStart != null && timeRangeStart < 0) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for timeRangeStart. Must be at least 0, but got %d", timeRangeStart));
+      }
+      if (!containsMacro("timeRangeStart") && !containsMacro("timeRangeEnd") && timeRangeStart != null &&
+        timeRangeEnd != null && timeRangeEnd <= timeRangeStart) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for timeRangeEnd. Must be greater than timeRangeStart %d, but got %d",
+                        timeRangeStart, timeRangeEnd));
+      }
+      if (!containsMacro("startRow") && !Strings.isNullOrEmpty(startRow)) {
+        toRowKey(schema, rowField, startRow);
+      }
+      if (!containsMacro("stopRow") && !Strings.isNullOrEmpty(stopRow)) {
+        toRowKey(schema, rowField, stopRow);
+      }
+    }
+  }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin.source;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.mapreduce.TableInputFormat;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link TableInputFormat} that takes the start and stop rows of the scan as binary strings, so that they can be
+ * any row key, and that can split large regions into several splits.
+ * <p>
+ * The start and stop rows are given in the format of {@link Bytes#toStringBinary(byte[])}. A region larger than
+ * {@link #MAX_SPLIT_SIZE} bytes, as reported by the region servers, is split into several splits of about the same
+ * size. The row ranges of these splits are computed from the first and last rows of the region, assuming that the
+ * row keys are spread evenly.
+ * </p>
+ */
+public class HBaseSourceInputFormat extends TableInputFormat {
+  public static final String SCAN_ROW_START_BINARY = "co.cask.hydrator.hbase.scan.row.start.binary";
+  public static final String SCAN_ROW_STOP_BINARY = "co.cask.hydrator.hbase.scan.row.stop.binary";
+  public static final String MAX_SPLIT_SIZE = "co.cask.hydrator.hbase.max.split.size";
+
+  private long maxSplitSize;
+
+  @Override
+  public void setConf(Configuration configuration) {
+    super.setConf(configuration);
+    Scan scan = getScan();
+    String startRow = configuration.get(SCAN_ROW_START_BINARY);
+    if (startRow != null) {
+      scan.setStartRow(Bytes.toBytesBinary(startRow));
+    }
+    String stopRow = configuration.get(SCAN_ROW_STOP_BINARY);
+    if (stopRow != null) {
+      scan.setStopRow(Bytes.toBytesBinary(stopRow));
+    }
+    maxSplitSize = configuration.getLong(MAX_SPLIT_SIZE, 0);
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext context) throws IOException {
+    List<InputSplit> splits = super.getSplits(context);
+    if (maxSplitSize <= 0) {
+      return splits;
+    }
+    List<InputSplit> result = new ArrayList<>();
+    for (InputSplit split : splits) {
+      TableSplit tableSplit = (TableSplit) split;
+      long numSplits = (tableSplit.getLength() + maxSplitSize - 1) / maxSplitSize;
+      if (numSplits <= 1) {
+        result.add(tableSplit);
+      } else {
+        result.addAll(splitRegion(tableSplit, (int) Math.min(numSplits, Integer.MAX_VALUE)));
+      }
+    }
+    return result;
+  }
+
+  private List<TableSplit> splitRegion(TableSplit split, int numSplits) throws IOException {
+    List<TableSplit> splits = new ArrayList<>();
+    // an empty start or end row means that the region is the first or last one, so its actual rows are looked up
+    byte[] firstRow = split.getStartRow().length > 0 ? split.getStartRow() : getFirstRow(split.getEndRow());
+    byte[] lastRow = split.getEndRow().length > 0 ? split.getEndRow() : getLastRow(split.getStartRow());
+    byte[][] splitRows = null;
+    if (firstRow != null && lastRow != null && Bytes.compareTo(firstRow, lastRow) < 0) {
+      // the returned rows include the first and the last rows
+      splitRows = Bytes.split(firstRow, lastRow, numSplits - 1);
+    }
+    if (splitRows == null) {
+      splits.add(split);
+      return splits;
+    }
+
+    byte[] startRow = split.getStartRow();
+    for (int i = 1; i < numSplits; i++) {
+      if (Bytes.compareTo(startRow, splitRows[i]) < 0) {
+        splits.add(new TableSplit(split.getTable(), startRow, splitRows[i], split.getRegionLocation(),
+                                  split.getLength() / numSplits));
+        startRow = splitRows[i];
+      }
+    }
+    splits.add(new TableSplit(split.getTable(), startRow, split.getEndRow(), split.getRegionLocation(),
+                              split.getLength() / numSplits));
+    return splits;
+  }
+
+  @Nullable
+  private byte[] getFirstRow(byte[] stopRow) throws IOException {
+    Scan scan = new Scan();
+    scan.setStopRow(stopRow);
+    return getRow(scan);
+  }
+
+  @Nullable
+  private byte[] getLastRow(byte[] startRow) throws IOException {
+    // reversed scans start from the end of the table when the start row is empty, and stop before the stop row
+    Scan scan = new Scan();
+    scan.setReversed(true);
+    scan.setStopRow(startRow);
+    return getRow(scan);
+  }
+
+  @Nullable
+  private byte[] getRow(Scan scan) throws IOException {
+    scan.setFilter(new FirstKeyOnlyFilter());
+    scan.setCaching(1);
+    scan.setCacheBlocks(false);
+    ResultScanner scanner = getHTable().getScanner(scan);
+    try {
+      Result result = scanner.next();
+      return result == null ? null : result.getRow();
+    } finally {
+      scanner.close();
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import co.cask.hydrator.plugin.sink.HBaseBulkLoadOutputFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Tests for {@link HBaseBulkLoadOutputFormat}, against a mini HBase cluster.
+ */
+public class HBaseBulkLoadOutputFormatTest {
+  private static final String TABLE_NAME = "bulkload";
+  private static final byte[] FAMILY = Bytes.toBytes("col");
+  private static final byte[] QUALIFIER = Bytes.toBytes("name");
+
+  private static HBaseTestingUtility testUtil;
+
+  @BeforeClass
+  public static void setupTest() throws Exception {
+    testUtil = new HBaseTestingUtility();
+    testUtil.startMiniCluster();
+  }
+
+  @AfterClass
+  public static void afterTest() throws Exception {
+    if (testUtil != null) {
+      testUtil.shutdownMiniCluster();
+    }
+  }
+
+  @Test
+  public void testBulkLoad() throws Exception {
+    byte[][] splits = { Bytes.toBytes("row3"), Bytes.toBytes("row6") };
+    testUtil.createTable(Bytes.toBytes(TABLE_NAME), new byte[][] { FAMILY }, splits).close();
+
+    Path outputPath = testUtil.getDataTestDirOnTestFS("bulkload");
+    // a small buffer, so that each task spills several times
+    Configuration conf = createConf(TABLE_NAME, outputPath, 2048);
+
+    JobID jobId = new JobID("bulkload", 0);
+    JobContext jobContext = new JobContextImpl(conf, jobId);
+    TaskAttemptContext firstTask = createTaskContext(conf, jobId, 0);
+    TaskAttemptContext secondTask = createTaskContext(conf, jobId, 1);
+    OutputCommitter jobCommitter = createOutputFormat(conf).getOutputCommitter(firstTask);
+    jobCommitter.setupJob(jobContext);
+
+    // each task writes half of the rows, unsorted
+    writeRows(createOutputFormat(conf), firstTask, 0);
+    writeRows(createOutputFormat(conf), secondTask, 1);
+    jobCommitter.commitJob(jobContext);
+
+    FileSystem fs = outputPath.getFileSystem(conf);
+    FileStatus[] hFiles = fs.listStatus(new Path(outputPath, Bytes.toString(FAMILY)));
+    // every task writes a single HFile for each of the three regions
+    Assert.assertEquals(6, hFiles.length);
+
+    HTable table = new HTable(testUtil.getConfiguration(), TABLE_NAME);
+    try {
+      new LoadIncrementalHFiles(testUtil.getConfiguration()).doBulkLoad(outputPath, table);
+      for (int i = 0; i < 100; i++) {
+        Result result = table.get(new Get(Bytes.toBytes("row" + i)));
+        Assert.assertEquals("name" + i, Bytes.toString(result.getValue(FAMILY, QUALIFIER)));
+      }
+    } finally {
+      table.close();
+    }
+  }
+
+  @Test
+  public void testManyFilesPerRegion() throws Exception {
+    String tableName = "manyfiles";
+    testUtil.createTable(Bytes.toBytes(tableName), FAMILY).close();
+
+    Path outputPath = testUtil.getDataTestDirOnTestFS(tableName);
+    // a buffer that only holds a couple of cells, so that each task spills about 50 times
+    Configuration conf = createConf(tableName, outputPath, 128);
+
+    // more tasks than the number of HFiles LoadIncrementalHFiles loads into a region and column family by default
+    int numTasks = 40;
+    JobID jobId = new JobID(tableName, 0);
+    JobContext jobContext = new JobContextImpl(conf, jobId);
+    OutputCommitter jobCommitter = createOutputFormat(conf).getOutputCommitter(createTaskContext(conf, jobId, 0));
+    jobCommitter.setupJob(jobContext);
+    for (int task = 0; task < numTasks; task++) {
+      TaskAttemptContext context = createTaskContext(conf, jobId, task);
+      HBaseBulkLoadOutputFormat outputFormat = createOutputFormat(conf);
+      OutputCommitter committer = outputFormat.getOutputCommitter(context);
+      committer.setupTask(context);
+      RecordWriter<NullWritable, Mutation> writer = outputFormat.getRecordWriter(context);
+      // every row is written twice, in different spills, and the second value replaces the first
+      for (String value : new String[] { "old", "name" }) {
+        for (int i = 0; i < 50; i++) {
+          Put put = new Put(Bytes.toBytes(String.format("row%02d-%02d", task, i)));
+          put.add(FAMILY, QUALIFIER, Bytes.toBytes(value + i));
+          writer.write(NullWritable.get(), put);
+        }
+      }
+      writer.close(context);
+      committer.commitTask(context);
+    }
+    jobCommitter.commitJob(jobContext);
+
+    // every task writes a single HFile for the region, however many times it spilled
+    FileSystem fs = outputPath.getFileSystem(conf);
+    Assert.assertEquals(numTasks, fs.listStatus(new Path(outputPath, Bytes.toString(FAMILY))).length);
+
+    HTable table = new HTable(testUtil.getConfiguration(), tableName);
+    try {
+      Configuration loadConf = new Configuration(testUtil.getConfiguration());
+      try {
+        new LoadIncrementalHFiles(loadConf).doBulkLoad(outputPath, table);
+        Assert.fail("Expected the bulk load to fail with more than 32 HFiles per region");
+      } catch (IOException e) {
+        // expected
+      }
+      HBaseBulkLoadOutputFormat.setMaxFilesPerRegionPerFamily(loadConf, outputPath);
+      Assert.assertEquals(numTasks, loadConf.getInt(LoadIncrementalHFiles.MAX_FILES_PER_REGION_PER_FAMILY, 0));
+      new LoadIncrementalHFiles(loadConf).doBulkLoad(outputPath, table);
+      for (int task = 0; task < numTasks; task++) {
+        for (int i = 0; i < 50; i++) {
+          Result result = table.get(new Get(Bytes.toBytes(String.format("row%02d-%02d", task, i))));
+          Assert.assertEquals("name" + i, Bytes.toString(result.getValue(FAMILY, QUALIFIER)));
+        }
+      }
+    } finally {
+      table.close();
+    }
+  }
+
+  private Configuration createConf(String tableName, Path outputPath, long bufferSize) {
+    Configuration conf = new Configuration(testUtil.getConfiguration());
+    conf.set(TableOutputFormat.OUTPUT_TABLE, tableName);
+    conf.set(FileOutputFormat.OUTDIR, outputPath.toString());
+    conf.setLong(HBaseBulkLoadOutputFormat.BUFFER_SIZE, bufferSize);
+    // the local directory of the tasks, to which the buffers are spilled
+    conf.set(MRConfig.LOCAL_DIR, testUtil.getDataTestDir("local").toString());
+    return conf;
+  }
+
+  private TaskAttemptContext createTaskContext(Configuration conf, JobID jobId, int task) {
+    return new TaskAttemptContextImpl(conf, new TaskAttemptID(jobId.getJtIdentifier(), jobId.getId(),
+                                                              TaskType.MAP, task, 0));
+  }
+
+  private HBaseBulkLoadOutputFormat createOutputFormat(Configuration conf) {
+    HBaseBulkLoadOutputFormat outputFormat = new HBaseBulkLoadOutputFormat();
+    outputFormat.setConf(conf);
+    return outputFormat;
+  }
+
+  private void writeRows(HBaseBulkLoadOutputFormat outputFormat, TaskAttemptContext context,
+                         int remainder) throws Exception {
+    // like in a MapReduce task, the output format and its committer are only used by a single task
+    OutputCommitter committer = outputFormat.getOutputCommitter(context);
+    committer.setupTask(context);
+    RecordWriter<NullWritable, Mutation> writer = outputFormat.getRecordWriter(context);
+    // writes the rows in an order that spreads them over all the regions
+    for (int j = 0; j < 100; j++) {
+      int i = (j * 37) % 100;
+      if (i % 2 == remainder) {
+        Put put = new Put(Bytes.toBytes("row" + i));
+        put.add(FAMILY, QUALIFIER, Bytes.toBytes("name" + i));
+        writer.write(NullWritable.get(), put);
+      }
+    }
+    writer.close(context);
+    committer.commitTask(context);
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import co.cask.hydrator.plugin.sink.HBaseSinkOutputFormat;
+import com.google.common.collect.ImmutableSet;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Durability;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link HBaseSinkOutputFormat}, against a mini HBase cluster.
+ */
+public class HBaseSinkOutputFormatTest {
+  private static final String COUNTER_GROUP = "HBase Sink";
+  private static final byte[] FAMILY = Bytes.toBytes("col");
+  private static final byte[] QUALIFIER = Bytes.toBytes("name");
+
+  private static HBaseTestingUtility testUtil;
+
+  @BeforeClass
+  public static void setupTest() throws Exception {
+    testUtil = new HBaseTestingUtility();
+    testUtil.startMiniCluster();
+  }
+
+  @AfterClass
+  public static void afterTest() throws Exception {
+    if (testUtil != null) {
+      testUtil.shutdownMiniCluster();
+    }
+  }
+
+  @Test
+  public void testBufferedWrites() throws Exception {
+    String tableName = "buffered";
+    Map<String, String> counters = writeRows(tableName, false);
+    verifyRows(tableName);
+    Assert.assertTrue(counters.containsKey("Flush Time (ms)"));
+  }
+
+  @Test
+  public void testGroupedWrites() throws Exception {
+    String tableName = "grouped";
+    Map<String, String> counters = writeRows(tableName, true);
+    verifyRows(tableName);
+    // the counters don't depend on the number of region servers
+    Assert.assertEquals(ImmutableSet.of("Flush Time (ms)", "Mutations", "Batches"), counters.keySet());
+    Assert.assertEquals("100", counters.get("Mutations"));
+    // all regions are on the single region server of the mini cluster, and the buffer was flushed several times
+    Assert.assertTrue(Integer.parseInt(counters.get("Batches")) > 1);
+  }
+
+  private Map<String, String> writeRows(String tableName, boolean groupByRegionServer) throws Exception {
+    byte[][] splits = { Bytes.toBytes("row3"), Bytes.toBytes("row6") };
+    testUtil.createTable(Bytes.toBytes(tableName), new byte[][] { FAMILY }, splits).close();
+
+    Configuration conf = new Configuration(testUtil.getConfiguration());
+    conf.set(TableOutputFormat.OUTPUT_TABLE, tableName);
+    conf.set(TableOutputFormat.QUORUM_ADDRESS, String.format("%s:%s:%s",
+                                                             conf.get(HConstants.ZOOKEEPER_QUORUM),
+                                                             conf.get(HConstants.ZOOKEEPER_CLIENT_PORT),
+                                                             conf.get(HConstants.ZOOKEEPER_ZNODE_PARENT)));
+    // a small buffer, so that it is flushed several times
+    conf.setLong(HBaseSinkOutputFormat.WRITE_BUFFER_SIZE, 1024);
+    conf.setBoolean(HBaseSinkOutputFormat.GROUP_BY_REGION_SERVER, groupByRegionServer);
+
+    HBaseSinkOutputFormat outputFormat = new HBaseSinkOutputFormat();
+    outputFormat.setConf(conf);
+    Counters counters = new Counters();
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID(), new CounterReporter(counters));
+    RecordWriter<NullWritable, Mutation> writer = outputFormat.getRecordWriter(context);
+    for (int i = 0; i < 100; i++) {
+      Put put = new Put(Bytes.toBytes("row" + i));
+      put.add(FAMILY, QUALIFIER, Bytes.toBytes("name" + i));
+      put.setDurability(Durability.SKIP_WAL);
+      writer.write(NullWritable.get(), put);
+    }
+    writer.close(context);
+
+    Map<String, String> values = new HashMap<>();
+    CounterGroup group = counters.getGroup(COUNTER_GROUP);
+    for (Counter counter : group) {
+      values.put(counter.getName(), String.valueOf(counter.getValue()));
+    }
+    return values;
+  }
+
+  private void verifyRows(String tableName) throws Exception {
+    HTable table = new HTable(testUtil.getConfiguration(), tableName);
+    try {
+      for (int i = 0; i < 100; i++) {
+        Result result = table.get(new Get(Bytes.toBytes("row" + i)));
+        Assert.assertEquals("name" + i, Bytes.toString(result.getValue(FAMILY, QUALIFIER)));
+      }
+    } finally {
+      table.close();
+    }
+  }
+
+  /**
+   * A {@link StatusReporter} that keeps the counters in a {@link Counters}.
+   */
+  private static final class CounterReporter extends StatusReporter {
+    private final Counters counters;
+
+    private CounterReporter(Counters counters) {
+      this.counters = counters;
+    }
+
+    @Override
+    public Counter getCounter(Enum<?> name) {
+      return counters.findCounter(name);
+    }
+
+    @Override
+    public Counter getCounter(String group, String name) {
+      return counters.findCounter(group, name);
+    }
+
+    @Override
+    public void progress() {
+      // no-op
+    }
+
+    @Override
+    public float getProgress() {
+      return 0;
+    }
+
+    @Override
+    public void setStatus(String status) {
+      // no-op
+    }
+  }
+}
@@ -177,4 +177,24 @@ public class HBaseSinkTest {
     tableSink.configurePipeline(mockPipelineConfigurer);
     Assert.assertEquals(outputSchema, mockPipelineConfigurer.getOutputSchema());
   }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTableSinkWithInvalidDurability() {
+    HBaseSink.HBaseSinkConfig tableSinkConfig = new HBaseSink.HBaseSinkConfig("hbaseSink", "hbaseSink", "rowkey",
+                                                                              null, null, "NO_WAL", null, null);
+    HBaseSink tableSink = new HBaseSink(tableSinkConfig);
+
+    MockPipelineConfigurer mockPipelineConfigurer = new MockPipelineConfigurer(null);
+    tableSink.configurePipeline(mockPipelineConfigurer);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTableSinkWithInvalidWriteBufferSize() {
+    HBaseSink.HBaseSinkConfig tableSinkConfig = new HBaseSink.HBaseSinkConfig("hbaseSink", "hbaseSink", "rowkey",
+                                                                              null, 0L, "skip_wal", null, null);
+    HBaseSink tableSink = new HBaseSink(tableSinkConfig);
+
+    MockPipelineConfigurer mockPipelineConfigurer = new MockPipelineConfigurer(null);
+    tableSink.configurePipeline(mockPipelineConfigurer);
+  }
 }
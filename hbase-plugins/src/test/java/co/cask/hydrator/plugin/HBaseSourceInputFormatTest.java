@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import co.cask.hydrator.plugin.source.HBaseSourceInputFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableInputFormat;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link HBaseSourceInputFormat}, against a mini HBase cluster.
+ */
+public class HBaseSourceInputFormatTest {
+  private static final byte[] FAMILY = Bytes.toBytes("col");
+  private static final byte[] NAME = Bytes.toBytes("name");
+  private static final byte[] EXTRA = Bytes.toBytes("extra");
+
+  private static HBaseTestingUtility testUtil;
+
+  @BeforeClass
+  public static void setupTest() throws Exception {
+    testUtil = new HBaseTestingUtility();
+    testUtil.startMiniCluster();
+  }
+
+  @AfterClass
+  public static void afterTest() throws Exception {
+    if (testUtil != null) {
+      testUtil.shutdownMiniCluster();
+    }
+  }
+
+  @Test
+  public void testScan() throws Exception {
+    String tableName = "scan";
+    byte[][] splits = { Bytes.toBytes("row3"), Bytes.toBytes("row6") };
+    HTable table = testUtil.createTable(Bytes.toBytes(tableName), new byte[][] { FAMILY }, splits);
+    try {
+      for (int i = 0; i < 10; i++) {
+        Put put = new Put(Bytes.toBytes("row" + i));
+        put.add(FAMILY, NAME, 1000L + i, Bytes.toBytes("name" + i));
+        put.add(FAMILY, EXTRA, 1000L + i, Bytes.toBytes("extra" + i));
+        table.put(put);
+      }
+    } finally {
+      table.close();
+    }
+
+    Configuration conf = createConf(tableName);
+    conf.set(TableInputFormat.SCAN_COLUMNS, "col:name");
+    conf.set(HBaseSourceInputFormat.SCAN_ROW_START_BINARY, "row2");
+    conf.set(HBaseSourceInputFormat.SCAN_ROW_STOP_BINARY, "row8");
+    conf.setLong(TableInputFormat.SCAN_TIMERANGE_START, 1000L);
+    conf.setLong(TableInputFormat.SCAN_TIMERANGE_END, 1007L);
+
+    HBaseSourceInputFormat inputFormat = createInputFormat(conf);
+    List<InputSplit> inputSplits = inputFormat.getSplits(new JobContextImpl(conf, new JobID()));
+    Assert.assertEquals(3, inputSplits.size());
+    List<Result> results = read(inputFormat, conf, inputSplits);
+
+    // rows 2 to 7 are in the row range, but the cells of row 7 are not in the time range
+    Assert.assertEquals(5, results.size());
+    for (int i = 0; i < results.size(); i++) {
+      Result result = results.get(i);
+      Assert.assertEquals("row" + (i + 2), Bytes.toString(result.getRow()));
+      Assert.assertEquals("name" + (i + 2), Bytes.toString(result.getValue(FAMILY, NAME)));
+      Assert.assertNull(result.getValue(FAMILY, EXTRA));
+    }
+  }
+
+  @Test
+  public void testSplitLargeRegions() throws Exception {
+    String tableName = "split";
+    byte[][] splits = { Bytes.toBytes("row3") };
+    HTable table = testUtil.createTable(Bytes.toBytes(tableName), new byte[][] { FAMILY }, splits);
+    try {
+      // write a few MB in the region after row3, so that it is larger than the maximum split size
+      byte[] value = new byte[10240];
+      for (int i = 0; i < 400; i++) {
+        table.put(new Put(Bytes.toBytes(String.format("row5%03d", i))).add(FAMILY, NAME, value));
+      }
+      table.put(new Put(Bytes.toBytes("row1")).add(FAMILY, NAME, value));
+    } finally {
+      table.close();
+    }
+    testUtil.flush();
+
+    Configuration conf = createConf(tableName);
+    conf.set(TableInputFormat.SCAN_COLUMN_FAMILY, Bytes.toString(FAMILY));
+    conf.setLong(HBaseSourceInputFormat.MAX_SPLIT_SIZE, 1024 * 1024);
+    HBaseSourceInputFormat inputFormat = createInputFormat(conf);
+    JobContext jobContext = new JobContextImpl(conf, new JobID());
+
+    // the sizes of the regions are reported by the region servers periodically
+    List<InputSplit> inputSplits = inputFormat.getSplits(jobContext);
+    long timeout = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+    while (inputSplits.size() <= 2 && System.currentTimeMillis() < timeout) {
+      TimeUnit.SECONDS.sleep(1);
+      inputSplits = inputFormat.getSplits(jobContext);
+    }
+    Assert.assertTrue(inputSplits.size() > 2);
+
+    // the splits cover the table once, in order
+    byte[] startRow = new byte[0];
+    for (InputSplit inputSplit : inputSplits) {
+      TableSplit tableSplit = (TableSplit) inputSplit;
+      Assert.assertArrayEquals(startRow, tableSplit.getStartRow());
+      startRow = tableSplit.getEndRow();
+    }
+    Assert.assertArrayEquals(new byte[0], startRow);
+    Assert.assertEquals(401, read(inputFormat, conf, inputSplits).size());
+  }
+
+  private Configuration createConf(String tableName) {
+    Configuration conf = new Configuration(testUtil.getConfiguration());
+    conf.set(TableInputFormat.INPUT_TABLE, tableName);
+    return conf;
+  }
+
+  private HBaseSourceInputFormat createInputFormat(Configuration conf) {
+    HBaseSourceInputFormat inputFormat = new HBaseSourceInputFormat();
+    inputFormat.setConf(conf);
+    return inputFormat;
+  }
+
+  private List<Result> read(HBaseSourceInputFormat inputFormat, Configuration conf,
+                            List<InputSplit> inputSplits) throws Exception {
+    List<Result> results = new ArrayList<>();
+    for (InputSplit inputSplit : inputSplits) {
+      TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+      RecordReader<ImmutableBytesWritable, Result> reader = inputFormat.createRecordReader(inputSplit, context);
+      try {
+        reader.initialize(inputSplit, context);
+        while (reader.nextKeyValue()) {
+          results.add(reader.getCurrentValue());
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return results;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.hydrator.plugin;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.hydrator.common.MockPipelineConfigurer;
+import co.cask.hydrator.plugin.source.HBaseSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the validation of the hbase source config.
+ */
+public class HBaseSourceTest {
+  private static final Schema SCHEMA = Schema.recordOf(
+    "purchase",
+    Schema.Field.of("rowkey", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("user", Schema.of(Schema.Type.STRING))
+  );
+
+  @Test
+  public void testSourceWithScanSettings() {
+    HBaseSource.HBaseSourceConfig config = new HBaseSource.HBaseSourceConfig("hbaseSource", "hbaseSource", "rowkey",
+                                                                             SCHEMA.toString(), "100", "200",
+                                                                             1000L, 2000L, 500, 1048576L);
+    MockPipelineConfigurer mockPipelineConfigurer = new MockPipelineConfigurer(null);
+    new HBaseSource(config).configurePipeline(mockPipelineConfigurer);
+    Assert.assertEquals(SCHEMA, mockPipelineConfigurer.getOutputSchema());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSourceWithStartRowOfWrongType() {
+    HBaseSource.HBaseSourceConfig config = new HBaseSource.HBaseSourceConfig("hbaseSource", "hbaseSource", "rowkey",
+                                                                             SCHEMA.toString(), "abc", null,
+                                                                             null, null, null, null);
+    new HBaseSource(config).configurePipeline(new MockPipelineConfigurer(null));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSourceWithInvalidTimeRange() {
+    HBaseSource.HBaseSourceConfig config = new HBaseSource.HBaseSourceConfig("hbaseSource", "hbaseSource", "rowkey",
+                                                                             SCHEMA.toString(), null, null,
+                                                                             2000L, 1000L, null, null);
+    new HBaseSource(config).configurePipeline(new MockPipelineConfigurer(null));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSourceWithInvalidScanCaching() {
+    HBaseSource.HBaseSourceConfig config = new HBaseSource.HBaseSourceConfig("hbaseSource", "hbaseSource", "rowkey",
+                                                                             SCHEMA.toString(), null, null,
+                                                                             null, null, 0, null);
+    new HBaseSource(config).configurePipeline(new MockPipelineConfigurer(null));
+  }
+}
@@ -113,13 +113,19 @@ public class Kafka08SimpleApiConsumer extends KafkaSimpleApiConsumer<String, Byt
     int instanceId = getContext().getInstanceId();
     int instances = getContext().getInstanceCount();
     String kafkaTopic = pluginConfig.getTopic();
+    int fetchSize = pluginConfig.getFetchSize();
     for (int i = 0; i < partitions; i++) {
       if ((i % instances) == instanceId) {
-        configurer.addTopicPartition(kafkaTopic, i);
+        configurer.addTopicPartition(kafkaTopic, i, fetchSize);
       }
     }
   }
 
+  @Override
+  protected int getFetchThreads() {
+    return kafkaSource.getConfig().getFetchThreads();
+  }
+
   @Override
   protected Iterator<KafkaMessage<Long>> readMessages(KafkaConsumerInfo<Long> consumerInfo) throws Exception {
     final TopicPartition topicPartition = consumerInfo.getTopicPartition();
@@ -149,6 +155,8 @@ public class Kafka08SimpleApiConsumer extends KafkaSimpleApiConsumer<String, Byt
       handleFetchError(consumerInfo, consumer, readOffset, response.errorCode(topic, partition));
       return Iterators.emptyIterator();
     }
+    getContext().getMetrics().gauge(getPartitionMetricName(topicPartition, "lag"),
+                                    response.highWatermark(topic, partition) - readOffset);
 
     // Returns an Iterator of message
     final long fetchReadOffset = readOffset;
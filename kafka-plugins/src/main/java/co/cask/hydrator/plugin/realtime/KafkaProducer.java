@@ -27,7 +27,8 @@ import co.cask.cdap.etl.api.realtime.RealtimeContext;
 import co.cask.cdap.format.StructuredRecordStringConverter;
 import co.cask.hydrator.common.ReferencePluginConfig;
 import co.cask.hydrator.common.ReferenceRealtimeSink;
-import com.google.common.collect.Lists;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import kafka.producer.ProducerConfig;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
@@ -37,9 +38,15 @@ import org.apache.kafka.clients.producer.RecordMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of Kafka Realtime Producer Hydrator plugin. 
@@ -64,6 +71,10 @@ public class KafkaProducer extends ReferenceRealtimeSink<StructuredRecord> {
   private static final String VAL_SERIALIZER = "value.serializer";
   private static final String CLIENT_ID = "client.id";
   private static final String ACKS_REQUIRED = "request.required.acks";
+  private static final String BATCH_SIZE = "batch.size";
+  private static final String LINGER_MS = "linger.ms";
+  private static final String COMPRESSION_TYPE = "compression.type";
+  private static final Set<String> COMPRESSION_TYPES = ImmutableSet.of("none", "gzip", "snappy", "lz4");
 
   // Kafka properties
   private final Properties props = new Properties();
@@ -83,6 +94,13 @@ public class KafkaProducer extends ReferenceRealtimeSink<StructuredRecord> {
   // List of Kafka topics.
   private String[] topics;
 
+  // Number of partitions of each topic
+  private final Map<String, Integer> topicPartitions = new HashMap<>();
+
+  // Buffer that the CSV printer writes to, and the printer, or null if the format is not a CSV format
+  private StringBuilder csvBuffer;
+  private CSVPrinter csvPrinter;
+
   // required for testing.
   public KafkaProducer(Config kafkaConfig) {
     super(kafkaConfig);
@@ -97,6 +115,20 @@ public class KafkaProducer extends ReferenceRealtimeSink<StructuredRecord> {
     if (!producerConfig.async.equalsIgnoreCase("true") && !producerConfig.async.equalsIgnoreCase("false")) {
       throw new IllegalArgumentException("Async flag has to be either TRUE or FALSE.");
     }
+    if (producerConfig.batchSize != null && producerConfig.batchSize < 0) {
+      throw new IllegalArgumentException(
+        String.format("Invalid value for batchSize. Must be at least 0, but got %d", producerConfig.batchSize));
+    }
+    if (producerConfig.lingerMs != null && producerConfig.lingerMs < 0) {
+      throw new IllegalArgumentException(
+        String.format("Invalid value for lingerMs. Must be at least 0, but got %d", producerConfig.lingerMs));
+    }
+    if (!Strings.isNullOrEmpty(producerConfig.compressionType) &&
+      !COMPRESSION_TYPES.contains(producerConfig.compressionType.toLowerCase())) {
+      throw new IllegalArgumentException(
+        String.format("Invalid value for compressionType. Must be one of %s, but got %s",
+                      COMPRESSION_TYPES, producerConfig.compressionType));
+    }
     
     // Validations to be added.
   }
@@ -108,7 +140,16 @@ public class KafkaProducer extends ReferenceRealtimeSink<StructuredRecord> {
 
     // Extract the topics
     topics = producerConfig.topics.split(",");
-    
+
+    // Create the serializer once, a CSV printer appends to the same buffer for every record
+    if (!producerConfig.format.equalsIgnoreCase("JSON")) {
+      CSVFormat csvFormat = getCSVFormat(producerConfig.format);
+      if (csvFormat != null) {
+        csvBuffer = new StringBuilder();
+        csvPrinter = new CSVPrinter(csvBuffer, csvFormat);
+      }
+    }
+
     // Configure the properties for kafka.
     props.put(BROKER_LIST, producerConfig.brokers);
     props.put(KEY_SERIALIZER, "org.apache.kafka.common.serialization.StringSerializer");
@@ -118,6 +159,15 @@ public class KafkaProducer extends ReferenceRealtimeSink<StructuredRecord> {
       props.put(ACKS_REQUIRED, "1");
       isAsync = true;
     }
+    if (producerConfig.batchSize != null) {
+      props.put(BATCH_SIZE, String.valueOf(producerConfig.batchSize));
+    }
+    if (producerConfig.lingerMs != null) {
+      props.put(LINGER_MS, String.valueOf(producerConfig.lingerMs));
+    }
+    if (!Strings.isNullOrEmpty(producerConfig.compressionType)) {
+      props.put(COMPRESSION_TYPE, producerConfig.compressionType.toLowerCase());
+    }
     
     //config = new ProducerConfig(props);
     producer = new org.apache.kafka.clients.producer.KafkaProducer<String, String>(props);
@@ -127,66 +177,25 @@ public class KafkaProducer extends ReferenceRealtimeSink<StructuredRecord> {
   @Override
   public int write(Iterable<StructuredRecord> objects, final DataWriter dataWriter) throws Exception {
     int count = 0;
-    List<Schema.Field> fields;
-    
+
+    // In sync mode, all the records are sent before waiting for any of them, so that the producer can batch them.
+    List<Future<RecordMetadata>> pendingSends = isAsync ? null : new ArrayList<Future<RecordMetadata>>();
+
     // For each object
     for (StructuredRecord object : objects) {
-      fields = object.getSchema().getFields();
-
       // Depending on the configuration create a body that needs to be 
       // built and pushed to Kafka. 
       String body = "";
       if (producerConfig.format.equalsIgnoreCase("JSON")) {
         body = StructuredRecordStringConverter.toJsonString(object);
-      } else {
+      } else if (csvPrinter != null) {
         // Extract all values from the structured record
-        List<Object> objs = Lists.newArrayList();
-        for (Schema.Field field : fields) {
-          objs.add(object.get(field.getName()));
-        }
-
-        StringWriter writer = new StringWriter();
-        CSVPrinter printer = null;
-        
-        try {
-          CSVFormat csvFileFormat;
-          switch(producerConfig.format.toLowerCase()) {
-            case "csv":
-              csvFileFormat = CSVFormat.Predefined.Default.getFormat();
-              printer = new CSVPrinter(writer, csvFileFormat);
-              break;
-
-            case "excel":
-              csvFileFormat = CSVFormat.Predefined.Excel.getFormat();
-              printer = new CSVPrinter(writer, csvFileFormat);
-              break;
-
-            case "mysql":
-              csvFileFormat = CSVFormat.Predefined.MySQL.getFormat();
-              printer = new CSVPrinter(writer, csvFileFormat);
-              break;
-
-            case "tdf":
-              csvFileFormat = CSVFormat.Predefined.TDF.getFormat();
-              printer = new CSVPrinter(writer, csvFileFormat);
-              break;
-
-            case "rfc4180":
-              csvFileFormat = CSVFormat.Predefined.TDF.getFormat();
-              printer = new CSVPrinter(writer, csvFileFormat);
-              break;
-          }
-          
-          if (printer != null) {
-            printer.printRecord(objs);
-            body = writer.toString();
-          }      
-          
-        } finally {
-          if (printer != null) {
-            printer.close();
-          }
+        csvBuffer.setLength(0);
+        for (Schema.Field field : object.getSchema().getFields()) {
+          csvPrinter.print(object.get(field.getName()));
         }
+        csvPrinter.println();
+        body = csvBuffer.toString();
       }
       
       // Message key.
@@ -206,29 +215,82 @@ public class KafkaProducer extends ReferenceRealtimeSink<StructuredRecord> {
 
       // Write to all the configured topics
       for (String topic : topics) {
-        partitionKey = partitionKey % producer.partitionsFor(topic).size();
-        if (isAsync) {
-          producer.send(new ProducerRecord<String, String>(topic, partitionKey, key, body), new Callback() {
-            @Override
-            public void onCompletion(RecordMetadata meta, Exception e) {
-              if (meta != null) {
-                context.getMetrics().count("kafka.async.success", 1);
-              }
-              
-              if (e != null) {
-                context.getMetrics().count("kafka.async.error", 1);  
-              }
-            }
-          });
-        } else {
-          // Waits infinitely to push the message through. 
-          producer.send(new ProducerRecord<String, String>(topic, partitionKey, key, body)).get();
+        int partition = Math.abs(partitionKey % getNumPartitions(topic));
+        Future<RecordMetadata> result = producer.send(new ProducerRecord<>(topic, partition, key, body),
+                                                      new SendCallback(System.nanoTime()));
+        if (pendingSends != null) {
+          pendingSends.add(result);
         }
         context.getMetrics().count("kafka.producer.count", 1);
       }
+      count++;
+    }
+
+    if (pendingSends != null) {
+      // Waits infinitely to push the messages through.
+      for (Future<RecordMetadata> pendingSend : pendingSends) {
+        pendingSend.get();
+      }
     }
+    context.getMetrics().gauge("kafka.producer.batch.size", count);
     return count;
   }
+
+  /**
+   * Returns the number of partitions of a topic, which is only looked up once per topic.
+   */
+  private int getNumPartitions(String topic) {
+    Integer numPartitions = topicPartitions.get(topic);
+    if (numPartitions == null) {
+      numPartitions = producer.partitionsFor(topic).size();
+      topicPartitions.put(topic, numPartitions);
+    }
+    return numPartitions;
+  }
+
+  @Nullable
+  private static CSVFormat getCSVFormat(String format) {
+    switch (format.toLowerCase()) {
+      case "csv":
+        return CSVFormat.Predefined.Default.getFormat();
+      case "excel":
+        return CSVFormat.Predefined.Excel.getFormat();
+      case "mysql":
+        return CSVFormat.Predefined.MySQL.getFormat();
+      case "tdf":
+      case "rfc4180":
+        return CSVFormat.Predefined.TDF.getFormat();
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Records the latency of a send, and its result in async mode.
+   */
+  private final class SendCallback implements Callback {
+    private final long startNanos;
+
+    private SendCallback(long startNanos) {
+      this.startNanos = startNanos;
+    }
+
+    @Override
+    public void onCompletion(RecordMetadata meta, Exception e) {
+      context.getMetrics().gauge("kafka.producer.send.latency.ms",
+                                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      if (!isAsync) {
+        return;
+      }
+      if (meta != null) {
+        context.getMetrics().count("kafka.async.success", 1);
+      }
+
+      if (e != null) {
+        context.getMetrics().count("kafka.async.error", 1);
+      }
+    }
+  }
   
   @Override
   public void destroy() {
@@ -271,9 +333,32 @@ public class KafkaProducer extends ReferenceRealtimeSink<StructuredRecord> {
     @Name("format")
     @Description("Format a structured record should be converted to")
     private String format;
+
+    @Name("batchSize")
+    @Description("Maximum number of bytes of messages to the same partition that are sent to a broker in one " +
+      "request. Defaults to 16384.")
+    @Nullable
+    private Integer batchSize;
+
+    @Name("lingerMs")
+    @Description("Number of milliseconds to wait for more messages to the same partition before sending a batch " +
+      "that is not full. Defaults to 0.")
+    @Nullable
+    private Integer lingerMs;
+
+    @Name("compressionType")
+    @Description("Compression codec of the message batches: none, gzip, snappy or lz4. Defaults to none.")
+    @Nullable
+    private String compressionType;
     
     public Config(String brokers, String async, String partitionField, String key, String topics,
                   String format) {
+      this(brokers, async, partitionField, key, topics, format, null, null, null);
+    }
+
+    public Config(String brokers, String async, String partitionField, String key, String topics,
+                  String format, @Nullable Integer batchSize, @Nullable Integer lingerMs,
+                  @Nullable String compressionType) {
       super(String.format("Kafka_%s", topics));
       this.brokers = brokers;
       this.async = async;
@@ -281,6 +366,9 @@ public class KafkaProducer extends ReferenceRealtimeSink<StructuredRecord> {
       this.key = key;
       this.topics = topics;
       this.format = format;
+      this.batchSize = batchSize;
+      this.lingerMs = lingerMs;
+      this.compressionType = compressionType;
     }
   }
 }
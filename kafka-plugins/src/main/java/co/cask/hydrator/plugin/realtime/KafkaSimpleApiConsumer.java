@@ -24,10 +24,15 @@ import co.cask.cdap.etl.api.realtime.SourceState;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.Service;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.twill.kafka.client.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +42,14 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -76,6 +88,8 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
   private DefaultKafkaConfigurer kafkaConfigurer;
 
   private volatile Map<TopicPartition, KafkaConsumerInfo<OFFSET>> consumerInfos;
+  // executor to fetch from several partitions concurrently, or null if the partitions are fetched one at a time
+  private ExecutorService fetchExecutor;
 
   protected KafkaSimpleApiConsumer(KafkaSource kafkaSource) {
     this.kafkaSource = kafkaSource;
@@ -155,22 +169,46 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
   public void pollMessages(Emitter<StructuredRecord> emitter) throws Exception {
     // Configure consumers late to read from SourceState
     if (consumerInfos == null) {
-        consumerInfos = createConsumerInfos(kafkaConfigurer.getTopicPartitions());
+      consumerInfos = createConsumerInfos(kafkaConfigurer.getTopicPartitions());
+      int fetchThreads = Math.min(getFetchThreads(), consumerInfos.size());
+      if (fetchThreads > 1) {
+        fetchExecutor = Executors.newFixedThreadPool(
+          fetchThreads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kafka-fetch-%d").build());
+      }
     }
 
     boolean infosUpdated = false;
-    // Poll for messages from Kafka
-    for (KafkaConsumerInfo<OFFSET> info : consumerInfos.values()) {
-      Iterator<KafkaMessage<OFFSET>> iterator = readMessages(info);
-      while (iterator.hasNext()) {
-        KafkaMessage<OFFSET> message = iterator.next();
-        processMessage(message, emitter);
-
-        // Update the read offset
-        info.setReadOffset(message.getNextOffset());
+    if (fetchExecutor == null) {
+      // Poll for messages from Kafka
+      for (KafkaConsumerInfo<OFFSET> info : consumerInfos.values()) {
+        infosUpdated |= processMessages(info, fetchMessages(info), emitter);
+      }
+    } else {
+      // Send the fetch requests of all partitions at once, but emit the messages in the same order as they would be
+      // emitted by fetching the partitions one at a time. At most one response per partition is held in memory.
+      List<Future<Iterator<KafkaMessage<OFFSET>>>> fetches = Lists.newArrayListWithCapacity(consumerInfos.size());
+      for (final KafkaConsumerInfo<OFFSET> info : consumerInfos.values()) {
+        fetches.add(fetchExecutor.submit(new Callable<Iterator<KafkaMessage<OFFSET>>>() {
+          @Override
+          public Iterator<KafkaMessage<OFFSET>> call() throws Exception {
+            return fetchMessages(info);
+          }
+        }));
       }
-      if (info.hasPendingChanges()) {
-        infosUpdated = true;
+      try {
+        Iterator<Future<Iterator<KafkaMessage<OFFSET>>>> fetchIterator = fetches.iterator();
+        for (KafkaConsumerInfo<OFFSET> info : consumerInfos.values()) {
+          infosUpdated |= processMessages(info, getFetchResult(fetchIterator.next()), emitter);
+        }
+      } finally {
+        // Do not let a failed poll leave fetches running that update the consumer infos during the next poll
+        for (Future<Iterator<KafkaMessage<OFFSET>>> fetch : fetches) {
+          try {
+            Uninterruptibles.getUninterruptibly(fetch);
+          } catch (ExecutionException e) {
+            // the first failure is thrown by getFetchResult, and failed partitions are fetched again in the next poll
+          }
+        }
       }
     }
 
@@ -180,6 +218,44 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
     }
   }
 
+  /**
+   * Fetches messages of one partition from Kafka, recording how long the fetch took.
+   */
+  private Iterator<KafkaMessage<OFFSET>> fetchMessages(KafkaConsumerInfo<OFFSET> info) throws Exception {
+    Stopwatch stopwatch = new Stopwatch().start();
+    Iterator<KafkaMessage<OFFSET>> messages = readMessages(info);
+    getContext().getMetrics().gauge(getPartitionMetricName(info.getTopicPartition(), "fetch.latency.ms"),
+                                    stopwatch.elapsedTime(TimeUnit.MILLISECONDS));
+    return messages;
+  }
+
+  private Iterator<KafkaMessage<OFFSET>> getFetchResult(Future<Iterator<KafkaMessage<OFFSET>>> fetch)
+    throws Exception {
+    try {
+      return fetch.get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Emits the fetched messages of one partition and updates its read offset.
+   *
+   * @return whether the read offset of the partition changed
+   */
+  private boolean processMessages(KafkaConsumerInfo<OFFSET> info, Iterator<KafkaMessage<OFFSET>> iterator,
+                                  Emitter<StructuredRecord> emitter) {
+    while (iterator.hasNext()) {
+      KafkaMessage<OFFSET> message = iterator.next();
+      processMessage(message, emitter);
+
+      // Update the read offset
+      info.setReadOffset(message.getNextOffset());
+    }
+    return info.hasPendingChanges();
+  }
+
   /**
    * Configure Kafka consumer. This method will be called during the initialize phase
    *
@@ -207,11 +283,21 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
    */
   protected abstract void saveReadOffsets(Map<TopicPartition, OFFSET> offsets);
 
+  /**
+   * Returns the maximum number of partitions to fetch from concurrently. By default, partitions are fetched one at a
+   * time.
+   */
+  protected int getFetchThreads() {
+    return 1;
+  }
+
   /**
    * Should be called for clean up.
    */
   public void destroy() {
-    // no-op
+    if (fetchExecutor != null) {
+      fetchExecutor.shutdownNow();
+    }
   }
 
   /**
@@ -307,6 +393,13 @@ public abstract class KafkaSimpleApiConsumer<KEY, PAYLOAD, OFFSET> {
     return topicPartition.getTopic() + ":" + topicPartition.getPartition();
   }
 
+  /**
+   * Returns the name of a metric about the given {@link TopicPartition}.
+   */
+  protected String getPartitionMetricName(TopicPartition topicPartition, String metric) {
+    return String.format("kafka.%s.%d.%s", topicPartition.getTopic(), topicPartition.getPartition(), metric);
+  }
+
   protected Map<String, byte[]> getOffsetStore() {
     return offsetStore;
   }
@@ -69,10 +69,13 @@ public class KafkaSource extends ReferenceRealtimeSource<StructuredRecord> {
   public static final String KAFKA_ZOOKEEPER = "kafka.zookeeper";
   public static final String KAFKA_BROKERS = "kafka.brokers";
   public static final String KAFKA_INITIAL_OFFSET = "kafka.initial.offset";
+  public static final String KAFKA_FETCH_SIZE = "kafka.fetch.size";
+  public static final String KAFKA_FETCH_THREADS = "kafka.fetch.threads";
   public static final String SCHEMA = "schema";
   public static final String FORMAT = "format";
 
   private static final String FORMAT_SETTING_PREFIX = "format.setting.";
+  private static final int DEFAULT_FETCH_THREADS = 8;
 
   private static final Schema DEFAULT_SCHEMA = Schema.recordOf("Kafka Message",
                                                                Schema.Field.of(MESSAGE, Schema.of(Schema.Type.BYTES)),
@@ -80,6 +83,8 @@ public class KafkaSource extends ReferenceRealtimeSource<StructuredRecord> {
                                                                  Schema.of(Schema.Type.STRING))));
   private KafkaSimpleApiConsumer kafkaConsumer;
   private KafkaPluginConfig config;
+  // format to decode the messages with, or null to emit the raw message bytes
+  private RecordFormat<StreamEvent, StructuredRecord> format;
 
   private boolean logException;
 
@@ -95,6 +100,7 @@ public class KafkaSource extends ReferenceRealtimeSource<StructuredRecord> {
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
     super.configurePipeline(pipelineConfigurer);
+    config.validate();
     // check the schema if there is one
     if (!Strings.isNullOrEmpty(config.schema)) {
       config.parseSchema();
@@ -112,13 +118,10 @@ public class KafkaSource extends ReferenceRealtimeSource<StructuredRecord> {
   public void initialize(RealtimeContext context) throws Exception {
     super.initialize(context);
 
+    config.validate();
+    initializeFormat();
     kafkaConsumer = new Kafka08SimpleApiConsumer(this);
     kafkaConsumer.initialize(context);
-    if (!Strings.isNullOrEmpty(config.format)) {
-      FormatSpecification spec = config.getFormatSpec();
-      RecordFormat<ByteBuffer, StructuredRecord> format = RecordFormats.createInitializedFormat(spec);
-      format.initialize(spec);
-    }
     logException = true;
   }
 
@@ -151,20 +154,29 @@ public class KafkaSource extends ReferenceRealtimeSource<StructuredRecord> {
    * @return instance of {@link StructuredRecord} representing the message using the appropriate format.
    */
   public StructuredRecord byteBufferToStructuredRecord(@Nullable String key, ByteBuffer payload) {
-    FormatSpecification spec = config.getFormatSpec();
-    if (Strings.isNullOrEmpty(config.format)) {
+    if (format == null) {
+      // the record refers to the payload of the Kafka message without copying it
       return byteBufferToSchemalessByteRecord(key, payload);
     }
     try {
-      RecordFormat<StreamEvent, StructuredRecord> format = RecordFormats.createInitializedFormat(spec);
-      StreamEvent toStream = new StreamEvent(payload);
-      return format.read(toStream);
+      return format.read(new StreamEvent(payload));
     } catch (Exception e) {
       LOG.debug("Could not parse Kafka payload into schema. Using default structured record instead.");
       return byteBufferToSchemalessByteRecord(key, payload);
     }
   }
 
+  /**
+   * Creates the format to decode messages with once, since creating it parses the schema and the format settings.
+   */
+  private void initializeFormat() throws Exception {
+    if (Strings.isNullOrEmpty(config.format)) {
+      format = null;
+    } else {
+      format = RecordFormats.createInitializedFormat(config.getFormatSpec());
+    }
+  }
+
   private StructuredRecord byteBufferToSchemalessByteRecord(@Nullable String key, ByteBuffer payload) {
     StructuredRecord.Builder recordBuilder = StructuredRecord.builder(DEFAULT_SCHEMA);
     if (key != null) {
@@ -219,6 +231,20 @@ public class KafkaSource extends ReferenceRealtimeSource<StructuredRecord> {
     @Macro
     private final Long defaultOffset;
 
+    @Name(KAFKA_FETCH_SIZE)
+    @Description("Maximum number of bytes to fetch from a partition in one request. At most one response per " +
+      "partition is held in memory at a time. Defaults to 1048576 (1 MB).")
+    @Nullable
+    @Macro
+    private final Integer fetchSize;
+
+    @Name(KAFKA_FETCH_THREADS)
+    @Description("Maximum number of partitions to fetch from concurrently. Messages are still emitted one partition " +
+      "after the other. Defaults to 8.")
+    @Nullable
+    @Macro
+    private final Integer fetchThreads;
+
     @Name(SCHEMA)
     @Description("Optional schema for the body of Kafka events. The schema is used in conjunction with the format " +
       "to parse Kafka payloads. Some formats (such as the 'avro' format) require schema while others do not. " +
@@ -237,6 +263,12 @@ public class KafkaSource extends ReferenceRealtimeSource<StructuredRecord> {
 
     public KafkaPluginConfig(String zkConnect, String brokers, Integer partitions, String topic,
                              Long defaultOffset, @Nullable String format, @Nullable String schema) {
+      this(zkConnect, brokers, partitions, topic, defaultOffset, format, schema, null, null);
+    }
+
+    public KafkaPluginConfig(String zkConnect, String brokers, Integer partitions, String topic,
+                             Long defaultOffset, @Nullable String format, @Nullable String schema,
+                             @Nullable Integer fetchSize, @Nullable Integer fetchThreads) {
       super(String.format("Kafka_%s", topic));
       this.zkConnect = zkConnect;
       this.kafkaBrokers = brokers;
@@ -245,6 +277,8 @@ public class KafkaSource extends ReferenceRealtimeSource<StructuredRecord> {
       this.defaultOffset = defaultOffset;
       this.schema = schema;
       this.format = format;
+      this.fetchSize = fetchSize;
+      this.fetchThreads = fetchThreads;
     }
 
     // Accessors
@@ -272,6 +306,25 @@ public class KafkaSource extends ReferenceRealtimeSource<StructuredRecord> {
       return defaultOffset;
     }
 
+    public int getFetchSize() {
+      return fetchSize == null ? KafkaConsumerConfigurer.DEFAULT_FETCH_SIZE : fetchSize;
+    }
+
+    public int getFetchThreads() {
+      return fetchThreads == null ? DEFAULT_FETCH_THREADS : fetchThreads;
+    }
+
+    private void validate() {
+      if (!containsMacro(KAFKA_FETCH_SIZE) && getFetchSize() < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for %s. Must be at least 1, but got %d", KAFKA_FETCH_SIZE, fetchSize));
+      }
+      if (!containsMacro(KAFKA_FETCH_THREADS) && getFetchThreads() < 1) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value for %s. Must be at least 1, but got %d", KAFKA_FETCH_THREADS, fetchThreads));
+      }
+    }
+
     @Nullable
     private FormatSpecification getFormatSpec() {
       FormatSpecification formatSpec = null;
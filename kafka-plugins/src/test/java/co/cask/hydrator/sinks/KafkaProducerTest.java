@@ -189,6 +189,58 @@ public class KafkaProducerTest {
     kafkaproducer.destroy();
   }
 
+  @Test
+  public void testBatchedCSVPublish() throws Exception {
+    String testTopic = "csvbatched";
+
+    KafkaProducer.Config sconfig = new KafkaProducer.Config(getBroker(), "FALSE", "c", "b", testTopic, "CSV",
+                                                            16384, 10, "gzip");
+    RealtimeSink<StructuredRecord> kafkaproducer = new KafkaProducer(sconfig);
+    kafkaproducer.initialize(new MockRealtimeContext());
+
+    List<StructuredRecord> input = Lists.newArrayList();
+    input.add(StructuredRecord.builder(INPUT).set("a", 1L).set("b", "first 1").set("c", 1).set("d", 12.34)
+                .set("e", false).build());
+    input.add(StructuredRecord.builder(INPUT).set("a", 2L).set("b", "second 2").set("c", 2).set("d", 13.34)
+                .set("e", true).build());
+    input.add(StructuredRecord.builder(INPUT).set("a", 3L).set("b", "third 3").set("c", 3).set("d", 14.34)
+                .set("e", false).build());
+    input.add(StructuredRecord.builder(INPUT).set("a", 4L).set("b", "fourth 4").set("c", 4).set("d", 15.342423442424)
+                .set("e", true).build());
+    Assert.assertEquals(input.size(), kafkaproducer.write(input, null));
+
+    final CountDownLatch latch = new CountDownLatch(input.size());
+    final List<String> consumedMessages = new ArrayList<String>(input.size());
+    kafkaClient.getConsumer().prepare()
+      .addFromBeginning(testTopic, 0)
+      .addFromBeginning(testTopic, 1)
+      .addFromBeginning(testTopic, 2)
+      .addFromBeginning(testTopic, 3)
+      .consume(new KafkaConsumer.MessageCallback() {
+        @Override
+        public void onReceived(Iterator<FetchedMessage> messages) {
+          while (messages.hasNext()) {
+            FetchedMessage msg = messages.next();
+            // Add to array with partition id as index.
+            consumedMessages.add(msg.getTopicPartition().getPartition(),
+                                 Charsets.UTF_8.decode(msg.getPayload()).toString());
+            latch.countDown();
+          }
+        }
+
+        @Override
+        public void finished() {
+        }
+      });
+    latch.await();
+    Assert.assertEquals(4L, consumedMessages.size());
+    Assert.assertEquals("4,fourth 4,4,15.342423442424,true\r\n", consumedMessages.get(0));
+    Assert.assertEquals("1,first 1,1,12.34,false\r\n", consumedMessages.get(1));
+    Assert.assertEquals("2,second 2,2,13.34,true\r\n", consumedMessages.get(2));
+    Assert.assertEquals("3,third 3,3,14.34,false\r\n", consumedMessages.get(3));
+    kafkaproducer.destroy();
+  }
+
   @Test
   public void testTDFPublish() throws Exception {
     String testTopic = "tdf";
@@ -27,6 +27,9 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Uninterruptibles;
+import kafka.admin.AdminUtils;
+import kafka.utils.ZKStringSerializer$;
+import org.I0Itec.zkclient.ZkClient;
 import org.apache.twill.internal.kafka.EmbeddedKafkaServer;
 import org.apache.twill.internal.kafka.client.ZKKafkaClientService;
 import org.apache.twill.internal.utils.Networks;
@@ -67,6 +70,8 @@ public class KafkaSourceTest {
   public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
 
   protected static final int PARTITIONS = 1;
+  // the fetch tests use topics with several partitions, so that they are fetched by more than one thread
+  private static final int FETCH_PARTITIONS = 4;
 
   protected static InMemoryZKServer zkServer;
   protected static EmbeddedKafkaServer kafkaServer;
@@ -130,6 +135,52 @@ public class KafkaSourceTest {
     verifyEmittedMessages(kafkaSource, msgCount, new SourceState());
   }
 
+  @Test
+  public void testKafkaConsumerConcurrentFetch() throws Exception {
+    final String topic = "testKafkaConsumerConcurrentFetch";
+    createTopic(topic, FETCH_PARTITIONS);
+
+    initializeKafkaSource(topic, FETCH_PARTITIONS, false, null, FETCH_PARTITIONS);
+
+    // Publish 20 messages to Kafka in batches of 5, so that no message set is larger than a log segment.
+    // The source should consume them from all partitions at once
+    int msgCount = 20;
+    for (int batch = 0; batch < msgCount; batch += 5) {
+      Map<String, String> messages = Maps.newHashMap();
+      for (int i = batch; i < batch + 5; i++) {
+        messages.put(Integer.toString(i), "Message " + i);
+      }
+      sendMessage(topic, messages);
+    }
+
+    TimeUnit.SECONDS.sleep(2);
+
+    verifyAllEmittedMessages(kafkaSource, msgCount);
+  }
+
+  @Test
+  public void testKafkaConsumerSequentialFetch() throws Exception {
+    final String topic = "testKafkaConsumerSequentialFetch";
+    createTopic(topic, FETCH_PARTITIONS);
+
+    initializeKafkaSource(topic, FETCH_PARTITIONS, false, null, 1);
+
+    // Publish 20 messages to Kafka in batches of 5, so that no message set is larger than a log segment.
+    // The source should consume them one partition at a time
+    int msgCount = 20;
+    for (int batch = 0; batch < msgCount; batch += 5) {
+      Map<String, String> messages = Maps.newHashMap();
+      for (int i = batch; i < batch + 5; i++) {
+        messages.put(Integer.toString(i), "Message " + i);
+      }
+      sendMessage(topic, messages);
+    }
+
+    TimeUnit.SECONDS.sleep(2);
+
+    verifyAllEmittedMessages(kafkaSource, msgCount);
+  }
+
   @Test
   public void testSavedSourceState() throws Exception {
     final String topic = "testKafkaSavedSourceState";
@@ -148,7 +199,7 @@ public class KafkaSourceTest {
 
     TimeUnit.SECONDS.sleep(2);
 
-    verifyEmittedMessages(kafkaSource, msgCount, sourceState);
+    sourceState = verifyEmittedMessages(kafkaSource, msgCount, sourceState);
 
     // Do it again but this time the messages will still be 5 instead of 10 from beginning.
 
@@ -206,6 +257,11 @@ public class KafkaSourceTest {
   }
 
   private void initializeKafkaSource(String topic, int partitions, boolean preferZK, String format) throws Exception {
+    initializeKafkaSource(topic, partitions, preferZK, format, null);
+  }
+
+  private void initializeKafkaSource(String topic, int partitions, boolean preferZK, String format,
+                                     Integer fetchThreads) throws Exception {
     String zk = null;
     String brokerList = null;
     if (!supportBrokerList() || preferZK) {
@@ -214,7 +270,8 @@ public class KafkaSourceTest {
       brokerList = "localhost:" + kafkaPort;
     }
     KafkaSource.KafkaPluginConfig config = new KafkaSource.KafkaPluginConfig(zk, brokerList, partitions,
-                                                                             topic, null, format, null);
+                                                                             topic, null, format, null,
+                                                                             null, fetchThreads);
 
     kafkaSource = new KafkaSource(config);
 
@@ -222,7 +279,7 @@ public class KafkaSourceTest {
   }
 
   // Helper method to verify
-  private void verifyEmittedMessages(KafkaSource source, int msgCount, SourceState sourceState)
+  private SourceState verifyEmittedMessages(KafkaSource source, int msgCount, SourceState sourceState)
     throws InterruptedException {
     MockEmitter emitter = new MockEmitter();
     SourceState updatedSourceState = source.poll(emitter, sourceState);
@@ -232,6 +289,19 @@ public class KafkaSourceTest {
 
     Assert.assertTrue(updatedSourceState.getState() != null && !updatedSourceState.getState().isEmpty());
     Assert.assertTrue(emitter.getInternalSize() == msgCount);
+    return updatedSourceState;
+  }
+
+  // Helper method to verify messages that may take several polls, since a fetch stops at the end of a log segment
+  private void verifyAllEmittedMessages(KafkaSource source, int msgCount) throws InterruptedException {
+    MockEmitter emitter = new MockEmitter();
+    SourceState sourceState = new SourceState();
+    for (int i = 0; i < 10 && emitter.getInternalSize() < msgCount; i++) {
+      sourceState = source.poll(emitter, sourceState);
+    }
+    // poll once more, to make sure that no message is emitted twice
+    source.poll(emitter, sourceState);
+    Assert.assertEquals(msgCount, emitter.getInternalSize());
   }
 
   protected void sendMessage(String topic, Map<String, String> messages) {
@@ -256,6 +326,22 @@ public class KafkaSourceTest {
     } while (count++ < 20);
   }
 
+  private void createTopic(String topic, int partitions) {
+    ZkClient client = new ZkClient(zkServer.getConnectionStr(), 10000, 10000, ZKStringSerializer$.MODULE$);
+    try {
+      AdminUtils.createTopic(client, topic, partitions, 1, new Properties());
+      // wait for the leaders to be elected, so that no partition of the first publish fails
+      for (int partition = 0; partition < partitions; partition++) {
+        String statePath = String.format("/brokers/topics/%s/partitions/%d/state", topic, partition);
+        for (int i = 0; i < 100 && !client.exists(statePath); i++) {
+          Uninterruptibles.sleepUninterruptibly(100, TimeUnit.MILLISECONDS);
+        }
+      }
+    } finally {
+      client.close();
+    }
+  }
+
   protected boolean supportBrokerList() {
     return true;
   }
@@ -20,6 +20,7 @@ import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.annotation.Name;
 import co.cask.cdap.api.annotation.Plugin;
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.data.schema.Schema.Field;
@@ -35,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import javax.annotation.Nullable;
 
@@ -67,9 +69,15 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
   // List of fields specified in the schema. 
   private List<Field> fields;
 
+  // Output fields along with how to convert CSV values to their types, in the order of the schema.
+  private FieldConverter[] converters;
+
   // Format of CSV.
   private CSVFormat csvFormat = CSVFormat.DEFAULT;
 
+  // Tokenizer for single line records of simple formats, or null if the format has none.
+  private SimpleTokenizer simpleTokenizer;
+
   // Format of PDL.
   public static final CSVFormat PDL;
 
@@ -148,6 +156,7 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
     switch (csvFormatString) {
       case "default":
         csvFormat = CSVFormat.DEFAULT;
+        simpleTokenizer = new SimpleTokenizer(',', false, '"');
         break;
 
       case "excel":
@@ -164,10 +173,12 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
 
       case "tdf":
         csvFormat = CSVFormat.TDF;
+        simpleTokenizer = new SimpleTokenizer('\t', true, '"');
         break;
 
       case "pdl":
         csvFormat = PDL;
+        simpleTokenizer = new SimpleTokenizer('|', true, '\\');
         break;
 
       default:
@@ -181,6 +192,10 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
     } catch (IOException e) {
       throw new IllegalArgumentException("Format of schema specified is invalid. Please check the format.");
     }
+    converters = new FieldConverter[fields.size()];
+    for (int i = 0; i < converters.length; i++) {
+      converters[i] = new FieldConverter(fields.get(i));
+    }
   }
 
   @Override
@@ -192,11 +207,17 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
     try {
       if (body == null) {
         emitter.emit(createStructuredRecord(null, in));
+        return;
+      }
+      String[] values = simpleTokenizer == null ? null : simpleTokenizer.tokenize(body);
+      if (values != null) {
+        // an empty body contains no records
+        if (!body.isEmpty()) {
+          emitter.emit(createStructuredRecord(values, in));
+        }
       } else {
-        org.apache.commons.csv.CSVParser parser = org.apache.commons.csv.CSVParser.parse(body, csvFormat);
-        List<CSVRecord> records = parser.getRecords();
-        for (CSVRecord record : records) {
-          emitter.emit(createStructuredRecord(record, in));
+        for (CSVRecord record : org.apache.commons.csv.CSVParser.parse(body, csvFormat)) {
+          emitter.emit(createStructuredRecord(toValues(record), in));
         }
       }
     } catch (IOException e) {
@@ -204,38 +225,44 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
     }
   }
 
-  private StructuredRecord createStructuredRecord(@Nullable CSVRecord record, StructuredRecord in) {
+  private static String[] toValues(CSVRecord record) {
+    String[] values = new String[record.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = record.get(i);
+    }
+    return values;
+  }
+
+  private StructuredRecord createStructuredRecord(@Nullable String[] values, StructuredRecord in) {
     StructuredRecord.Builder builder = StructuredRecord.builder(outSchema);
     int i = 0;
-    for (Field field : fields) {
-      String name = field.getName();
+    for (FieldConverter converter : converters) {
+      String name = converter.name;
       // If the field specified in the output field is present in the input, then
       // it's directly copied into the output, else field is parsed in from the CSV parser.
       // If the input record is null, propagate all supplied input fields and null other fields
       // assumed to be CSV-parsed fields
-      if (in.get(name) != null) {
-        builder.set(name, in.get(name));
-      } else if (record == null) {
+      Object inputValue = in.get(name);
+      if (inputValue != null) {
+        builder.set(name, inputValue);
+      } else if (values == null) {
         builder.set(name, null);
       } else {
-        String val = record.get(i);
-        Schema fieldSchema = field.getSchema();
+        String val = values[i];
 
         if (val.isEmpty()) {
-          boolean isNullable = fieldSchema.isNullable();
-          Schema.Type fieldType = isNullable ? fieldSchema.getNonNullable().getType() : fieldSchema.getType();
           // if the field is a string or a nullable string, set the value to the empty string
-          if (fieldType == Schema.Type.STRING) {
-            builder.set(field.getName(), "");
-          } else if (!isNullable) {
+          if (converter.type == Schema.Type.STRING) {
+            builder.set(name, "");
+          } else if (!converter.nullable) {
             // otherwise, error out
             throw new IllegalArgumentException(String.format(
               "Field #%d (named '%s') is of non-nullable type '%s', " +
                 "but was parsed as an empty string for CSV record '%s'",
-              i, field.getName(), field.getSchema().getType(), record));
+              i, name, converter.field.getSchema().getType(), Arrays.toString(values)));
           }
         } else {
-          builder.convertAndSet(field.getName(), val);
+          converter.convertAndSet(builder, val);
         }
         ++i;
       }
@@ -243,6 +270,115 @@ public final class CSVParser extends Transform<StructuredRecord, StructuredRecor
     return builder.build();
   }
 
+  /**
+   * Converts CSV values to the type of an output field, with the type of the field resolved up front
+   * rather than for every value.
+   */
+  private static final class FieldConverter {
+    private final Field field;
+    private final String name;
+    private final boolean nullable;
+    private final Schema.Type type;
+
+    FieldConverter(Field field) {
+      Schema fieldSchema = field.getSchema();
+      this.field = field;
+      this.name = field.getName();
+      this.nullable = fieldSchema.isNullable();
+      this.type = nullable ? fieldSchema.getNonNullable().getType() : fieldSchema.getType();
+    }
+
+    void convertAndSet(StructuredRecord.Builder builder, String val) {
+      switch (type) {
+        case BOOLEAN:
+          builder.set(name, Boolean.parseBoolean(val));
+          break;
+        case INT:
+          builder.set(name, Integer.parseInt(val));
+          break;
+        case LONG:
+          builder.set(name, Long.parseLong(val));
+          break;
+        case FLOAT:
+          builder.set(name, Float.parseFloat(val));
+          break;
+        case DOUBLE:
+          builder.set(name, Double.parseDouble(val));
+          break;
+        case BYTES:
+          builder.set(name, Bytes.toBytesBinary(val));
+          break;
+        case STRING:
+          builder.set(name, val);
+          break;
+        default:
+          // let the record builder handle, and reject, anything that can't be converted from a string
+          builder.convertAndSet(name, val);
+      }
+    }
+  }
+
+  /**
+   * Splits a single line record on a single character delimiter, for formats where such a record
+   * doesn't need the full CSV parser: no quote or escape character in the line, and no line breaks.
+   * Produces the same values that the CSV parser produces for these lines.
+   */
+  static final class SimpleTokenizer {
+    private final char delimiter;
+    private final boolean trim;
+    private final char special;
+
+    /**
+     * @param delimiter the value delimiter
+     * @param trim whether whitespace surrounding values is ignored
+     * @param special the quote or escape character of the format. Lines containing it are not tokenized.
+     */
+    SimpleTokenizer(char delimiter, boolean trim, char special) {
+      this.delimiter = delimiter;
+      this.trim = trim;
+      this.special = special;
+    }
+
+    /**
+     * @return the values in the line, or null if the line must be parsed by the CSV parser
+     */
+    @Nullable
+    String[] tokenize(String line) {
+      int length = line.length();
+      int numValues = 1;
+      for (int i = 0; i < length; i++) {
+        char c = line.charAt(i);
+        if (c == delimiter) {
+          numValues++;
+        } else if (c == special || c == '\n' || c == '\r') {
+          return null;
+        }
+      }
+
+      String[] values = new String[numValues];
+      int start = 0;
+      for (int v = 0; v < numValues; v++) {
+        int end = line.indexOf(delimiter, start);
+        if (end < 0) {
+          end = length;
+        }
+        values[v] = trim ? trim(line, start, end) : line.substring(start, end);
+        start = end + 1;
+      }
+      return values;
+    }
+
+    private static String trim(String line, int start, int end) {
+      while (start < end && Character.isWhitespace(line.charAt(start))) {
+        start++;
+      }
+      while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+        end--;
+      }
+      return line.substring(start, end);
+    }
+  }
+
   /**
    * Configuration for the plugin.
    */
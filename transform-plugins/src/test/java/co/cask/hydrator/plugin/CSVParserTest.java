@@ -21,9 +21,14 @@ import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.hydrator.common.MockPipelineConfigurer;
 import co.cask.hydrator.common.test.MockEmitter;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Tests the {@link CSVParser}.
@@ -286,4 +291,36 @@ public class CSVParserTest {
     transform.configurePipeline(mockPipelineConfigurer);
   }
 
+  @Test
+  public void testSimpleTokenizerMatchesCSVParser() throws Exception {
+    assertSameAsCSVParser(new CSVParser.SimpleTokenizer(',', false, '"'), CSVFormat.DEFAULT);
+    assertSameAsCSVParser(new CSVParser.SimpleTokenizer('\t', true, '"'), CSVFormat.TDF);
+    assertSameAsCSVParser(new CSVParser.SimpleTokenizer('|', true, '\\'), CSVParser.PDL);
+  }
+
+  private void assertSameAsCSVParser(CSVParser.SimpleTokenizer tokenizer, CSVFormat format) throws Exception {
+    char[] chars = { 'a', 'b', ' ', '\t', ',', '|', '"', '\\', '\n', '\u001c' };
+    Random random = new Random(0);
+    int tokenized = 0;
+    for (int i = 0; i < 10000; i++) {
+      StringBuilder line = new StringBuilder();
+      int length = random.nextInt(10);
+      for (int j = 0; j < length; j++) {
+        line.append(chars[random.nextInt(chars.length)]);
+      }
+      String[] values = tokenizer.tokenize(line.toString());
+      if (values == null || line.length() == 0) {
+        continue;
+      }
+      tokenized++;
+      List<CSVRecord> records = org.apache.commons.csv.CSVParser.parse(line.toString(), format).getRecords();
+      Assert.assertEquals(1, records.size());
+      List<String> expected = new ArrayList<>();
+      for (String value : records.get(0)) {
+        expected.add(value);
+      }
+      Assert.assertArrayEquals("Line: '" + line + "'", expected.toArray(), values);
+    }
+    Assert.assertTrue(tokenized > 1000);
+  }
 }